@@ -17,12 +17,12 @@ package net.javacrumbs.smock.axis2.client;
 
 import net.javacrumbs.smock.common.client.AbstractCommonSmockClientTest;
 import net.javacrumbs.smock.extended.client.connection.MockWebServiceServer;
+import net.javacrumbs.smock.extended.client.connection.RepeatableResponseActions;
 
 import org.springframework.ws.WebServiceMessageFactory;
 import org.springframework.ws.server.EndpointInterceptor;
 import org.springframework.ws.soap.SoapVersion;
 import org.springframework.ws.test.client.RequestMatcher;
-import org.springframework.ws.test.client.ResponseActions;
 
 /**
  * Creates Axis2 specific MockWebServiceServer.
@@ -73,13 +73,13 @@ public abstract class AbstractSmockClientTest extends AbstractCommonSmockClientT
     }
 
 	/**
-	 * Records an expectation specified by the given {@link RequestMatcher}. Returns a {@link ResponseActions} object
+	 * Records an expectation specified by the given {@link RequestMatcher}. Returns a {@link RepeatableResponseActions} object
 	 * that allows for creating the response, or to set up more expectations.
 	 *
 	 * @param requestMatcher the request matcher expected
 	 * @return the response actions
 	 */
-	public ResponseActions expect(RequestMatcher requestMatcher) {
+	public RepeatableResponseActions expect(RequestMatcher requestMatcher) {
 		return mockWebServiceServer.expect(requestMatcher);
 	}
 
@@ -3,7 +3,7 @@ package net.javacrumbs.smock.axis2.client;
 import java.io.IOException;
 
 import net.javacrumbs.smock.extended.client.connection.MockConnection;
-import net.javacrumbs.smock.extended.client.connection.threadlocal.ThreadLocalMockWebServiceServer;
+import net.javacrumbs.smock.extended.client.connection.shared.SharedMockWebServiceServer;
 
 import org.apache.axis2.AxisFault;
 import org.apache.axis2.context.ConfigurationContext;
@@ -16,7 +16,8 @@ import org.apache.axis2.transport.TransportUtils;
 public class MockTransportSender extends AbstractHandler implements TransportSender {
 
 	public InvocationResponse invoke(MessageContext msgContext)	throws AxisFault {
-		MockConnection activeConnection = ThreadLocalMockWebServiceServer.getActiveConnection();
+		MockConnection activeConnection = SharedMockWebServiceServer.getActiveConnection();
+		activeConnection.setSoapAction(msgContext.getSoapAction());
 		TransportUtils.writeMessage(msgContext, activeConnection.getOutputStream());
 		try {
 			msgContext.setProperty(MessageContext.TRANSPORT_IN, activeConnection.getInputStream());
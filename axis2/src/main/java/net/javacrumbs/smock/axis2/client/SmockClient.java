@@ -20,6 +20,7 @@ import java.util.HashMap;
 
 import net.javacrumbs.smock.common.client.CommonSmockClient;
 import net.javacrumbs.smock.extended.client.connection.MockWebServiceServer;
+import net.javacrumbs.smock.extended.client.connection.shared.SharedMockWebServiceServer;
 import net.javacrumbs.smock.extended.client.connection.threadlocal.ThreadLocalMockWebServiceServer;
 
 import org.apache.axis2.AxisFault;
@@ -62,7 +63,20 @@ public class SmockClient extends CommonSmockClient {
 	
 	public static MockWebServiceServer createServer(WebServiceMessageFactory messageFactory, EndpointInterceptor[] interceptors)
 	{
-		return new ThreadLocalMockWebServiceServer(messageFactory, interceptors);
+		return createServer(messageFactory, interceptors, true);
+	}
+	
+	/**
+	 * Creates mock server. If ordered is false, requests are matched with expectations regardless of the order,
+	 * which is useful when the client sends requests in parallel. 
+	 * @param messageFactory
+	 * @param interceptors
+	 * @param ordered
+	 * @return
+	 */
+	public static MockWebServiceServer createServer(WebServiceMessageFactory messageFactory, EndpointInterceptor[] interceptors, boolean ordered)
+	{
+		return new ThreadLocalMockWebServiceServer(messageFactory, interceptors, ordered);
 	}
 
 	public static MockWebServiceServer createServer(WebServiceMessageFactory messageFactory)
@@ -79,4 +93,28 @@ public class SmockClient extends CommonSmockClient {
 	{
 		return createServer(createMessageFactory(), null);
 	}
+	
+	/**
+	 * Creates mock server that is shared by all threads. Use it if the client sends requests from other threads 
+	 * than the test. Only one shared server can be active at a time, it has to be closed by 
+	 * {@link SharedMockWebServiceServer#close()} after the test. 
+	 * @param messageFactory
+	 * @param interceptors
+	 * @param ordered
+	 * @return
+	 */
+	public static SharedMockWebServiceServer createSharedServer(WebServiceMessageFactory messageFactory, EndpointInterceptor[] interceptors, boolean ordered)
+	{
+		return new SharedMockWebServiceServer(messageFactory, interceptors, ordered);
+	}
+	
+	/**
+	 * Creates mock server that is shared by more threads. Since requests sent from more threads 
+	 * come in unpredictable order, the server does not require expectations to be called in order.
+	 * @return
+	 */
+	public static SharedMockWebServiceServer createSharedServer()
+	{
+		return createSharedServer(createMessageFactory(), null, false);
+	}
 }
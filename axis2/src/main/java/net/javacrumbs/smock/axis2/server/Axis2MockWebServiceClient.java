@@ -16,32 +16,57 @@
 package net.javacrumbs.smock.axis2.server;
 
 import static net.javacrumbs.smock.common.XmlUtil.getEnvelopeSource;
-import static net.javacrumbs.smock.common.XmlUtil.getSourceAsStream;
+import static net.javacrumbs.smock.common.XmlUtil.loadDocument;
 
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
-import java.io.InputStream;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+import javax.xml.stream.XMLStreamException;
+import javax.xml.soap.SOAPException;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.transform.dom.DOMSource;
+import javax.xml.transform.stax.StAXSource;
 
 import net.javacrumbs.smock.common.InterceptingTemplate;
+import net.javacrumbs.smock.common.InterceptionListener;
 import net.javacrumbs.smock.common.server.MockWebServiceClientResponseActions;
+import net.javacrumbs.smock.extended.server.LoadDriver;
+import net.javacrumbs.smock.extended.server.LoadDriver.RequestSender;
+import net.javacrumbs.smock.extended.server.LoadTestResult;
 
+import org.apache.axiom.om.OMXMLBuilderFactory;
+import org.apache.axiom.soap.SOAPEnvelope;
+import org.apache.axiom.soap.SOAPFactory;
+import org.apache.axiom.soap.SOAPMessage;
+import org.apache.axis2.AxisFault;
+import org.apache.axis2.Constants;
 import org.apache.axis2.addressing.EndpointReference;
 import org.apache.axis2.context.ConfigurationContext;
-import org.apache.axis2.description.Flow;
-import org.apache.axis2.description.TransportInDescription;
-import org.apache.axis2.transport.local.LocalTransportReceiver;
+import org.apache.axis2.description.TransportOutDescription;
+import org.apache.axis2.engine.AxisConfiguration;
+import org.apache.axis2.engine.AxisEngine;
+import org.apache.axis2.handlers.AbstractHandler;
+import org.apache.axis2.transport.TransportSender;
+import org.apache.axis2.util.MessageContextBuilder;
 import org.springframework.util.Assert;
 import org.springframework.ws.WebServiceMessage;
 import org.springframework.ws.WebServiceMessageFactory;
 import org.springframework.ws.client.support.interceptor.ClientInterceptor;
 import org.springframework.ws.context.DefaultMessageContext;
 import org.springframework.ws.context.MessageContext;
+import org.springframework.ws.soap.axiom.AxiomSoapMessage;
+import org.springframework.ws.soap.axiom.AxiomSoapMessageFactory;
+import org.springframework.ws.soap.saaj.SaajSoapMessage;
 import org.springframework.ws.soap.saaj.SaajSoapMessageFactory;
 import org.springframework.ws.test.server.RequestCreator;
 import org.springframework.ws.test.server.RequestCreators;
 import org.springframework.ws.test.server.ResponseActions;
 import org.springframework.ws.test.support.AssertionErrors;
 import org.springframework.ws.transport.WebServiceMessageReceiver;
+import org.w3c.dom.Document;
 
 /**
  * Creates connection to Axis 2.
@@ -50,13 +75,21 @@ import org.springframework.ws.transport.WebServiceMessageReceiver;
 public class Axis2MockWebServiceClient {
 	private final WebServiceMessageFactory messageFactory;
 	private final InterceptingTemplate interceptingTemplate;
-	private final LocalTransportReceiver receiver;
 	private final ConfigurationContext configurationContext;
 	
 	public Axis2MockWebServiceClient(WebServiceMessageFactory messageFactory, ConfigurationContext configurationContext, ClientInterceptor[] interceptors) {
+		this(messageFactory, configurationContext, interceptors, null);
+	}
+	
+	/**
+	 * @param messageFactory
+	 * @param configurationContext
+	 * @param interceptors
+	 * @param interceptionListener notified about time spent in interceptors and in Axis2, can be null
+	 */
+	public Axis2MockWebServiceClient(WebServiceMessageFactory messageFactory, ConfigurationContext configurationContext, ClientInterceptor[] interceptors, InterceptionListener interceptionListener) {
 		this.messageFactory =  messageFactory;
-		interceptingTemplate = new InterceptingTemplate(interceptors);
-		receiver = new LocalTransportReceiver(configurationContext);
+		interceptingTemplate = new InterceptingTemplate(interceptors, interceptionListener);
 		this.configurationContext = configurationContext;
 	}
 
@@ -85,10 +118,12 @@ public class Axis2MockWebServiceClient {
 			MessageContext messageContext = new DefaultMessageContext(requestMessage, messageFactory);
 			interceptingTemplate.interceptRequest(messageContext, new WebServiceMessageReceiver() {
 				public void receive(MessageContext messageContext) throws Exception {
-					ByteArrayOutputStream response = new ByteArrayOutputStream();
-					InputStream request = getSourceAsStream(getEnvelopeSource(messageContext.getRequest()));
-					receiver.processMessage(createMessageContext(action, to), request, response);
-					messageContext.setResponse(messageFactory.createWebServiceMessage(new ByteArrayInputStream(response.toByteArray())));
+					SOAPEnvelope request = createRequestEnvelope(messageContext.getRequest());
+					SOAPEnvelope response = processMessage(createMessageContext(action, to), request);
+					if (response!=null)
+					{
+						messageContext.setResponse(createResponse(response));
+					}
 				}
 			});
 			return new MockWebServiceClientResponseActions(messageContext);
@@ -111,6 +146,46 @@ public class Axis2MockWebServiceClient {
     	EndpointReference to = new EndpointReference(serviceAddress);
 		return sendRequestTo(to , null, requestCreator);
     }
+    
+    /**
+     * Sends requests to Axis 2 from given number of concurrent threads. Each request is processed 
+     * in its own Axis 2 message context. Virtual threads are used where available.
+     * Errors do not stop the run, they are collected in the result together with latencies.
+     * @param to
+     * @param action
+     * @param requestCreators
+     * @param concurrency
+     * @return
+     */
+    public LoadTestResult sendRequests(EndpointReference to, String action, List<? extends RequestCreator> requestCreators, int concurrency) {
+    	return LoadDriver.sendRequests(requestCreators, concurrency, createSender(to, action));
+    }
+    
+    /**
+     * Sends requests to Axis 2 using given executor. At most <code>concurrency</code> requests are sent at the same time.
+     * The executor is not shut down.
+     * @param to
+     * @param action
+     * @param requestCreators
+     * @param concurrency
+     * @param executor
+     * @return
+     */
+    public LoadTestResult sendRequests(EndpointReference to, String action, List<? extends RequestCreator> requestCreators, int concurrency, Executor executor) {
+    	return LoadDriver.sendRequests(requestCreators, concurrency, executor, createSender(to, action));
+    }
+    
+    public LoadTestResult sendRequests(String serviceAddress, List<? extends RequestCreator> requestCreators, int concurrency) {
+    	return sendRequests(new EndpointReference(serviceAddress), null, requestCreators, concurrency);
+    }
+    
+    private RequestSender createSender(final EndpointReference to, final String action) {
+    	return new RequestSender() {
+			public ResponseActions sendRequest(RequestCreator requestCreator) {
+				return sendRequestTo(to, action, requestCreator);
+			}
+		};
+    }
 
 	private org.apache.axis2.context.MessageContext createMessageContext(final String action, final EndpointReference to)
 	{
@@ -119,4 +194,122 @@ public class Axis2MockWebServiceClient {
 		mc.setTo(to);
 		return mc;
 	}
+	
+	/**
+	 * Passes the request to Axis 2 as a StAX stream. Axiom messages are read directly, other messages 
+	 * through their envelope source (DOM in case of SAAJ), so the request is not serialized.
+	 * @param request
+	 * @return
+	 */
+	private SOAPEnvelope createRequestEnvelope(WebServiceMessage request) {
+		if (request instanceof AxiomSoapMessage)
+		{
+			XMLStreamReader reader = ((AxiomSoapMessage)request).getAxiomMessage().getSOAPEnvelope().getXMLStreamReader();
+			return OMXMLBuilderFactory.createStAXSOAPModelBuilder(reader).getSOAPEnvelope();
+		}
+		else
+		{
+			return OMXMLBuilderFactory.createSOAPModelBuilder(getEnvelopeSource(request)).getSOAPEnvelope();
+		}
+	}
+	
+	/**
+	 * Does the same as {@link org.apache.axis2.transport.local.LocalTransportReceiver}, but the request is passed as an envelope and the response envelope 
+	 * is taken from the message context instead of being written to a stream.
+	 * @param mc
+	 * @param request
+	 * @return response envelope or null, if there is no response
+	 * @throws AxisFault
+	 */
+	private SOAPEnvelope processMessage(org.apache.axis2.context.MessageContext mc, SOAPEnvelope request) throws AxisFault
+	{
+		AxisConfiguration axisConfiguration = configurationContext.getAxisConfiguration();
+		ResponseCapturingSender sender = new ResponseCapturingSender();
+		TransportOutDescription transportOut = createTransportOut(axisConfiguration.getTransportOut(Constants.TRANSPORT_LOCAL), sender);
+		mc.setIncomingTransportName(Constants.TRANSPORT_LOCAL);
+		mc.setTransportIn(axisConfiguration.getTransportIn(Constants.TRANSPORT_LOCAL));
+		mc.setTransportOut(transportOut);
+		mc.setServerSide(true);
+		mc.setEnvelope(request);
+		try {
+			AxisEngine.receive(mc);
+		} catch (AxisFault e) {
+			org.apache.axis2.context.MessageContext faultContext = MessageContextBuilder.createFaultMessageContext(mc, e);
+			faultContext.setTransportOut(transportOut);
+			AxisEngine.sendFault(faultContext);
+		}
+		return sender.getEnvelope();
+	}
+	
+	private TransportOutDescription createTransportOut(TransportOutDescription localTransport, TransportSender sender)
+	{
+		TransportOutDescription transportOut = new TransportOutDescription(localTransport.getName());
+		transportOut.setOutFlow(localTransport.getOutFlow());
+		transportOut.setFaultFlow(localTransport.getFaultFlow());
+		transportOut.setOutPhase(localTransport.getOutPhase());
+		transportOut.setFaultPhase(localTransport.getFaultPhase());
+		transportOut.setSender(sender);
+		return transportOut;
+	}
+	
+	/**
+	 * Wraps the response envelope if Axiom message factory is used. SAAJ message is filled from the envelope 
+	 * StAX stream. Otherwise the envelope is serialized and parsed by the message factory.
+	 * @param envelope
+	 * @return
+	 * @throws IOException
+	 * @throws XMLStreamException
+	 * @throws SOAPException 
+	 */
+	private WebServiceMessage createResponse(SOAPEnvelope envelope) throws IOException, XMLStreamException, SOAPException
+	{
+		if (messageFactory instanceof AxiomSoapMessageFactory)
+		{
+			SOAPMessage axiomMessage = ((SOAPFactory)envelope.getOMFactory()).createSOAPMessage();
+			axiomMessage.setSOAPEnvelope(envelope);
+			return new AxiomSoapMessage(axiomMessage, "", true, true);
+		}
+		else if (messageFactory instanceof SaajSoapMessageFactory)
+		{
+			SaajSoapMessage message = ((SaajSoapMessageFactory)messageFactory).createWebServiceMessage();
+			Document document = loadDocument(new StAXSource(envelope.getXMLStreamReader()));
+			message.getSaajMessage().getSOAPPart().setContent(new DOMSource(document));
+			return message;
+		}
+		else
+		{
+			ByteArrayOutputStream response = new ByteArrayOutputStream();
+			envelope.serialize(response);
+			return messageFactory.createWebServiceMessage(new ByteArrayInputStream(response.toByteArray()));
+		}
+	}
+	
+	/**
+	 * Keeps the envelope sent by Axis 2.
+	 */
+	private static class ResponseCapturingSender extends AbstractHandler implements TransportSender
+	{
+		private SOAPEnvelope envelope;
+		
+		public InvocationResponse invoke(org.apache.axis2.context.MessageContext msgContext) throws AxisFault {
+			envelope = msgContext.getEnvelope();
+			return InvocationResponse.CONTINUE;
+		}
+
+		public void init(ConfigurationContext confContext, TransportOutDescription transportOut) throws AxisFault {
+			
+		}
+
+		public void cleanup(org.apache.axis2.context.MessageContext msgContext) throws AxisFault {
+			
+		}
+
+		public void stop() {
+			
+		}
+		
+		public SOAPEnvelope getEnvelope() {
+			return envelope;
+		}
+	}
 }
@@ -21,7 +21,9 @@ import org.apache.axis2.context.ConfigurationContext;
 import org.apache.axis2.context.ConfigurationContextFactory;
 import org.springframework.core.io.Resource;
 import org.springframework.util.Assert;
+import org.springframework.ws.WebServiceMessageFactory;
 import org.springframework.ws.client.support.interceptor.ClientInterceptor;
+import org.springframework.ws.soap.axiom.AxiomSoapMessageFactory;
 
 /**
  * Adds extra functionality to Spring WS server test support. 
@@ -34,6 +36,18 @@ public class SmockServer extends CommonSmockServer {
 		return new Axis2MockWebServiceClient(configurationContext, interceptors);
 	}
 	
+	/**
+	 * Creates client using given message factory. With {@link AxiomSoapMessageFactory} requests and responses 
+	 * are passed to and from Axis 2 without serialization.
+	 * @param messageFactory
+	 * @param configurationContext
+	 * @param interceptors
+	 * @return
+	 */
+	public static Axis2MockWebServiceClient createClient(WebServiceMessageFactory messageFactory, ConfigurationContext configurationContext, ClientInterceptor[] interceptors) {
+		return new Axis2MockWebServiceClient(messageFactory, configurationContext, interceptors);
+	}
+	
 	public static Axis2MockWebServiceClient createClient(ConfigurationContext configurationContext) {
 		return createClient(configurationContext, null);
 	}
@@ -25,13 +25,23 @@ import static org.easymock.EasyMock.createMock;
 import static org.easymock.EasyMock.expect;
 import static org.easymock.EasyMock.replay;
 import static org.easymock.EasyMock.verify;
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.springframework.ws.test.server.ResponseMatchers.serverOrReceiverFault;
+
+import java.util.Collections;
+import java.util.List;
+
+import net.javacrumbs.smock.extended.server.LoadTestResult;
 
 import org.apache.axis2.context.ConfigurationContext;
 import org.junit.Before;
 import org.junit.Test;
 import org.springframework.ws.client.support.interceptor.ClientInterceptor;
 import org.springframework.ws.context.MessageContext;
+import org.springframework.ws.soap.axiom.AxiomSoapMessageFactory;
+import org.springframework.ws.test.server.RequestCreator;
+import org.springframework.ws.test.server.ResponseActions;
 
 
 public class Axis2MockWebServiceClientTest{
@@ -66,4 +76,44 @@ public class Axis2MockWebServiceClientTest{
 		
 		verify(interceptor);
 	}
+	
+	@Test
+	public void testAxiomMessageFactory() throws Exception
+	{
+		TstWebService.clean();
+		AxiomSoapMessageFactory messageFactory = new AxiomSoapMessageFactory();
+		messageFactory.afterPropertiesSet();
+		createClient(messageFactory, configurationContext, null).sendRequestTo("/axis2/services/TestService", withMessage("request.xml")).andExpect(message("response.xml"));
+		
+		assertNotNull(TstWebService.getValue());
+	}
+	
+	@Test
+	public void testFault()
+	{
+		createClient(configurationContext).sendRequestTo("/axis2/services/TestService", withMessage("fault-request.xml")).andExpect(serverOrReceiverFault());
+	}
+	
+	@Test
+	public void testFaultAxiomMessageFactory() throws Exception
+	{
+		AxiomSoapMessageFactory messageFactory = new AxiomSoapMessageFactory();
+		messageFactory.afterPropertiesSet();
+		createClient(messageFactory, configurationContext, null).sendRequestTo("/axis2/services/TestService", withMessage("fault-request.xml")).andExpect(serverOrReceiverFault());
+	}
+	
+	@Test
+	public void testSendRequests()
+	{
+		List<RequestCreator> requests = Collections.<RequestCreator>nCopies(50, withMessage("request.xml"));
+		LoadTestResult result = createClient(configurationContext).sendRequests("/axis2/services/TestService", requests, 8);
+		
+		assertEquals(result.getErrors().toString(), 0, result.getErrorCount());
+		for (ResponseActions response: result.getResponses())
+		{
+			response.andExpect(message("response.xml"));
+		}
+		assertEquals(50, result.getLatency().getCount());
+		assertEquals(49, result.getMeasuredRequestCount());
+	}
 }
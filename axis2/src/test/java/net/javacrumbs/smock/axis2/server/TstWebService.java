@@ -26,6 +26,11 @@ public class TstWebService {
 		return "Hallo "+text+"!";
 	}
 	
+	public String faultMethod(String text)
+	{
+		throw new IllegalArgumentException("Fault for "+text);
+	}
+	
 	public static String getValue()
 	{
 		return text.get();
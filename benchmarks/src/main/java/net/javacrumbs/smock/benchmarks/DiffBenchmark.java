@@ -0,0 +1,69 @@
+/**
+ * Copyright 2009-2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.javacrumbs.smock.benchmarks;
+
+import static net.javacrumbs.smock.benchmarks.Payloads.createPayload;
+import static net.javacrumbs.smock.common.XmlUtil.loadDocument;
+
+import javax.xml.transform.dom.DOMSource;
+
+import net.javacrumbs.smock.common.EnhancedDiff;
+import net.javacrumbs.smock.common.StreamingDiff;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Setup;
+import org.springframework.xml.transform.StringSource;
+import org.w3c.dom.Document;
+
+/**
+ * Benchmarks {@link EnhancedDiff#similar()} and compares it with {@link StreamingDiff#similar()}.
+ * @author Lukas Krecan
+ *
+ */
+public class DiffBenchmark extends AbstractBenchmark {
+	
+	private String payload;
+	
+	private Document control;
+	
+	private Document test;
+	
+	@Setup
+	public void setUp()
+	{
+		payload = createPayload(size);
+		control = loadDocument(new StringSource(payload));
+		test = loadDocument(new StringSource(payload));
+	}
+	
+	@Benchmark
+	public boolean enhancedDiff()
+	{
+		return new EnhancedDiff(control, test).similar();
+	}
+	
+	@Benchmark
+	public boolean streamingDiffDom()
+	{
+		return new StreamingDiff(new DOMSource(control), new DOMSource(test)).similar();
+	}
+	
+	@Benchmark
+	public boolean streamingDiffString()
+	{
+		return new StreamingDiff(new StringSource(payload), new StringSource(payload)).similar();
+	}
+}
@@ -0,0 +1,87 @@
+/**
+ * Copyright 2009-2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.javacrumbs.smock.benchmarks;
+
+import static net.javacrumbs.smock.benchmarks.Payloads.createEnvelope;
+import static net.javacrumbs.smock.benchmarks.Payloads.createPayload;
+import static net.javacrumbs.smock.common.XmlUtil.loadDocument;
+
+import java.io.IOException;
+
+import javax.xml.transform.dom.DOMSource;
+
+import net.javacrumbs.smock.common.MessageCreator;
+import net.javacrumbs.smock.common.SmockCommon;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Setup;
+import org.springframework.ws.WebServiceMessage;
+import org.springframework.ws.WebServiceMessageFactory;
+import org.springframework.xml.transform.StringSource;
+import org.w3c.dom.Document;
+
+/**
+ * Benchmarks {@link MessageCreator#createResponse(java.net.URI, WebServiceMessage, WebServiceMessageFactory)}. Creators are 
+ * created for each invocation, since they cache serialized responses. Sources contain whole SOAP envelope.
+ * @author Lukas Krecan
+ *
+ */
+public class MessageCreatorBenchmark extends AbstractBenchmark {
+	
+	private WebServiceMessageFactory messageFactory;
+	
+	private String envelope;
+	
+	private Document envelopeDocument;
+	
+	private MessageCreator stringCreator;
+	
+	private MessageCreator domCreator;
+	
+	@Setup
+	public void setUp()
+	{
+		messageFactory = SmockCommon.createMessageFactory();
+		envelope = createEnvelope(createPayload(size));
+		envelopeDocument = loadDocument(new StringSource(envelope));
+	}
+	
+	@Setup(Level.Invocation)
+	public void createCreators()
+	{
+		stringCreator = new MessageCreator(new StringSource(envelope));
+		domCreator = new MessageCreator(new DOMSource(envelopeDocument));
+	}
+	
+	@Benchmark
+	public WebServiceMessage createResponseFromString() throws IOException
+	{
+		return stringCreator.createResponse(null, null, messageFactory);
+	}
+	
+	@Benchmark
+	public WebServiceMessage createResponseFromDom() throws IOException
+	{
+		return domCreator.createResponse(null, null, messageFactory);
+	}
+	
+	@Benchmark
+	public byte[] createResponseBytes() throws IOException
+	{
+		return stringCreator.createResponseBytes(null, null, messageFactory);
+	}
+}
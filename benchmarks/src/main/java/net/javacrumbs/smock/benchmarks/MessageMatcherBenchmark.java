@@ -0,0 +1,82 @@
+/**
+ * Copyright 2009-2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.javacrumbs.smock.benchmarks;
+
+import static net.javacrumbs.smock.benchmarks.Payloads.createEnvelope;
+import static net.javacrumbs.smock.benchmarks.Payloads.createMessage;
+import static net.javacrumbs.smock.benchmarks.Payloads.createPayload;
+
+import java.io.IOException;
+import java.net.URI;
+
+import net.javacrumbs.smock.common.MessageMatcher;
+import net.javacrumbs.smock.common.SmockCommon;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Setup;
+import org.springframework.ws.WebServiceMessage;
+import org.springframework.xml.transform.StringSource;
+
+/**
+ * Benchmarks {@link MessageMatcher#match(java.net.URI, WebServiceMessage)}.
+ * @author Lukas Krecan
+ *
+ */
+public class MessageMatcherBenchmark extends AbstractBenchmark {
+	
+	private static final URI SERVICE_URI = URI.create("http://example.org/service");
+	
+	private MessageMatcher payloadMatcher;
+	
+	private MessageMatcher envelopeMatcher;
+	
+	private WebServiceMessage request;
+	
+	@Setup
+	public void setUp() throws IOException
+	{
+		String payload = createPayload(size);
+		payloadMatcher = new MessageMatcher(new StringSource(payload));
+		envelopeMatcher = new MessageMatcher(new StringSource(createEnvelope(payload)));
+		request = createMessage(SmockCommon.createMessageFactory(), payload);
+	}
+	
+	@Benchmark
+	public void matchPayload() throws IOException
+	{
+		payloadMatcher.match(SERVICE_URI, request);
+	}
+	
+	@Benchmark
+	public void matchEnvelope() throws IOException
+	{
+		envelopeMatcher.match(SERVICE_URI, request);
+	}
+	
+	@Benchmark
+	public void matchPayloadStreaming() throws IOException
+	{
+		SmockCommon.setStreamingComparison(true);
+		try
+		{
+			payloadMatcher.match(SERVICE_URI, request);
+		}
+		finally
+		{
+			SmockCommon.setStreamingComparison(false);
+		}
+	}
+}
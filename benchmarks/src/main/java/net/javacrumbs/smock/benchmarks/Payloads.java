@@ -0,0 +1,78 @@
+/**
+ * Copyright 2009-2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.javacrumbs.smock.benchmarks;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+
+import net.javacrumbs.smock.common.XmlUtil;
+
+import org.springframework.ws.WebServiceMessage;
+import org.springframework.ws.WebServiceMessageFactory;
+
+/**
+ * Generates benchmark messages of given size.
+ * @author Lukas Krecan
+ *
+ */
+final class Payloads {
+	
+	static final String NAMESPACE = "http://javacrumbs.net/smock/benchmark";
+	
+	static final String SOAP_NAMESPACE = "http://schemas.xmlsoap.org/soap/envelope/";
+	
+	private Payloads() {
+		
+	}
+	
+	/**
+	 * Returns payload with root element "order" that has approximately given number of characters. 
+	 * @param size
+	 * @return
+	 */
+	static String createPayload(int size)
+	{
+		StringBuilder payload = new StringBuilder(size + 256);
+		payload.append("<ns:order xmlns:ns=\"").append(NAMESPACE).append("\" xmlns:xsi=\"http://www.w3.org/2001/XMLSchema-instance\">");
+		String end = "</ns:order>";
+		int item = 0;
+		while (payload.length() + end.length() < size)
+		{
+			payload.append("<ns:item id=\"").append(item).append("\" xsi:type=\"ns:Item\">")
+				.append("<ns:name>Item number ").append(item).append("</ns:name>")
+				.append("<ns:price currency=\"EUR\">").append(item % 1000).append(".50</ns:price>")
+				.append("</ns:item>");
+			item++;
+		}
+		payload.append(end);
+		return payload.toString();
+	}
+	
+	/**
+	 * Wraps payload to SOAP 1.1 envelope.
+	 * @param payload
+	 * @return
+	 */
+	static String createEnvelope(String payload)
+	{
+		return "<soapenv:Envelope xmlns:soapenv=\"" + SOAP_NAMESPACE + "\"><soapenv:Header/><soapenv:Body>" + payload + "</soapenv:Body></soapenv:Envelope>";
+	}
+	
+	static WebServiceMessage createMessage(WebServiceMessageFactory messageFactory, String payload) throws IOException
+	{
+		return messageFactory.createWebServiceMessage(new ByteArrayInputStream(XmlUtil.stringToBytes(createEnvelope(payload))));
+	}
+}
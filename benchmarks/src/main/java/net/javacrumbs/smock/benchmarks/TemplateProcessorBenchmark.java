@@ -0,0 +1,85 @@
+/**
+ * Copyright 2009-2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.javacrumbs.smock.benchmarks;
+
+import static net.javacrumbs.smock.benchmarks.Payloads.NAMESPACE;
+import static net.javacrumbs.smock.benchmarks.Payloads.createPayload;
+import static net.javacrumbs.smock.common.XmlUtil.loadDocument;
+
+import java.util.Collections;
+import java.util.Map;
+
+import javax.xml.transform.Source;
+import javax.xml.transform.dom.DOMSource;
+
+import net.javacrumbs.smock.common.XsltTemplateProcessor;
+import net.javacrumbs.smock.common.groovy.GroovyTemplateProcessor;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Setup;
+import org.springframework.xml.transform.StringSource;
+
+/**
+ * Benchmarks {@link XsltTemplateProcessor} and {@link GroovyTemplateProcessor}. The template is small, the size of the input varies.
+ * @author Lukas Krecan
+ *
+ */
+public class TemplateProcessorBenchmark extends AbstractBenchmark {
+	
+	private static final String XSLT_TEMPLATE = 
+		"<xsl:stylesheet version=\"1.0\" xmlns:xsl=\"http://www.w3.org/1999/XSL/Transform\" xmlns:ns=\"" + NAMESPACE + "\">" +
+		"<xsl:param name=\"status\"/>" +
+		"<xsl:template match=\"/\">" +
+		"<ns:response><ns:status><xsl:value-of select=\"$status\"/></ns:status><ns:count><xsl:value-of select=\"count(//ns:item)\"/></ns:count></ns:response>" +
+		"</xsl:template>" +
+		"</xsl:stylesheet>";
+	
+	private static final String GROOVY_TEMPLATE = 
+		"<ns:response xmlns:ns=\"" + NAMESPACE + "\"><ns:status>$status</ns:status><ns:count>${order.item.size()}</ns:count></ns:response>";
+	
+	private static final Map<String, Object> PARAMETERS = Collections.<String, Object>singletonMap("status", "OK");
+	
+	private final XsltTemplateProcessor xsltTemplateProcessor = new XsltTemplateProcessor();
+	
+	private final GroovyTemplateProcessor groovyTemplateProcessor = new GroovyTemplateProcessor();
+	
+	private Source xsltTemplate;
+	
+	private Source groovyTemplate;
+	
+	private Source input;
+	
+	@Setup
+	public void setUp()
+	{
+		//templates loaded by SmockCommon.fromResource are DOM sources
+		xsltTemplate = new DOMSource(loadDocument(new StringSource(XSLT_TEMPLATE)));
+		groovyTemplate = new DOMSource(loadDocument(new StringSource(GROOVY_TEMPLATE)));
+		input = new DOMSource(loadDocument(new StringSource(createPayload(size))));
+	}
+	
+	@Benchmark
+	public Source xslt()
+	{
+		return xsltTemplateProcessor.processTemplate(xsltTemplate, input, PARAMETERS);
+	}
+	
+	@Benchmark
+	public Source groovy()
+	{
+		return groovyTemplateProcessor.processTemplate(groovyTemplate, input, PARAMETERS);
+	}
+}
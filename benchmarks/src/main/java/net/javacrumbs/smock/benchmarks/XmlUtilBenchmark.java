@@ -0,0 +1,60 @@
+/**
+ * Copyright 2009-2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.javacrumbs.smock.benchmarks;
+
+import static net.javacrumbs.smock.benchmarks.Payloads.createEnvelope;
+import static net.javacrumbs.smock.benchmarks.Payloads.createPayload;
+import static net.javacrumbs.smock.common.XmlUtil.loadDocument;
+
+import javax.xml.transform.dom.DOMSource;
+
+import net.javacrumbs.smock.common.XmlUtil;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Setup;
+import org.springframework.xml.transform.StringSource;
+import org.w3c.dom.Document;
+
+/**
+ * Benchmarks {@link XmlUtil#isSoap(javax.xml.transform.Source)}.
+ * @author Lukas Krecan
+ *
+ */
+public class XmlUtilBenchmark extends AbstractBenchmark {
+	
+	private String envelope;
+	
+	private Document envelopeDocument;
+	
+	@Setup
+	public void setUp()
+	{
+		envelope = createEnvelope(createPayload(size));
+		envelopeDocument = loadDocument(new StringSource(envelope));
+	}
+	
+	@Benchmark
+	public boolean isSoapString()
+	{
+		return XmlUtil.isSoap(new StringSource(envelope));
+	}
+	
+	@Benchmark
+	public boolean isSoapDom()
+	{
+		return XmlUtil.isSoap(new DOMSource(envelopeDocument));
+	}
+}
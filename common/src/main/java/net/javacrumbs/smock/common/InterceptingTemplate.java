@@ -17,6 +17,8 @@ package net.javacrumbs.smock.common;
 
 import java.io.IOException;
 
+import net.javacrumbs.smock.common.InterceptionListener.Phase;
+
 import org.springframework.ws.FaultAwareWebServiceMessage;
 import org.springframework.ws.WebServiceMessage;
 import org.springframework.ws.client.core.WebServiceTemplate;
@@ -25,41 +27,97 @@ import org.springframework.ws.context.MessageContext;
 import org.springframework.ws.transport.WebServiceMessageReceiver;
 
 /**
- * Common template class for interceptor handling. Inspired by {@link WebServiceTemplate}.
+ * Common template class for interceptor handling. Inspired by {@link WebServiceTemplate}. If {@link InterceptionListener}
+ * is set, it is notified about time spent in each interceptor and in the message receiver. 
  * @author Lukas Krecan
  */
 public class InterceptingTemplate {
 	
 	private final ClientInterceptor[] interceptors;
 	
+	private final InterceptionListener interceptionListener;
+	
     public InterceptingTemplate(ClientInterceptor[] interceptors) {
-		this.interceptors = interceptors;
+		this(interceptors, null);
 	}
+    
+    /**
+     * @param interceptors
+     * @param interceptionListener listener to be notified, if null, listener set by {@link SmockCommon#setInterceptionListener(InterceptionListener)} is used
+     */
+    public InterceptingTemplate(ClientInterceptor[] interceptors, InterceptionListener interceptionListener) {
+    	this.interceptors = interceptors;
+    	this.interceptionListener = interceptionListener;
+    }
 
 	public void interceptRequest(MessageContext messageContext, WebServiceMessageReceiver messageReceiver) throws Exception {
+		InterceptionListener listener = getInterceptionListener();
         int interceptorIndex = -1;
 		if (interceptors != null) {
             for (int i = 0; i < interceptors.length; i++) {
                 interceptorIndex = i;
-                if (!interceptors[i].handleRequest(messageContext)) {
+                if (!invoke(interceptors[i], Phase.HANDLE_REQUEST, messageContext, listener)) {
                     break;
                 }
             }
         }
 		// if an interceptor has set a response, we don't send/receive
         if (!messageContext.hasResponse()) {
-        	messageReceiver.receive(messageContext);
+        	receive(messageReceiver, messageContext, listener);
         }
         if (messageContext.hasResponse()) {
             if (!hasFault(messageContext.getResponse())) {
-                triggerHandleResponse(interceptorIndex, messageContext);
+                triggerHandleResponse(interceptorIndex, messageContext, listener);
             }
             else {
-                triggerHandleFault(interceptorIndex, messageContext);
+                triggerHandleFault(interceptorIndex, messageContext, listener);
             }
         }
 	}
 	
+	/**
+	 * Returns listener set in the constructor or the default one.
+	 * @return
+	 */
+	public InterceptionListener getInterceptionListener() {
+		return interceptionListener!=null ? interceptionListener : SmockCommon.getInterceptionListener();
+	}
+	
+	private void receive(WebServiceMessageReceiver messageReceiver, MessageContext messageContext, InterceptionListener listener) throws Exception {
+		if (listener==null) {
+			messageReceiver.receive(messageContext);
+			return;
+		}
+		long start = System.nanoTime();
+		try {
+			messageReceiver.receive(messageContext);
+		}
+		finally {
+			listener.receiverCalled(messageReceiver, System.nanoTime() - start);
+		}
+	}
+	
+	private boolean invoke(ClientInterceptor interceptor, Phase phase, MessageContext messageContext, InterceptionListener listener) {
+		if (listener==null) {
+			return invoke(interceptor, phase, messageContext);
+		}
+		long start = System.nanoTime();
+		try {
+			return invoke(interceptor, phase, messageContext);
+		}
+		finally {
+			listener.interceptorCalled(interceptor, phase, System.nanoTime() - start);
+		}
+	}
+
+	private boolean invoke(ClientInterceptor interceptor, Phase phase, MessageContext messageContext) {
+		switch (phase) {
+			case HANDLE_REQUEST: return interceptor.handleRequest(messageContext);
+			case HANDLE_RESPONSE: return interceptor.handleResponse(messageContext);
+			default: return interceptor.handleFault(messageContext);
+		}
+	}
+	
     protected boolean hasFault(WebServiceMessage response) throws IOException {
         if (response instanceof FaultAwareWebServiceMessage) {
             FaultAwareWebServiceMessage faultMessage = (FaultAwareWebServiceMessage) response;
@@ -78,10 +136,10 @@ public class InterceptingTemplate {
      * @see ClientInterceptor#handleResponse(MessageContext)
      * @see ClientInterceptor#handleFault(MessageContext)
      */
-    private void triggerHandleResponse(int interceptorIndex, MessageContext messageContext) {
+    private void triggerHandleResponse(int interceptorIndex, MessageContext messageContext, InterceptionListener listener) {
         if (messageContext.hasResponse() && interceptors != null) {
             for (int i = interceptorIndex; i >= 0; i--) {
-                if (!interceptors[i].handleResponse(messageContext)) {
+                if (!invoke(interceptors[i], Phase.HANDLE_RESPONSE, messageContext, listener)) {
                     break;
                 }
             }
@@ -98,10 +156,10 @@ public class InterceptingTemplate {
      * @see ClientInterceptor#handleResponse(MessageContext)
      * @see ClientInterceptor#handleFault(MessageContext)
      */
-    private void triggerHandleFault(int interceptorIndex, MessageContext messageContext) {
+    private void triggerHandleFault(int interceptorIndex, MessageContext messageContext, InterceptionListener listener) {
         if (messageContext.hasResponse() && interceptors != null) {
             for (int i = interceptorIndex; i >= 0; i--) {
-                if (!interceptors[i].handleFault(messageContext)) {
+                if (!invoke(interceptors[i], Phase.HANDLE_FAULT, messageContext, listener)) {
                     break;
                 }
             }
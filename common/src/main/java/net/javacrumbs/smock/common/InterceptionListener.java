@@ -0,0 +1,47 @@
+/**
+ * Copyright 2009-2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.javacrumbs.smock.common;
+
+import org.springframework.ws.client.support.interceptor.ClientInterceptor;
+import org.springframework.ws.transport.WebServiceMessageReceiver;
+
+/**
+ * Listener notified by {@link InterceptingTemplate} about time spent in interceptors and in the message receiver.
+ * Times are measured by {@link System#nanoTime()} only when a listener is set. Implementations have to be thread-safe.
+ * @author Lukas Krecan
+ */
+public interface InterceptionListener {
+	
+	/**
+	 * Method of {@link ClientInterceptor} that has been called.
+	 */
+	enum Phase {HANDLE_REQUEST, HANDLE_RESPONSE, HANDLE_FAULT}
+	
+	/**
+	 * Called after an interceptor method returns or throws an exception.
+	 * @param interceptor
+	 * @param phase
+	 * @param nanos
+	 */
+	void interceptorCalled(ClientInterceptor interceptor, Phase phase, long nanos);
+	
+	/**
+	 * Called after the message receiver returns or throws an exception.
+	 * @param messageReceiver
+	 * @param nanos
+	 */
+	void receiverCalled(WebServiceMessageReceiver messageReceiver, long nanos);
+}
@@ -0,0 +1,140 @@
+/**
+ * Copyright 2009-2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.javacrumbs.smock.common;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.springframework.ws.client.support.interceptor.ClientInterceptor;
+import org.springframework.ws.transport.WebServiceMessageReceiver;
+
+/**
+ * {@link InterceptionListener} that sums the time spent in each interceptor method and in the message receiver.
+ * Interceptors are identified by class name.
+ * @author Lukas Krecan
+ */
+public class InterceptionStatistics implements InterceptionListener {
+	
+	private static final String RECEIVER = "receiver";
+	
+	private final ConcurrentMap<String, Timer> timers = new ConcurrentHashMap<String, Timer>();
+	
+	public void interceptorCalled(ClientInterceptor interceptor, Phase phase, long nanos) {
+		getTimer(getName(interceptor, phase)).record(nanos);
+	}
+
+	public void receiverCalled(WebServiceMessageReceiver messageReceiver, long nanos) {
+		getTimer(RECEIVER).record(nanos);
+	}
+	
+	/**
+	 * Returns number of calls of the interceptor method.
+	 * @param interceptorClass
+	 * @param phase
+	 * @return
+	 */
+	public long getCount(Class<? extends ClientInterceptor> interceptorClass, Phase phase) {
+		Timer timer = timers.get(getName(interceptorClass, phase));
+		return timer!=null ? timer.count.get() : 0;
+	}
+	
+	/**
+	 * Returns time spent in the interceptor method in nanoseconds.
+	 * @param interceptorClass
+	 * @param phase
+	 * @return
+	 */
+	public long getTime(Class<? extends ClientInterceptor> interceptorClass, Phase phase) {
+		Timer timer = timers.get(getName(interceptorClass, phase));
+		return timer!=null ? timer.nanos.get() : 0;
+	}
+	
+	public long getReceiverCount() {
+		Timer timer = timers.get(RECEIVER);
+		return timer!=null ? timer.count.get() : 0;
+	}
+	
+	/**
+	 * Returns time spent in the message receiver in nanoseconds.
+	 * @return
+	 */
+	public long getReceiverTime() {
+		Timer timer = timers.get(RECEIVER);
+		return timer!=null ? timer.nanos.get() : 0;
+	}
+	
+	/**
+	 * Removes all recorded values.
+	 */
+	public void reset() {
+		timers.clear();
+	}
+	
+	private Timer getTimer(String name) {
+		Timer timer = timers.get(name);
+		if (timer==null)
+		{
+			Timer newTimer = new Timer();
+			timer = timers.putIfAbsent(name, newTimer);
+			if (timer==null)
+			{
+				timer = newTimer;
+			}
+		}
+		return timer;
+	}
+	
+	private static String getName(ClientInterceptor interceptor, Phase phase) {
+		return getName(interceptor.getClass(), phase);
+	}
+	
+	private static String getName(Class<?> interceptorClass, Phase phase) {
+		return interceptorClass.getName() + "." + phase;
+	}
+	
+	/**
+	 * Lists count and time in microseconds of all intercepted calls.
+	 */
+	@Override
+	public String toString() {
+		StringBuilder result = new StringBuilder("InterceptionStatistics[");
+		boolean first = true;
+		for (Map.Entry<String, Timer> entry : new TreeMap<String, Timer>(timers).entrySet())
+		{
+			if (!first)
+			{
+				result.append(", ");
+			}
+			first = false;
+			result.append(entry.getKey()).append(": ").append(entry.getValue().count.get()).append(" calls, ").append(entry.getValue().nanos.get() / 1000).append(" us");
+		}
+		return result.append("]").toString();
+	}
+	
+	private static class Timer {
+		private final AtomicLong count = new AtomicLong();
+		
+		private final AtomicLong nanos = new AtomicLong();
+		
+		void record(long time) {
+			count.incrementAndGet();
+			nanos.addAndGet(time);
+		}
+	}
+}
@@ -0,0 +1,164 @@
+/**
+ * Copyright 2009-2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.javacrumbs.smock.common;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.springframework.util.Assert;
+
+/**
+ * Thread-safe cache with bounded size. When the cache is full, least recently used entry is evicted.
+ * @author Lukas Krecan
+ *
+ * @param <K>
+ * @param <V>
+ */
+public class LruCache<K, V> {
+
+	private final int maxSize;
+
+	private final Map<K, V> entries;
+
+	private long hitCount;
+
+	private long missCount;
+
+	private long evictionCount;
+
+	public LruCache(int maxSize) {
+		Assert.isTrue(maxSize > 0, "'maxSize' has to be positive");
+		this.maxSize = maxSize;
+		this.entries = new LinkedHashMap<K, V>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<K, V> eldest) {
+				if (size() > LruCache.this.maxSize)
+				{
+					evictionCount++;
+					onEviction(eldest.getKey(), eldest.getValue());
+					return true;
+				}
+				return false;
+			}
+		};
+	}
+
+	/**
+	 * Returns cached value or null, if there is no value for given key.
+	 * @param key
+	 * @return
+	 */
+	public synchronized V get(K key) {
+		V value = entries.get(key);
+		if (value != null)
+		{
+			hitCount++;
+		}
+		else
+		{
+			missCount++;
+		}
+		return value;
+	}
+
+	/**
+	 * Stores the value. If the cache is full, least recently used entry is evicted.
+	 * @param key
+	 * @param value
+	 */
+	public synchronized void put(K key, V value) {
+		Assert.notNull(value, "'value' can not be null");
+		entries.put(key, value);
+	}
+
+	/**
+	 * Removes the entry. {@link #onEviction(Object, Object)} is called for the removed entry.
+	 * @param key
+	 * @return removed value or null
+	 */
+	public synchronized V remove(K key) {
+		V value = entries.remove(key);
+		if (value != null)
+		{
+			onEviction(key, value);
+		}
+		return value;
+	}
+
+	/**
+	 * Removes all entries. Statistics are not reset.
+	 */
+	public synchronized void clear() {
+		for (Map.Entry<K, V> entry : entries.entrySet()) {
+			onEviction(entry.getKey(), entry.getValue());
+		}
+		entries.clear();
+	}
+
+	/**
+	 * Called when an entry is removed from the cache. Can be overriden. Called while holding the cache lock.
+	 * @param key
+	 * @param value
+	 */
+	protected void onEviction(K key, V value) {
+
+	}
+
+	/**
+	 * Returns copy of cached values. Does not affect the order of entries nor statistics.
+	 * @return
+	 */
+	public synchronized List<V> values() {
+		return new ArrayList<V>(entries.values());
+	}
+
+	/**
+	 * Returns copy of cached keys. Does not affect the order of entries nor statistics.
+	 * @return
+	 */
+	public synchronized List<K> keys() {
+		return new ArrayList<K>(entries.keySet());
+	}
+
+	public synchronized int size() {
+		return entries.size();
+	}
+
+	public int getMaxSize() {
+		return maxSize;
+	}
+
+	public synchronized long getHitCount() {
+		return hitCount;
+	}
+
+	public synchronized long getMissCount() {
+		return missCount;
+	}
+
+	public synchronized long getEvictionCount() {
+		return evictionCount;
+	}
+
+	@Override
+	public synchronized String toString() {
+		return "LruCache[size=" + entries.size() + ", maxSize=" + maxSize + ", hits=" + hitCount + ", misses=" + missCount + ", evictions=" + evictionCount + "]";
+	}
+}
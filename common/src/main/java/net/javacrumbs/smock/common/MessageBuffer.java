@@ -0,0 +1,273 @@
+/**
+ * Copyright 2009-2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.javacrumbs.smock.common;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Collects a message, either a request written by a client or a serialized response. Data are stored in chunks, 
+ * so the buffer does not have to be copied when it grows, and are read by {@link #getInputStream()} directly 
+ * from the chunks. When the size of the message exceeds spill threshold, the data are moved to a temporary file, 
+ * which is deleted by {@link #discard()} or when the stream reading it is closed.
+ * @author Lukas Krecan
+ */
+public class MessageBuffer extends OutputStream {
+	
+	/**
+	 * Threshold value meaning that data are never written to a file.
+	 */
+	public static final long NO_SPILL = -1;
+	
+	private static final int INITIAL_CHUNK_SIZE = 4 * 1024;
+	
+	private static final int MAX_CHUNK_SIZE = 1024 * 1024;
+	
+	private static final int FILE_BUFFER_SIZE = 64 * 1024;
+	
+	private final long spillThreshold;
+	
+	private final List<byte[]> chunks = new ArrayList<byte[]>();
+	
+	/**
+	 * Number of bytes used in the last chunk.
+	 */
+	private int lastChunkSize;
+	
+	private long size;
+	
+	private File file;
+	
+	private OutputStream fileStream;
+	
+	public MessageBuffer() {
+		this(NO_SPILL);
+	}
+	
+	/**
+	 * @param spillThreshold size in bytes after which data are written to a temporary file, {@link #NO_SPILL} to keep all data in memory 
+	 */
+	public MessageBuffer(long spillThreshold) {
+		this.spillThreshold = spillThreshold;
+	}
+
+	@Override
+	public void write(int b) throws IOException {
+		write(new byte[]{(byte)b}, 0, 1);
+	}
+	
+	@Override
+	public void write(byte[] data, int offset, int length) throws IOException {
+		if (length==0)
+		{
+			return;
+		}
+		if (fileStream==null && spillThreshold!=NO_SPILL && size + length > spillThreshold)
+		{
+			spill();
+		}
+		if (fileStream!=null)
+		{
+			fileStream.write(data, offset, length);
+		}
+		else
+		{
+			writeToChunks(data, offset, length);
+		}
+		size += length;
+	}
+
+	private void writeToChunks(byte[] data, int offset, int length) {
+		int remaining = length;
+		int position = offset;
+		while (remaining > 0)
+		{
+			byte[] chunk = chunks.isEmpty() ? null : chunks.get(chunks.size() - 1);
+			if (chunk==null || lastChunkSize==chunk.length)
+			{
+				chunk = new byte[chunk==null ? INITIAL_CHUNK_SIZE : Math.min(2 * chunk.length, MAX_CHUNK_SIZE)];
+				chunks.add(chunk);
+				lastChunkSize = 0;
+			}
+			int count = Math.min(remaining, chunk.length - lastChunkSize);
+			System.arraycopy(data, position, chunk, lastChunkSize, count);
+			lastChunkSize += count;
+			position += count;
+			remaining -= count;
+		}
+	}
+	
+	/**
+	 * Moves data collected so far to a temporary file.
+	 * @throws IOException
+	 */
+	private void spill() throws IOException {
+		file = File.createTempFile("smock-message", ".xml");
+		fileStream = new BufferedOutputStream(new FileOutputStream(file), FILE_BUFFER_SIZE);
+		for (int i=0; i<chunks.size(); i++)
+		{
+			byte[] chunk = chunks.get(i);
+			fileStream.write(chunk, 0, i==chunks.size() - 1 ? lastChunkSize : chunk.length);
+		}
+		chunks.clear();
+		lastChunkSize = 0;
+	}
+	
+	@Override
+	public void flush() throws IOException {
+		if (fileStream!=null)
+		{
+			fileStream.flush();
+		}
+	}
+	
+	/**
+	 * Returns stream reading the data collected so far. The data are not copied. Temporary file, if any, 
+	 * is deleted when the returned stream is closed.
+	 * @return
+	 * @throws IOException
+	 */
+	public InputStream getInputStream() throws IOException {
+		if (fileStream!=null)
+		{
+			fileStream.close();
+			return new TemporaryFileInputStream(file);
+		}
+		return new ChunkInputStream(new ArrayList<byte[]>(chunks), lastChunkSize);
+	}
+	
+	/**
+	 * Discards collected data and deletes the temporary file. Streams returned by {@link #getInputStream()} 
+	 * can still be read, if the file can not be deleted while it is open, it is deleted when the stream is closed.
+	 * The buffer is empty afterwards.
+	 * @throws IOException
+	 */
+	public void discard() throws IOException {
+		chunks.clear();
+		lastChunkSize = 0;
+		size = 0;
+		if (file!=null)
+		{
+			try {
+				fileStream.close();
+			} finally {
+				file.delete();
+				file = null;
+				fileStream = null;
+			}
+		}
+	}
+	
+	/**
+	 * Returns number of bytes written.
+	 * @return
+	 */
+	public long size() {
+		return size;
+	}
+	
+	/**
+	 * Returns true if the data have been moved to a temporary file.
+	 * @return
+	 */
+	public boolean isSpilled() {
+		return file!=null;
+	}
+	
+	private static class ChunkInputStream extends InputStream {
+		private final List<byte[]> chunks;
+		
+		private final int lastChunkSize;
+		
+		private int chunkIndex;
+		
+		private int position;
+		
+		public ChunkInputStream(List<byte[]> chunks, int lastChunkSize) {
+			this.chunks = chunks;
+			this.lastChunkSize = lastChunkSize;
+		}
+
+		@Override
+		public int read() throws IOException {
+			if (!skipReadChunks())
+			{
+				return -1;
+			}
+			return chunks.get(chunkIndex)[position++] & 0xff;
+		}
+		
+		@Override
+		public int read(byte[] buffer, int offset, int length) throws IOException {
+			if (length==0)
+			{
+				return 0;
+			}
+			if (!skipReadChunks())
+			{
+				return -1;
+			}
+			int count = Math.min(length, getChunkSize(chunkIndex) - position);
+			System.arraycopy(chunks.get(chunkIndex), position, buffer, offset, count);
+			position += count;
+			return count;
+		}
+		
+		@Override
+		public int available() throws IOException {
+			return chunkIndex < chunks.size() ? getChunkSize(chunkIndex) - position : 0;
+		}
+
+		/**
+		 * Moves to the first chunk with unread data.
+		 * @return false if all chunks have been read
+		 */
+		private boolean skipReadChunks() {
+			while (chunkIndex < chunks.size() && position==getChunkSize(chunkIndex))
+			{
+				chunkIndex++;
+				position = 0;
+			}
+			return chunkIndex < chunks.size();
+		}
+
+		private int getChunkSize(int index) {
+			return index==chunks.size() - 1 ? lastChunkSize : chunks.get(index).length;
+		}
+	}
+	
+	private static class TemporaryFileInputStream extends FileInputStream {
+		private final File file;
+
+		public TemporaryFileInputStream(File file) throws IOException {
+			super(file);
+			this.file = file;
+		}
+		
+		@Override
+		public void close() throws IOException {
+			super.close();
+			file.delete();
+		}
+	}
+}
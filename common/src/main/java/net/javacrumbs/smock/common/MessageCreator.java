@@ -15,21 +15,30 @@
  */
 package net.javacrumbs.smock.common;
 
+import static net.javacrumbs.smock.common.XmlUtil.adaptSource;
+import static net.javacrumbs.smock.common.XmlUtil.copyDomSource;
+import static net.javacrumbs.smock.common.XmlUtil.getReadLock;
 import static net.javacrumbs.smock.common.XmlUtil.transform;
 import static net.javacrumbs.smock.common.XmlUtil.getEnvelopeSource;
 import static net.javacrumbs.smock.common.XmlUtil.getSourceAsStream;
 import static net.javacrumbs.smock.common.XmlUtil.isSoap;
 import static net.javacrumbs.smock.common.XmlUtil.serialize;
+import static net.javacrumbs.smock.common.XmlUtil.stringToBytes;
 
 import java.io.IOException;
 import java.net.URI;
 
+import javax.xml.soap.SOAPException;
 import javax.xml.transform.Source;
+import javax.xml.transform.dom.DOMSource;
+import javax.xml.transform.stax.StAXSource;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.springframework.ws.WebServiceMessage;
 import org.springframework.ws.WebServiceMessageFactory;
+import org.springframework.ws.soap.saaj.SaajSoapMessage;
+import org.springframework.ws.soap.saaj.SaajSoapMessageFactory;
 import org.springframework.ws.test.client.ResponseCreator;
 import org.springframework.ws.test.server.RequestCreator;
 
@@ -43,6 +52,16 @@ public class MessageCreator implements ResponseCreator, RequestCreator{
 	private final Source source;
 	
 	protected final Log logger = LogFactory.getLog(getClass());
+	
+	/**
+	 * Remembers whether the source is SOAP, null if not known yet.
+	 */
+	private volatile Boolean soapSource;
+	
+	/**
+	 * Serialized response, if the response does not depend on the request.
+	 */
+	private volatile StaticResponse staticResponse;
 
 	public MessageCreator(Source sourceDocument) {
 		this.source = sourceDocument;
@@ -58,11 +77,35 @@ public class MessageCreator implements ResponseCreator, RequestCreator{
 	 * @throws IOException
 	 */
 	protected final WebServiceMessage createMessage(URI uri, WebServiceMessage input, WebServiceMessageFactory messageFactory) throws IOException {
-		Source source = preprocessSource(uri, input, messageFactory);
+		return createMessage(preprocessSourceSafely(uri, input, messageFactory), messageFactory);
+	}
+	
+	/**
+	 * Pre-processes the source. Source DOM is shared by all invocations of the creator and DOM is not thread safe 
+	 * even for reading, so it is read under a lock and each created message gets its own copy.
+	 * @param uri
+	 * @param input
+	 * @param messageFactory
+	 * @return
+	 */
+	private Source preprocessSourceSafely(URI uri, WebServiceMessage input, WebServiceMessageFactory messageFactory) {
+		Object lock = getReadLock(getSource());
+		if (lock==null)
+		{
+			return preprocessSource(uri, input, messageFactory);
+		}
+		synchronized (lock)
+		{
+			Source result = preprocessSource(uri, input, messageFactory);
+			return result==getSource() ? copyDomSource(result) : result;
+		}
+	}
+	
+	private WebServiceMessage createMessage(Source source, WebServiceMessageFactory messageFactory) throws IOException {
 		WebServiceMessage result;
-		if (isSoap(source))
+		if (isSoapSource(source))
 		{
-			result = messageFactory.createWebServiceMessage(getSourceAsStream(source));
+			result = createSoapMessage(source, messageFactory);
 		}
 		else
 		{
@@ -84,6 +127,95 @@ public class MessageCreator implements ResponseCreator, RequestCreator{
 	public WebServiceMessage createRequest(WebServiceMessageFactory messageFactory) throws IOException {
 		return createMessage(null, null, messageFactory);
 	}
+	
+	/**
+	 * Creates response and returns its envelope serialized as UTF-8. If the source is not changed by {@link #preprocessSource(URI, WebServiceMessage, WebServiceMessageFactory)},
+	 * the response is static and it is serialized only once for given message factory. Returned array must not be modified. 
+	 * Only copying of the source DOM is done under the lock, the response is serialized outside of it.
+	 * @param uri
+	 * @param request
+	 * @param messageFactory
+	 * @return
+	 * @throws IOException
+	 */
+	public byte[] createResponseBytes(URI uri, WebServiceMessage request, WebServiceMessageFactory messageFactory) throws IOException {
+		StaticResponse cached = staticResponse;
+		if (cached!=null && cached.isCreatedBy(messageFactory))
+		{
+			return cached.getBytes();
+		}
+		Source source;
+		boolean isStatic;
+		Object lock = getReadLock(getSource());
+		if (lock==null)
+		{
+			source = preprocessSource(uri, request, messageFactory);
+			isStatic = source==getSource();
+		}
+		else
+		{
+			synchronized (lock)
+			{
+				source = preprocessSource(uri, request, messageFactory);
+				isStatic = source==getSource();
+				if (isStatic)
+				{
+					source = copyDomSource(source);
+				}
+			}
+		}
+		byte[] result = stringToBytes(serialize(getEnvelopeSource(createMessage(source, messageFactory))));
+		if (isStatic)
+		{
+			staticResponse = new StaticResponse(messageFactory, result);
+		}
+		return result;
+	}
+
+	/**
+	 * Creates message from a source containing whole SOAP message. SOAP part of SAAJ messages is filled directly 
+	 * from DOM or StAX sources, other messages are parsed from the serialized source. 
+	 * @param source
+	 * @param messageFactory
+	 * @return
+	 * @throws IOException
+	 */
+	private WebServiceMessage createSoapMessage(Source source, WebServiceMessageFactory messageFactory) throws IOException {
+		if (messageFactory instanceof SaajSoapMessageFactory && (source instanceof DOMSource || source instanceof StAXSource))
+		{
+			SaajSoapMessage message = ((SaajSoapMessageFactory)messageFactory).createWebServiceMessage();
+			try {
+				//SaajSoapMessage.setDocument would serialize the document and parse it again
+				message.getSaajMessage().getSOAPPart().setContent(adaptSource(source));
+			} catch (SOAPException e) {
+				throw new IllegalArgumentException("Can not create SOAP message", e);
+			}
+			return message;
+		}
+		else
+		{
+			return messageFactory.createWebServiceMessage(getSourceAsStream(source));
+		}
+	}
+
+	/**
+	 * Returns true if source is SOAP message. The result is cached if the source was not preprocessed.
+	 * @param source
+	 * @return
+	 */
+	private boolean isSoapSource(Source source) {
+		if (source!=getSource())
+		{
+			return isSoap(source);
+		}
+		Boolean result = soapSource;
+		if (result==null)
+		{
+			result = isSoap(source);
+			soapSource = result;
+		}
+		return result;
+	}
 
 	/**
 	 * To be overriden by subclasses.
@@ -99,5 +231,28 @@ public class MessageCreator implements ResponseCreator, RequestCreator{
 	public final Source getSource() {
 		return source;
 	}
+	
+	/**
+	 * Serialized static response. Payload is wrapped to envelope of the message factory SOAP version, 
+	 * so the response can be reused only with the same factory.
+	 */
+	private static class StaticResponse {
+		private final WebServiceMessageFactory messageFactory;
+		
+		private final byte[] bytes;
+
+		public StaticResponse(WebServiceMessageFactory messageFactory, byte[] bytes) {
+			this.messageFactory = messageFactory;
+			this.bytes = bytes;
+		}
+		
+		public boolean isCreatedBy(WebServiceMessageFactory messageFactory) {
+			return this.messageFactory==messageFactory;
+		}
+		
+		public byte[] getBytes() {
+			return bytes;
+		}
+	}
 
 }
@@ -16,15 +16,23 @@
 package net.javacrumbs.smock.common;
 
 
+import static net.javacrumbs.smock.common.XmlUtil.copyDomSource;
 import static net.javacrumbs.smock.common.XmlUtil.getEnvelopeSource;
+import static net.javacrumbs.smock.common.XmlUtil.getReadLock;
+import static net.javacrumbs.smock.common.XmlUtil.getRootElementName;
 import static net.javacrumbs.smock.common.XmlUtil.isSoap;
 import static net.javacrumbs.smock.common.XmlUtil.loadDocument;
 import static net.javacrumbs.smock.common.XmlUtil.serialize;
+import static net.javacrumbs.smock.common.XmlUtil.transform;
 
 import java.io.IOException;
 import java.net.URI;
 
+import javax.xml.namespace.QName;
 import javax.xml.transform.Source;
+import javax.xml.transform.dom.DOMSource;
+import javax.xml.transform.stream.StreamResult;
+import javax.xml.transform.stream.StreamSource;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -34,6 +42,10 @@ import org.springframework.ws.WebServiceMessage;
 import org.springframework.ws.test.client.RequestMatcher;
 import org.springframework.ws.test.server.ResponseMatcher;
 import org.springframework.ws.test.support.AssertionErrors;
+import org.springframework.xml.transform.StringSource;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
 
 
 
@@ -46,7 +58,24 @@ public class MessageMatcher implements RequestMatcher, ResponseMatcher{
 
 	protected final Source controlMessage;
 	
+	/**
+	 * Messages buffered for streaming comparison are moved to a temporary file when they are bigger.
+	 */
+	private static final long STREAMING_SPILL_THRESHOLD = 1024 * 1024;
+	
 	private final Log logger = LogFactory.getLog(getClass()); 
+	
+	/**
+	 * Remembers whether the control message is SOAP, null if not known yet.
+	 */
+	private volatile Boolean soapControl;
+	
+	/**
+	 * Expected payload root element name, null if not resolved yet.
+	 */
+	private volatile QName expectedPayloadRootName;
+	
+	private volatile boolean expectedPayloadRootNameResolved = false;
 
 	static {
 		XMLUnit.setIgnoreWhitespace(true);
@@ -62,7 +91,7 @@ public class MessageMatcher implements RequestMatcher, ResponseMatcher{
 	 * @param message
 	 */
 	protected final void matchInternal(WebServiceMessage input, WebServiceMessage message) {
-		Source controlMessage = preprocessControlMessage(input);
+		Source controlMessage = preprocessControlMessageSafely(input);
 		if (isSoapControl(controlMessage))
 		{
 			Source messageSource = getEnvelopeSource(message);
@@ -94,8 +123,56 @@ public class MessageMatcher implements RequestMatcher, ResponseMatcher{
 	protected final void compare(Source controlMessage, Source messageSource) {
 		if (logger.isDebugEnabled())
 		{
+			//sources are read more than once, StAX and stream sources can be read only once
+			controlMessage = toReusableSource(controlMessage);
+			messageSource = toReusableSource(messageSource);
 			logger.debug("Comparing:\n "+serialize(controlMessage)+"\n with:\n"+serialize(messageSource));
 		}
+		if (SmockCommon.isStreamingComparison())
+		{
+			compareStreaming(toReusableSource(controlMessage), messageSource);
+		}
+		else
+		{
+			compareDocuments(controlMessage, messageSource);
+		}
+	}
+	
+	/**
+	 * Compares the message without loading it to DOM. Message that can be read only once is serialized to a buffer, 
+	 * so it can be loaded to DOM if the streaming comparison fails and full comparison has to decide.
+	 * @param controlMessage
+	 * @param messageSource
+	 */
+	private void compareStreaming(Source controlMessage, Source messageSource) {
+		if (isReusable(messageSource))
+		{
+			if (!new StreamingDiff(controlMessage, messageSource).similar())
+			{
+				compareDocuments(controlMessage, messageSource);
+			}
+			return;
+		}
+		MessageBuffer buffer = new MessageBuffer(STREAMING_SPILL_THRESHOLD);
+		try {
+			transform(messageSource, new StreamResult(buffer));
+			if (!new StreamingDiff(controlMessage, new StreamSource(buffer.getInputStream())).similar())
+			{
+				//streaming comparison requires the same order of elements, full comparison has to decide
+				compareDocuments(controlMessage, new DOMSource(loadDocument(new StreamSource(buffer.getInputStream()))));
+			}
+		} catch (IOException e) {
+			throw new IllegalStateException("Can not buffer message", e);
+		} finally {
+			try {
+				buffer.discard();
+			} catch (IOException e) {
+				logger.warn("Can not discard message buffer", e);
+			}
+		}
+	}
+	
+	private void compareDocuments(Source controlMessage, Source messageSource) {
 		Diff diff = createDiff(controlMessage, messageSource);
 		if (!diff.similar())
 		{
@@ -103,6 +180,38 @@ public class MessageMatcher implements RequestMatcher, ResponseMatcher{
 		}
 	}
 	
+	/**
+	 * Loads sources that can not be read repeatedly to DOM.
+	 * @param source
+	 * @return
+	 */
+	private static Source toReusableSource(Source source) {
+		return isReusable(source) ? source : new DOMSource(loadDocument(source));
+	}
+	
+	private static boolean isReusable(Source source) {
+		return source instanceof DOMSource || source instanceof StringSource;
+	}
+	
+	/**
+	 * Pre-processes control message. Control DOM is shared by all invocations of the matcher and DOM is not thread safe 
+	 * even for reading, so it is read under a lock and each comparison gets its own copy.
+	 * @param input
+	 * @return
+	 */
+	private Source preprocessControlMessageSafely(WebServiceMessage input) {
+		Object lock = getReadLock(getControlMessage());
+		if (lock==null)
+		{
+			return preprocessControlMessage(input);
+		}
+		synchronized (lock)
+		{
+			Source result = preprocessControlMessage(input);
+			return result==getControlMessage() ? copyDomSource(result) : result;
+		}
+	}
+	
 	/**
 	 * Does control message pre-processing. Can be overriden.
 	 * @param input 
@@ -123,8 +232,91 @@ public class MessageMatcher implements RequestMatcher, ResponseMatcher{
 		return new EnhancedDiff(loadDocument(controlMessage), loadDocument(messageSource));
 	}
 
+	/**
+	 * Returns true if control message is SOAP message. The result is cached if the control message was not preprocessed.
+	 * @param controlMessage
+	 * @return
+	 */
 	private boolean isSoapControl(Source controlMessage) {
-		return isSoap(controlMessage);
+		if (controlMessage!=getControlMessage())
+		{
+			return isSoap(controlMessage);
+		}
+		Boolean result = soapControl;
+		if (result==null)
+		{
+			result = isSoap(controlMessage);
+			soapControl = result;
+		}
+		return result;
+	}
+
+	/**
+	 * Returns name of the payload root element this matcher accepts or null if it is not known before the message is compared.
+	 * Can be used to select matchers that can accept a message without running the comparison.
+	 * @return
+	 */
+	public final QName getExpectedPayloadRootName() {
+		if (!expectedPayloadRootNameResolved)
+		{
+			Object lock = getReadLock(getControlMessage());
+			if (lock==null)
+			{
+				expectedPayloadRootName = resolveExpectedPayloadRootName();
+			}
+			else
+			{
+				synchronized (lock)
+				{
+					expectedPayloadRootName = resolveExpectedPayloadRootName();
+				}
+			}
+			expectedPayloadRootNameResolved = true;
+		}
+		return expectedPayloadRootName;
+	}
+	
+	/**
+	 * Reads payload root element name from the control message. Has to be overriden if the control message is preprocessed
+	 * in a way that can change the payload root element. 
+	 * @return
+	 */
+	protected QName resolveExpectedPayloadRootName() {
+		Source controlMessage = getControlMessage();
+		if (!isSoapControl(controlMessage))
+		{
+			return getRootElementName(controlMessage);
+		}
+		Node node = controlMessage instanceof DOMSource ? ((DOMSource)controlMessage).getNode() : loadDocument(controlMessage);
+		Node envelope = node instanceof Document ? ((Document)node).getDocumentElement() : node;
+		if (!(envelope instanceof Element))
+		{
+			return null;
+		}
+		Element body = getChildElement((Element)envelope, "Body");
+		Element payload = body!=null ? getChildElement(body, null) : null;
+		return payload!=null ? getRootElementName(new DOMSource(payload)) : null;
+	}
+
+	/**
+	 * Returns first child element with given local name in the namespace of the parent. Returns first child element if the local name is null.
+	 * @param parent
+	 * @param localName
+	 * @return
+	 */
+	private static Element getChildElement(Element parent, String localName) {
+		for (Node child = parent.getFirstChild(); child!=null; child = child.getNextSibling())
+		{
+			if (child.getNodeType()==Node.ELEMENT_NODE && (localName==null || (localName.equals(child.getLocalName()) && isSameNamespace(parent, child))))
+			{
+				return (Element)child;
+			}
+		}
+		return null;
+	}
+	
+	private static boolean isSameNamespace(Node node1, Node node2) {
+		return node1.getNamespaceURI()==null ? node2.getNamespaceURI()==null : node1.getNamespaceURI().equals(node2.getNamespaceURI());
 	}
 
 	public final Source getControlMessage() {
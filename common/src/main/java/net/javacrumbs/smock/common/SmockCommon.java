@@ -56,6 +56,17 @@ public abstract class SmockCommon  {
 	
 	private static ResourceLoader resourceLoader = new DefaultResourceLoader();
 	
+	private static volatile boolean streamingComparison = false;
+	
+	private static volatile InterceptionListener interceptionListener;
+	
+	private static final int RESOURCE_CACHE_SIZE = 512;
+	
+	/**
+	 * Parsed resources. Documents in the cache are never modified, callers get a copy. 
+	 */
+	private static final LruCache<Resource, ParsedResource> resourceCache = new LruCache<Resource, ParsedResource>(RESOURCE_CACHE_SIZE);
+	
 	/**
 	 * Loads {@link Document} from {@link Source} 
 	 * @param message
@@ -66,18 +77,45 @@ public abstract class SmockCommon  {
 	}	
     
 	/**
-	 * Creates {@link Source} from {@link Resource}.
+	 * Creates {@link Source} from {@link Resource}. Parsed resources are cached, each call returns
+	 * a copy of the cached document.
 	 * @param resource
 	 * @return
 	 */
     protected static Source createSource(Resource resource) {
-        try {
-        	//we need to read the source multiple times thus using DOMSource
-        	return new DOMSource(loadDocument(new ResourceSource(resource)));
-        }
-        catch (IOException ex) {
-            throw new IllegalArgumentException(resource + " could not be opened", ex);
-        }
+    	ParsedResource parsedResource = resourceCache.get(resource);
+    	if (parsedResource==null)
+    	{
+    		parsedResource = parseResource(resource);
+    		resourceCache.put(resource, parsedResource);
+    	}
+    	//we need to read the source multiple times thus using DOMSource
+    	return new DOMSource(parsedResource.copyDocument(), parsedResource.getSystemId());
+    }
+
+	private static ParsedResource parseResource(Resource resource) {
+		try {
+			ResourceSource source = new ResourceSource(resource);
+			return new ParsedResource(loadDocument(source), source.getSystemId());
+		}
+		catch (IOException ex) {
+			throw new IllegalArgumentException(resource + " could not be opened", ex);
+		}
+	}
+    
+    /**
+     * Returns cache of parsed resources. Can be used to get cache statistics.
+     * @return
+     */
+    public static LruCache<Resource, ?> getResourceCache() {
+		return resourceCache;
+	}
+    
+    /**
+     * Clears cache of parsed resources. Useful when resources change during the test run.
+     */
+    public static void clearResourceCache() {
+    	resourceCache.clear();
     }
     
     /**
@@ -120,6 +158,28 @@ public abstract class SmockCommon  {
     	Assert.notNull(resourceLoader, "'resourceLoader' can not be null");
     	SmockCommon.resourceLoader = resourceLoader;
 	}
+    public static boolean isStreamingComparison() {
+		return streamingComparison;
+	}
+    /**
+     * If set to true, messages are compared by {@link StreamingDiff} first. Only if it finds a difference, 
+     * messages are loaded to DOM and compared by {@link EnhancedDiff}. Useful for big messages.
+     * @param streamingComparison
+     */
+    public static void setStreamingComparison(boolean streamingComparison) {
+		SmockCommon.streamingComparison = streamingComparison;
+	}
+    public static InterceptionListener getInterceptionListener() {
+		return interceptionListener;
+	}
+    /**
+     * Sets listener notified about time spent in interceptors and message receivers by all {@link InterceptingTemplate}s
+     * that do not have their own listener. Set to null to switch the measurement off.
+     * @param interceptionListener
+     */
+    public static void setInterceptionListener(InterceptionListener interceptionListener) {
+		SmockCommon.interceptionListener = interceptionListener;
+	}
     /**
      * Creates a {@link WebServiceMessageFactory} using {@link MockStrategiesHelper}.
      * @param applicationContext
@@ -152,4 +212,30 @@ public abstract class SmockCommon  {
     	return saajSoapMessageFactory;
     }
     
+    /**
+     * Parsed resource. The document is never modified.
+     */
+    private static final class ParsedResource {
+    	private final Document document;
+    	private final String systemId;
+    	
+    	public ParsedResource(Document document, String systemId) {
+			this.document = document;
+			this.systemId = systemId;
+		}
+    	
+    	/**
+    	 * Returns deep copy of the document. DOM is not thread safe, even for reading, so the copying is synchronized.
+    	 * @return
+    	 */
+    	public Document copyDocument() {
+    		synchronized (document) {
+    			return (Document) document.cloneNode(true);
+			}
+    	}
+
+		public String getSystemId() {
+			return systemId;
+		}
+    }
 }
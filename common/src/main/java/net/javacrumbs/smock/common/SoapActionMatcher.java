@@ -0,0 +1,70 @@
+/**
+ * Copyright 2009-2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.javacrumbs.smock.common;
+
+import static org.springframework.ws.test.support.AssertionErrors.assertEquals;
+
+import java.io.IOException;
+import java.net.URI;
+
+import org.springframework.util.Assert;
+import org.springframework.ws.WebServiceMessage;
+import org.springframework.ws.soap.SoapMessage;
+import org.springframework.ws.test.client.RequestMatcher;
+
+/**
+ * Matches SOAPAction of the request. Surrounding quotes are ignored.
+ * @author Lukas Krecan
+ *
+ */
+public class SoapActionMatcher implements RequestMatcher {
+	
+	private final String expectedSoapAction;
+
+	public SoapActionMatcher(String expectedSoapAction) {
+		Assert.notNull(expectedSoapAction, "'expectedSoapAction' must not be null");
+		this.expectedSoapAction = normalize(expectedSoapAction);
+	}
+
+	public void match(URI uri, WebServiceMessage request) throws IOException, AssertionError {
+		assertEquals("Unexpected SOAPAction", expectedSoapAction, getSoapAction(request));
+	}
+	
+	/**
+	 * Returns SOAPAction without quotes. 
+	 * @return
+	 */
+	public String getExpectedSoapAction() {
+		return expectedSoapAction;
+	}
+	
+	/**
+	 * Returns SOAPAction of the message without quotes or null if the message is not a SOAP message.
+	 * @param message
+	 * @return
+	 */
+	public static String getSoapAction(WebServiceMessage message) {
+		return message instanceof SoapMessage ? normalize(((SoapMessage)message).getSoapAction()) : null;
+	}
+	
+	private static String normalize(String soapAction) {
+		if (soapAction!=null && soapAction.length()>=2 && soapAction.startsWith("\"") && soapAction.endsWith("\""))
+		{
+			return soapAction.substring(1, soapAction.length() - 1);
+		}
+		return soapAction;
+	}
+}
@@ -0,0 +1,645 @@
+/**
+ * Copyright 2009-2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.javacrumbs.smock.common;
+
+import static net.javacrumbs.smock.common.XmlUtil.createStreamReader;
+import static net.javacrumbs.smock.common.XmlUtil.loadDocument;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.xml.XMLConstants;
+import javax.xml.namespace.QName;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.transform.Source;
+import javax.xml.transform.dom.DOMSource;
+import javax.xml.transform.stax.StAXSource;
+import javax.xml.transform.stream.StreamSource;
+
+import org.springframework.util.xml.StaxUtils;
+import org.w3c.dom.Attr;
+import org.w3c.dom.NamedNodeMap;
+import org.w3c.dom.Node;
+import org.w3c.dom.ProcessingInstruction;
+
+/**
+ * Compares two documents by reading them in lockstep. Uses the same rules as {@link EnhancedDiff},
+ * "${IGNORE}" placeholder and namespace prefixes in attribute values are supported. Comparison stops at the first difference
+ * and memory used does not depend on document size, only on its depth.
+ * <p/>
+ * Unlike {@link EnhancedDiff}, child elements have to be in the same order. So if documents are not similar
+ * according to this class, they still can be similar according to {@link EnhancedDiff}.
+ * @author Lukas Krecan
+ *
+ */
+public class StreamingDiff {
+
+	private static final String IGNORE = "${IGNORE}";
+
+	private final Source control;
+
+	private final Source test;
+
+	private boolean compared = false;
+
+	private String difference;
+
+	private final List<String> path = new ArrayList<String>();
+
+	public StreamingDiff(Source control, Source test) {
+		this.control = control;
+		this.test = test;
+	}
+
+	/**
+	 * Returns true if documents are similar.
+	 * @return
+	 */
+	public boolean similar() {
+		if (!compared)
+		{
+			difference = compare();
+			compared = true;
+		}
+		return difference == null;
+	}
+
+	private String compare() {
+		NodeReader controlReader = createReader(control);
+		try {
+			NodeReader testReader = createReader(test);
+			try {
+				return compare(controlReader, testReader);
+			} finally {
+				testReader.close();
+			}
+		} catch (XMLStreamException e) {
+			throw new IllegalArgumentException("Can not read the document", e);
+		} finally {
+			controlReader.close();
+		}
+	}
+
+	private String compare(NodeReader controlReader, NodeReader testReader) throws XMLStreamException {
+		while (true)
+		{
+			int controlEvent = controlReader.next();
+			int testEvent = testReader.next();
+			if (controlEvent != testEvent)
+			{
+				return "Expected " + describe(controlReader, controlEvent) + " but was " + describe(testReader, testEvent);
+			}
+			String result;
+			switch (controlEvent) {
+				case XMLStreamConstants.START_ELEMENT:
+					result = compareElements(controlReader, testReader);
+					path.add(controlReader.getName().getLocalPart());
+					break;
+				case XMLStreamConstants.END_ELEMENT:
+					path.remove(path.size() - 1);
+					result = null;
+					break;
+				case XMLStreamConstants.CHARACTERS:
+					result = compareText(controlReader.getText(), testReader.getText());
+					break;
+				case XMLStreamConstants.COMMENT:
+					result = compareValues("comment", controlReader.getText().trim(), testReader.getText().trim());
+					break;
+				case XMLStreamConstants.PROCESSING_INSTRUCTION:
+					result = compareValues("processing instruction", controlReader.getName().getLocalPart() + " " + controlReader.getText().trim(), testReader.getName().getLocalPart() + " " + testReader.getText().trim());
+					break;
+				default: //END_DOCUMENT
+					return null;
+			}
+			if (result != null)
+			{
+				return result;
+			}
+		}
+	}
+
+	private String compareElements(NodeReader controlReader, NodeReader testReader) {
+		QName controlName = controlReader.getName();
+		QName testName = testReader.getName();
+		if (!controlName.equals(testName))
+		{
+			return "Expected element " + controlName + " but was " + testName;
+		}
+		int attributeCount = controlReader.getAttributeCount();
+		if (attributeCount != testReader.getAttributeCount())
+		{
+			return "Expected " + attributeCount + " attributes of element " + controlName + " but was " + testReader.getAttributeCount();
+		}
+		for (int i = 0; i < attributeCount; i++) {
+			QName attributeName = controlReader.getAttributeName(i);
+			int testIndex = testReader.getAttributeIndex(attributeName);
+			if (testIndex < 0)
+			{
+				return "Expected attribute " + attributeName + " of element " + controlName;
+			}
+			String controlValue = controlReader.getAttributeValue(i);
+			String testValue = testReader.getAttributeValue(testIndex);
+			if (!attributeValuesSimilar(controlReader, controlValue, testReader, testValue))
+			{
+				return "Expected value '" + controlValue + "' of attribute " + attributeName + " but was '" + testValue + "'";
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Values are similar if they are same, the control value is ignored or if they differ only in the namespace prefix.
+	 */
+	private boolean attributeValuesSimilar(NodeReader controlReader, String controlValue, NodeReader testReader, String testValue) {
+		if (IGNORE.equals(controlValue) || controlValue.equals(testValue))
+		{
+			return true;
+		}
+		if (hasNsPrefix(controlValue) || hasNsPrefix(testValue))
+		{
+			return resolveNamespaces(controlReader, controlValue).equals(resolveNamespaces(testReader, testValue));
+		}
+		return false;
+	}
+
+	/**
+	 * Replaces namespace prefixes with their URLs the same way as {@link EnhancedDiff}.
+	 */
+	private String resolveNamespaces(NodeReader reader, String value) {
+		int prefixLength = value.indexOf(':');
+		if (prefixLength>=0)
+		{
+			String prefix = value.substring(0, prefixLength);
+			String nsUri = reader.getNamespaceURI(prefix);
+			if (nsUri==null)//prefix not resolved, let's use prefix instead
+			{
+				nsUri = prefix;
+			}
+			return nsUri+value.substring(prefixLength);
+		}
+		else
+		{
+			String nsUri = reader.getNamespaceURI(XMLConstants.DEFAULT_NS_PREFIX);
+			return nsUri+":"+value;
+		}
+	}
+
+	private boolean hasNsPrefix(String value) {
+		return value.contains(":");
+	}
+
+	private String compareText(String controlText, String testText) {
+		String control = controlText.trim();
+		if (IGNORE.equals(control))
+		{
+			return null;
+		}
+		return compareValues("text", control, testText.trim());
+	}
+
+	private String compareValues(String type, String controlValue, String testValue) {
+		if (!controlValue.equals(testValue))
+		{
+			return "Expected " + type + " '" + controlValue + "' but was '" + testValue + "'";
+		}
+		return null;
+	}
+
+	private String describe(NodeReader reader, int event) {
+		switch (event) {
+			case XMLStreamConstants.START_ELEMENT:
+				return "element " + reader.getName();
+			case XMLStreamConstants.END_ELEMENT:
+				return "end of element";
+			case XMLStreamConstants.CHARACTERS:
+				return "text '" + reader.getText().trim() + "'";
+			case XMLStreamConstants.COMMENT:
+				return "comment";
+			case XMLStreamConstants.PROCESSING_INSTRUCTION:
+				return "processing instruction";
+			default:
+				return "end of document";
+		}
+	}
+
+	/**
+	 * Returns description of the difference.
+	 */
+	@Override
+	public String toString() {
+		if (similar())
+		{
+			return "StreamingDiff: identical or similar";
+		}
+		StringBuilder location = new StringBuilder();
+		for (String element : path) {
+			location.append('/').append(element);
+		}
+		return "StreamingDiff: " + difference + " at " + (location.length() > 0 ? location.toString() : "/");
+	}
+
+	private static NodeReader createReader(Source source) {
+		try {
+			if (source instanceof DOMSource)
+			{
+				Node node = ((DOMSource)source).getNode();
+				return new DomNodeReader(node != null ? node : loadDocument(source));
+			}
+			else if (source instanceof StreamSource)
+			{
+				return new StaxNodeReader(createStreamReader((StreamSource)source), true);
+			}
+			else if (source instanceof StAXSource)
+			{
+				StAXSource staxSource = (StAXSource)source;
+				XMLStreamReader reader = staxSource.getXMLStreamReader() != null ? staxSource.getXMLStreamReader() : StaxUtils.createEventStreamReader(staxSource.getXMLEventReader());
+				return new StaxNodeReader(reader, false);
+			}
+			else
+			{
+				return new DomNodeReader(loadDocument(source));
+			}
+		} catch (XMLStreamException e) {
+			throw new IllegalArgumentException("Can not read the document", e);
+		}
+	}
+
+	/**
+	 * Reads nodes relevant for the comparison. Adjacent text and CDATA are merged, whitespace only text is skipped.
+	 */
+	private static abstract class NodeReader {
+		/**
+		 * Moves to the next node. Returns one of START_ELEMENT, END_ELEMENT, CHARACTERS, COMMENT, PROCESSING_INSTRUCTION or END_DOCUMENT.
+		 */
+		abstract int next() throws XMLStreamException;
+
+		/**
+		 * Name of the element. Target of processing instruction.
+		 */
+		abstract QName getName();
+
+		/**
+		 * Text of a text node or comment. Data of processing instruction.
+		 */
+		abstract String getText();
+
+		/**
+		 * Returns number of attributes, namespace declarations are not included.
+		 */
+		abstract int getAttributeCount();
+
+		abstract QName getAttributeName(int index);
+
+		abstract String getAttributeValue(int index);
+
+		/**
+		 * Returns namespace bound to the prefix in the current element or null.
+		 */
+		abstract String getNamespaceURI(String prefix);
+
+		void close() {
+		}
+
+		int getAttributeIndex(QName name) {
+			for (int i = 0; i < getAttributeCount(); i++) {
+				if (name.equals(getAttributeName(i)))
+				{
+					return i;
+				}
+			}
+			return -1;
+		}
+
+		static boolean isWhitespace(CharSequence text) {
+			for (int i = 0; i < text.length(); i++) {
+				char c = text.charAt(i);
+				if (c != ' ' && c != '\t' && c != '\n' && c != '\r')
+				{
+					return false;
+				}
+			}
+			return true;
+		}
+	}
+
+	private static final class StaxNodeReader extends NodeReader {
+		private final XMLStreamReader reader;
+
+		private final boolean closeReader;
+
+		private final StringBuilder text = new StringBuilder();
+
+		private boolean started = false;
+
+		/**
+		 * True if the reader is positioned at a node that has not been returned yet.
+		 */
+		private boolean pending = false;
+
+		private int event;
+
+		public StaxNodeReader(XMLStreamReader reader, boolean closeReader) {
+			this.reader = reader;
+			this.closeReader = closeReader;
+		}
+
+		@Override
+		int next() throws XMLStreamException {
+			while (true)
+			{
+				int current = advance();
+				if (isText(current))
+				{
+					text.setLength(0);
+					while (isText(current))
+					{
+						text.append(reader.getTextCharacters(), reader.getTextStart(), reader.getTextLength());
+						current = advance();
+					}
+					pending = true;
+					if (!isWhitespace(text))
+					{
+						return event = XMLStreamConstants.CHARACTERS;
+					}
+				}
+				switch (current) {
+					case XMLStreamConstants.START_ELEMENT:
+					case XMLStreamConstants.END_ELEMENT:
+					case XMLStreamConstants.COMMENT:
+					case XMLStreamConstants.PROCESSING_INSTRUCTION:
+					case XMLStreamConstants.END_DOCUMENT:
+						pending = false;
+						return event = current;
+					default:
+						pending = false;
+						//skip start of the document, DTD etc.
+				}
+			}
+		}
+
+		private int advance() throws XMLStreamException {
+			if (pending)
+			{
+				pending = false;
+				return reader.getEventType();
+			}
+			if (!started)
+			{
+				started = true;
+				int current = reader.getEventType();
+				if (current != XMLStreamConstants.START_DOCUMENT)
+				{
+					return current;
+				}
+			}
+			return reader.hasNext() ? reader.next() : XMLStreamConstants.END_DOCUMENT;
+		}
+
+		private boolean isText(int event) {
+			return event == XMLStreamConstants.CHARACTERS || event == XMLStreamConstants.CDATA || event == XMLStreamConstants.SPACE;
+		}
+
+		@Override
+		QName getName() {
+			if (event == XMLStreamConstants.PROCESSING_INSTRUCTION)
+			{
+				return new QName(reader.getPITarget());
+			}
+			return reader.getName();
+		}
+
+		@Override
+		String getText() {
+			switch (event) {
+				case XMLStreamConstants.CHARACTERS:
+					return text.toString();
+				case XMLStreamConstants.PROCESSING_INSTRUCTION:
+					return reader.getPIData() != null ? reader.getPIData() : "";
+				default:
+					return reader.getText();
+			}
+		}
+
+		@Override
+		int getAttributeCount() {
+			return reader.getAttributeCount();
+		}
+
+		@Override
+		QName getAttributeName(int index) {
+			QName name = reader.getAttributeName(index);
+			return new QName(name.getNamespaceURI(), name.getLocalPart());
+		}
+
+		@Override
+		String getAttributeValue(int index) {
+			return reader.getAttributeValue(index);
+		}
+
+		@Override
+		String getNamespaceURI(String prefix) {
+			String namespaceUri = reader.getNamespaceContext().getNamespaceURI(prefix);
+			return namespaceUri == null || namespaceUri.length() == 0 ? null : namespaceUri;
+		}
+
+		@Override
+		void close() {
+			if (closeReader)
+			{
+				try {
+					reader.close();
+				} catch (XMLStreamException e) {
+					//ignore
+				}
+			}
+		}
+	}
+
+	/**
+	 * Walks the DOM tree without creating any intermediate structures.
+	 */
+	private static final class DomNodeReader extends NodeReader {
+		private final Node root;
+
+		private Node current;
+
+		/**
+		 * True if we are leaving the current node.
+		 */
+		private boolean leaving = false;
+
+		private final StringBuilder text = new StringBuilder();
+
+		private final List<Attr> attributes = new ArrayList<Attr>();
+
+		private int event;
+
+		public DomNodeReader(Node root) {
+			this.root = root;
+		}
+
+		@Override
+		int next() {
+			while (true)
+			{
+				Node node = advance();
+				if (node == null)
+				{
+					return event = XMLStreamConstants.END_DOCUMENT;
+				}
+				if (leaving)
+				{
+					if (node.getNodeType() == Node.ELEMENT_NODE)
+					{
+						return event = XMLStreamConstants.END_ELEMENT;
+					}
+					continue;
+				}
+				switch (node.getNodeType()) {
+					case Node.ELEMENT_NODE:
+						readAttributes(node);
+						return event = XMLStreamConstants.START_ELEMENT;
+					case Node.TEXT_NODE:
+					case Node.CDATA_SECTION_NODE:
+						text.setLength(0);
+						text.append(node.getNodeValue());
+						while (isText(node.getNextSibling()))
+						{
+							node = node.getNextSibling();
+							text.append(node.getNodeValue());
+						}
+						current = node;
+						leaving = true;
+						if (!isWhitespace(text))
+						{
+							return event = XMLStreamConstants.CHARACTERS;
+						}
+						break;
+					case Node.COMMENT_NODE:
+						return event = XMLStreamConstants.COMMENT;
+					case Node.PROCESSING_INSTRUCTION_NODE:
+						return event = XMLStreamConstants.PROCESSING_INSTRUCTION;
+					default:
+						//document, doctype etc.
+				}
+			}
+		}
+
+		/**
+		 * Moves to the next node in document order. Every node is visited twice, when entering and when leaving.
+		 * @return
+		 */
+		private Node advance() {
+			if (current == null)
+			{
+				if (leaving)
+				{
+					return null;
+				}
+				current = root;
+			}
+			else if (!leaving && current.getFirstChild() != null && current.getNodeType() != Node.ENTITY_REFERENCE_NODE)
+			{
+				current = current.getFirstChild();
+			}
+			else if (!leaving)
+			{
+				leaving = true;
+			}
+			else if (current == root)
+			{
+				current = null;
+				return null;
+			}
+			else if (current.getNextSibling() != null)
+			{
+				current = current.getNextSibling();
+				leaving = false;
+			}
+			else
+			{
+				current = current.getParentNode();
+			}
+			return current;
+		}
+
+		private boolean isText(Node node) {
+			return node != null && (node.getNodeType() == Node.TEXT_NODE || node.getNodeType() == Node.CDATA_SECTION_NODE);
+		}
+
+		private void readAttributes(Node element) {
+			attributes.clear();
+			NamedNodeMap map = element.getAttributes();
+			for (int i = 0; i < map.getLength(); i++) {
+				Attr attr = (Attr)map.item(i);
+				if (!XMLConstants.XMLNS_ATTRIBUTE_NS_URI.equals(attr.getNamespaceURI()) && !isNamespaceDeclaration(attr.getName()))
+				{
+					attributes.add(attr);
+				}
+			}
+		}
+
+		private boolean isNamespaceDeclaration(String name) {
+			return XMLConstants.XMLNS_ATTRIBUTE.equals(name) || name.startsWith(XMLConstants.XMLNS_ATTRIBUTE + ":");
+		}
+
+		@Override
+		QName getName() {
+			if (event == XMLStreamConstants.PROCESSING_INSTRUCTION)
+			{
+				return new QName(((ProcessingInstruction)current).getTarget());
+			}
+			return getName(current);
+		}
+
+		private QName getName(Node node) {
+			String localName = node.getLocalName() != null ? node.getLocalName() : node.getNodeName();
+			return new QName(node.getNamespaceURI() != null ? node.getNamespaceURI() : XMLConstants.NULL_NS_URI, localName);
+		}
+
+		@Override
+		String getText() {
+			if (event == XMLStreamConstants.CHARACTERS)
+			{
+				return text.toString();
+			}
+			return current.getNodeValue() != null ? current.getNodeValue() : "";
+		}
+
+		@Override
+		int getAttributeCount() {
+			return attributes.size();
+		}
+
+		@Override
+		QName getAttributeName(int index) {
+			return getName(attributes.get(index));
+		}
+
+		@Override
+		String getAttributeValue(int index) {
+			return attributes.get(index).getValue();
+		}
+
+		@Override
+		String getNamespaceURI(String prefix) {
+			String namespaceUri = current.lookupNamespaceURI(prefix == null || prefix.length() == 0 ? null : prefix);
+			return namespaceUri == null || namespaceUri.length() == 0 ? null : namespaceUri;
+		}
+	}
+}
@@ -16,9 +16,12 @@
 
 package net.javacrumbs.smock.common;
 
+import static net.javacrumbs.smock.common.XmlUtil.getRootElementName;
+
 import java.util.HashMap;
 import java.util.Map;
 
+import javax.xml.namespace.QName;
 import javax.xml.transform.Source;
 
 import net.javacrumbs.smock.common.client.ParametrizableRequestMatcher;
@@ -52,6 +55,18 @@ public class TemplateAwareMessageMatcher extends MessageMatcher implements Param
 		return templateProcessor.processTemplate(getControlMessage(), inputSource, parameters);
 	}
 
+	/**
+	 * Payload root element of a message generated by XSLT template is not known in advance. 
+	 */
+	@Override
+	protected QName resolveExpectedPayloadRootName() {
+		if (XsltUtil.STYLESHEET.equals(getRootElementName(getControlMessage())))
+		{
+			return null;
+		}
+		return super.resolveExpectedPayloadRootName();
+	}
+
 	public TemplateAwareMessageMatcher withParameter(String name, Object value) {
 		parameters.put(name, value);
 		return this;
@@ -0,0 +1,48 @@
+/**
+ * Copyright 2009-2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.javacrumbs.smock.common;
+
+import static org.springframework.ws.test.support.AssertionErrors.assertEquals;
+
+import java.io.IOException;
+import java.net.URI;
+
+import org.springframework.util.Assert;
+import org.springframework.ws.WebServiceMessage;
+import org.springframework.ws.test.client.RequestMatcher;
+
+/**
+ * Matches URI of the connection. Unlike matcher created by RequestMatchers.connectionTo, exposes the expected URI.
+ * @author Lukas Krecan
+ *
+ */
+public class UriMatcher implements RequestMatcher {
+	
+	private final URI expectedUri;
+
+	public UriMatcher(URI expectedUri) {
+		Assert.notNull(expectedUri, "'expectedUri' must not be null");
+		this.expectedUri = expectedUri;
+	}
+
+	public void match(URI uri, WebServiceMessage request) throws IOException, AssertionError {
+		assertEquals("Unexpected connection", expectedUri, uri);
+	}
+	
+	public URI getExpectedUri() {
+		return expectedUri;
+	}
+}
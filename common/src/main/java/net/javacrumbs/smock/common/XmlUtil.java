@@ -19,22 +19,32 @@ package net.javacrumbs.smock.common;
 import java.io.ByteArrayInputStream;
 import java.io.InputStream;
 import java.io.UnsupportedEncodingException;
-import java.util.HashMap;
-import java.util.Map;
+import java.util.HashSet;
+import java.util.Set;
 
+import javax.xml.namespace.QName;
+import javax.xml.stream.XMLEventReader;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
 import javax.xml.transform.Result;
 import javax.xml.transform.Source;
 import javax.xml.transform.TransformerException;
 import javax.xml.transform.dom.DOMResult;
 import javax.xml.transform.dom.DOMSource;
+import javax.xml.transform.stax.StAXSource;
+import javax.xml.transform.stream.StreamSource;
 
+import org.springframework.util.xml.StaxUtils;
 import org.springframework.ws.WebServiceMessage;
 import org.springframework.ws.soap.SoapMessage;
 import org.springframework.ws.soap.SoapVersion;
 import org.springframework.xml.transform.StringResult;
 import org.springframework.xml.transform.TransformerHelper;
-import org.springframework.xml.xpath.Jaxp13XPathTemplate;
 import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
 
 /**
  * Helper class for work with XML.
@@ -43,12 +53,14 @@ import org.w3c.dom.Document;
  */
 public class XmlUtil {
 
-	private static final Map<String, String> SOAP_NAMESPACES = new HashMap<String, String>();
+	private static final Set<QName> SOAP_ENVELOPES = new HashSet<QName>();
 	
 	static{
-		SOAP_NAMESPACES.put("soap11", SoapVersion.SOAP_11.getEnvelopeNamespaceUri());
-		SOAP_NAMESPACES.put("soap12", SoapVersion.SOAP_12.getEnvelopeNamespaceUri());
+		SOAP_ENVELOPES.add(SoapVersion.SOAP_11.getEnvelopeName());
+		SOAP_ENVELOPES.add(SoapVersion.SOAP_12.getEnvelopeName());
 	};
+	
+	private static final XMLInputFactory INPUT_FACTORY = XMLInputFactory.newInstance();
 		
 	private XmlUtil()
 	{
@@ -68,21 +80,126 @@ public class XmlUtil {
 	}
 	
 	/**
-	 * Returns true if the documents root is SOAP envelope.
-	 * @param document
+	 * Returns true if the documents root is SOAP envelope. Only the root element is read.
+	 * @param source
 	 * @return
 	 */
 	public static boolean isSoap(Source source) {
-		for (String prefix: SOAP_NAMESPACES.keySet()) {
-			String expression = "/"+prefix+":Envelope";
-			Jaxp13XPathTemplate xpathTemplate = new Jaxp13XPathTemplate();
-			xpathTemplate.setNamespaces(SOAP_NAMESPACES);
-			if (xpathTemplate.evaluateAsBoolean(expression, source))
+		return SOAP_ENVELOPES.contains(getRootElementName(source));
+	}
+	
+	/**
+	 * Returns name of the root element. Reads only the beginning of the document, if possible. 
+	 * Returns null if the source does not contain any element.
+	 * @param source
+	 * @return
+	 */
+	public static QName getRootElementName(Source source) {
+		if (source instanceof DOMSource)
+		{
+			return getRootElementName(((DOMSource)source).getNode());
+		}
+		else if (source instanceof StreamSource)
+		{
+			return getRootElementName((StreamSource)source);
+		}
+		else if (source instanceof StAXSource)
+		{
+			return getRootElementName((StAXSource)source);
+		}
+		else
+		{
+			return getRootElementName(loadDocument(source));
+		}
+	}
+	
+	/**
+	 * Moves StAX source to the root element and reads its name. Only prolog (comments, processing instructions) is consumed, 
+	 * so the source can be still read from the root element.
+	 * @param source
+	 * @return
+	 */
+	private static QName getRootElementName(StAXSource source) {
+		try {
+			if (source.getXMLStreamReader()!=null)
 			{
-				return true;
+				XMLStreamReader reader = source.getXMLStreamReader();
+				while (reader.getEventType() != XMLStreamConstants.START_ELEMENT && reader.hasNext())
+				{
+					reader.next();
+				}
+				return reader.getEventType() == XMLStreamConstants.START_ELEMENT ? reader.getName() : null;
 			}
+			else
+			{
+				XMLEventReader reader = source.getXMLEventReader();
+				while (reader.hasNext() && !reader.peek().isStartElement())
+				{
+					reader.nextEvent();
+				}
+				return reader.hasNext() ? reader.peek().asStartElement().getName() : null;
+			}
+		} catch (XMLStreamException e) {
+			throw new IllegalArgumentException("Can not read the document",e);
+		}
+	}
+
+	private static QName getRootElementName(Node node) {
+		Element element;
+		if (node instanceof Document)
+		{
+			element = ((Document)node).getDocumentElement();
+		}
+		else if (node instanceof Element)
+		{
+			element = (Element)node;
+		}
+		else
+		{
+			return null;
+		}
+		if (element == null)
+		{
+			return null;
+		}
+		String localName = element.getLocalName()!=null ? element.getLocalName() : element.getNodeName();
+		String namespaceUri = element.getNamespaceURI()!=null ? element.getNamespaceURI() : "";
+		return new QName(namespaceUri, localName);
+	}
+	
+	private static QName getRootElementName(StreamSource source) {
+		try {
+			XMLStreamReader reader = createStreamReader(source);
+			try {
+				while (reader.hasNext())
+				{
+					if (reader.next() == XMLStreamConstants.START_ELEMENT)
+					{
+						return reader.getName();
+					}
+				}
+				return null;
+			} finally {
+				reader.close();
+			}
+		} catch (XMLStreamException e) {
+			throw new IllegalArgumentException("Can not read the document",e);
+		}
+	}
+
+	static XMLStreamReader createStreamReader(StreamSource source) throws XMLStreamException {
+		if (source.getReader()!=null)
+		{
+			return INPUT_FACTORY.createXMLStreamReader(source.getReader());
+		}
+		else if (source.getInputStream()!=null)
+		{
+			return INPUT_FACTORY.createXMLStreamReader(source.getInputStream());
+		}
+		else
+		{
+			return INPUT_FACTORY.createXMLStreamReader(source);
 		}
-		return false;
 	}
 	
 	/**
@@ -124,12 +241,62 @@ public class XmlUtil {
 	 */
 	public static void transform(Source source, Result result) {
 		try {
-			new TransformerHelper().transform(source, result);
+			new TransformerHelper().transform(adaptSource(source), result);
 		} catch (TransformerException e) {
 			throw new IllegalArgumentException("Can not transform",e);
 		}
 	}
 	
+	/**
+	 * JDK transformer fails on some StAX sources, we are using Spring StAX to SAX bridge instead.
+	 * @param source
+	 * @return
+	 */
+	static Source adaptSource(Source source) {
+		if (source instanceof StAXSource)
+		{
+			StAXSource staxSource = (StAXSource)source;
+			if (staxSource.getXMLStreamReader()!=null)
+			{
+				return StaxUtils.createCustomStaxSource(staxSource.getXMLStreamReader());
+			}
+			else
+			{
+				return StaxUtils.createCustomStaxSource(staxSource.getXMLEventReader());
+			}
+		}
+		return source;
+	}
+	
+	/**
+	 * Returns object that has to be locked when the source is read by more threads, null if the source can be read concurrently.
+	 * DOM is not thread safe even for reading, implementations expand deferred nodes and cache node lists lazily.
+	 * @param source
+	 * @return
+	 */
+	static Object getReadLock(Source source) {
+		if (source instanceof DOMSource && ((DOMSource)source).getNode()!=null)
+		{
+			Node node = ((DOMSource)source).getNode();
+			return node.getOwnerDocument()!=null ? node.getOwnerDocument() : node;
+		}
+		return null;
+	}
+	
+	/**
+	 * Copies DOM source, so the copy can be used by one thread while the original is shared. The read lock of the source
+	 * has to be held. Other sources are returned without change.
+	 * @param source
+	 * @return
+	 */
+	static Source copyDomSource(Source source) {
+		if (getReadLock(source)!=null)
+		{
+			return new DOMSource(loadDocument(source), source.getSystemId());
+		}
+		return source;
+	}
+	
 	/**
 	 * Streams the document as UTF-8 encoded stream.
 	 * @param document
@@ -15,33 +15,224 @@
  */
 package net.javacrumbs.smock.common;
 
+import static net.javacrumbs.smock.common.XmlUtil.serialize;
+import static net.javacrumbs.smock.common.XmlUtil.stringToBytes;
+
+import java.lang.ref.WeakReference;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
 import java.util.Map;
 
 import javax.xml.transform.Source;
+import javax.xml.transform.Templates;
 import javax.xml.transform.dom.DOMSource;
 
+import org.springframework.xml.transform.StringSource;
+
 /**
- * XSLT {@link TemplateProcessor}.
+ * XSLT {@link TemplateProcessor}. Compiled templates are cached, so each template is compiled only once.
+ * Templates are identified by system id, DOM templates without system id by their node, which is referenced weakly, 
+ * and other templates by a digest of their content.
  * @author Lukas Krecan
  *
  */
 public class XsltTemplateProcessor implements TemplateProcessor {
+	
+	private static final int DEFAULT_CACHE_SIZE = 256;
+	
+	private final LruCache<Object, Templates> templatesCache;
+	
+	private final LruCache<Object, Boolean> templateDetectionCache;
+	
+	public XsltTemplateProcessor() {
+		this(DEFAULT_CACHE_SIZE);
+	}
+	
+	/**
+	 * @param cacheSize maximal number of compiled templates kept in the cache.
+	 */
+	public XsltTemplateProcessor(int cacheSize) {
+		templatesCache = new LruCache<Object, Templates>(cacheSize);
+		templateDetectionCache = new LruCache<Object, Boolean>(cacheSize);
+	}
+	
 	/**
 	 * Does XSLT transfromation of the template if it is an XSLT template. If not, returns template withou change.
 	 */
 	public Source processTemplate(Source template, Source input, Map<String, Object> parameters) {
 		XsltUtil xsltUtil = new XsltUtil(parameters);
-		if (xsltUtil.isTemplate(template))
+		Object key = createKey(template);
+		if (isTemplate(xsltUtil, template, key))
 		{
 			if (input==null)
 			{
 				input = new DOMSource();
 			}
-			return xsltUtil.transform(template, input);
+			return xsltUtil.transform(getTemplates(xsltUtil, template, key), input);
 		}
 		else
 		{
 			return template;
 		}
 	}
+	
+	/**
+	 * Returns true if the source is a template. The result is remembered for templates with a key.
+	 * @param xsltUtil
+	 * @param template
+	 * @param key key of the template, can be null
+	 * @return
+	 */
+	private boolean isTemplate(XsltUtil xsltUtil, Source template, Object key) {
+		if (key==null)
+		{
+			return xsltUtil.isTemplate(template);
+		}
+		Boolean result = templateDetectionCache.get(key);
+		if (result==null)
+		{
+			result = xsltUtil.isTemplate(template);
+			templateDetectionCache.put(key, result);
+		}
+		return result;
+	}
+
+	/**
+	 * Returns compiled template from the cache. Compiles the template if it is not cached yet.
+	 * Templates without key can be read only once, so they are serialized and cached by their content.
+	 * @param xsltUtil
+	 * @param template
+	 * @param key key of the template, can be null
+	 * @return
+	 */
+	private Templates getTemplates(XsltUtil xsltUtil, Source template, Object key) {
+		Source templateSource = template;
+		if (key==null)
+		{
+			String content = serialize(template);
+			key = new ContentKey(content);
+			templateSource = new StringSource(content);
+		}
+		Templates templates = templatesCache.get(key);
+		if (templates==null)
+		{
+			templates = xsltUtil.compile(templateSource);
+			templatesCache.put(key, templates);
+		}
+		return templates;
+	}
+
+	/**
+	 * Templates with system id are identified by the system id, so copies of the same resource share the key. 
+	 * Other DOM templates are identified by their node, string templates by their content. 
+	 * Returns null for other templates, since they can be read only once.
+	 * @param template
+	 * @return
+	 */
+	private Object createKey(Source template) {
+		if (template.getSystemId()!=null)
+		{
+			return new SystemIdKey(template.getSystemId());
+		}
+		else if (template instanceof DOMSource && ((DOMSource)template).getNode()!=null)
+		{
+			return new WeakIdentityKey(((DOMSource)template).getNode());
+		}
+		else if (template instanceof StringSource)
+		{
+			return new ContentKey(template.toString());
+		}
+		else
+		{
+			return null;
+		}
+	}
+	
+	LruCache<Object, Templates> getTemplatesCache() {
+		return templatesCache;
+	}
+	
+	LruCache<Object, Boolean> getTemplateDetectionCache() {
+		return templateDetectionCache;
+	}
+
+	/**
+	 * Compares keys by identity. The object is referenced weakly, so cached entries do not keep templates in memory.
+	 * Entries of collected objects are never matched and are evicted from the cache eventually.
+	 */
+	private static final class WeakIdentityKey {
+		private final WeakReference<Object> object;
+		
+		private final int hashCode;
+
+		public WeakIdentityKey(Object object) {
+			this.object = new WeakReference<Object>(object);
+			this.hashCode = System.identityHashCode(object);
+		}
+
+		@Override
+		public int hashCode() {
+			return hashCode;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (obj==this)
+			{
+				return true;
+			}
+			Object referent = object.get();
+			return referent!=null && obj instanceof WeakIdentityKey && ((WeakIdentityKey)obj).object.get() == referent;
+		}
+	}
+	
+	/**
+	 * Compares keys by SHA-256 digest of the content, so the content is not kept in the cache.
+	 */
+	private static final class ContentKey {
+		private final byte[] digest;
+		
+		private final int hashCode;
+		
+		public ContentKey(String content) {
+			try {
+				digest = MessageDigest.getInstance("SHA-256").digest(stringToBytes(content));
+			} catch (NoSuchAlgorithmException e) {
+				throw new IllegalStateException("SHA-256 not supported", e);
+			}
+			hashCode = Arrays.hashCode(digest);
+		}
+		
+		@Override
+		public int hashCode() {
+			return hashCode;
+		}
+		
+		@Override
+		public boolean equals(Object obj) {
+			return obj instanceof ContentKey && Arrays.equals(((ContentKey)obj).digest, digest);
+		}
+	}
+	
+	/**
+	 * Compares keys by system id.
+	 */
+	private static final class SystemIdKey {
+		private final String systemId;
+		
+		public SystemIdKey(String systemId) {
+			this.systemId = systemId;
+		}
+		
+		@Override
+		public int hashCode() {
+			return systemId.hashCode();
+		}
+		
+		@Override
+		public boolean equals(Object obj) {
+			return obj instanceof SystemIdKey && ((SystemIdKey)obj).systemId.equals(systemId);
+		}
+	}
 }
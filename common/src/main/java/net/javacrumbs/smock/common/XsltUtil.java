@@ -14,19 +14,22 @@
  * limitations under the License.
  */
 package net.javacrumbs.smock.common;
-import java.util.Collections;
+import static net.javacrumbs.smock.common.XmlUtil.getRootElementName;
+
 import java.util.Map;
 import java.util.Map.Entry;
 
+import javax.xml.namespace.QName;
 import javax.xml.transform.Result;
 import javax.xml.transform.Source;
+import javax.xml.transform.Templates;
 import javax.xml.transform.Transformer;
+import javax.xml.transform.TransformerConfigurationException;
 import javax.xml.transform.TransformerException;
 
 import org.springframework.xml.transform.StringResult;
 import org.springframework.xml.transform.StringSource;
 import org.springframework.xml.transform.TransformerObjectSupport;
-import org.springframework.xml.xpath.Jaxp13XPathTemplate;
 
 /**
  * XSLT helper class.
@@ -34,7 +37,7 @@ import org.springframework.xml.xpath.Jaxp13XPathTemplate;
  *
  */
 class XsltUtil extends TransformerObjectSupport{
-	private static final Map<String, String> NAMESPACES = Collections.singletonMap("xs", "http://www.w3.org/1999/XSL/Transform");
+	static final QName STYLESHEET = new QName("http://www.w3.org/1999/XSL/Transform", "stylesheet");
 	private final Map<String, Object> parameters; 
 	
 	
@@ -43,14 +46,26 @@ class XsltUtil extends TransformerObjectSupport{
 	}
 
 	/**
-	 * Returns true if given message is a XSL Template. 
-	 * @param stringSource
+	 * Returns true if given message is a XSL Template. Only the root element is read.
+	 * @param context
 	 * @return
 	 */
 	 boolean isTemplate(Source context) {
-		Jaxp13XPathTemplate template = new Jaxp13XPathTemplate();
-		template.setNamespaces(NAMESPACES);
-		return template.evaluateAsBoolean("count(/xs:stylesheet)>0", context);
+		return STYLESHEET.equals(getRootElementName(context));
+	}
+	 
+	/**
+	 * Compiles the template so it can be used repeatedly.
+	 * @param template
+	 * @return
+	 */
+	Templates compile(Source template)
+	{
+		try {
+			return getTransformerFactory().newTemplates(template);
+		} catch (TransformerConfigurationException e) {
+			throw new IllegalArgumentException("Can not compile template",e);
+		}
 	}
 	 
 	/**
@@ -60,7 +75,7 @@ class XsltUtil extends TransformerObjectSupport{
 	 * @return
 	 * @throws TransformerException 
 	 */
-	Source transform(Source template, Source source) 
+	Source transform(Templates template, Source source) 
 	{
 		try {
 			StringResult transformedExpectedDocument = new StringResult();
@@ -77,8 +92,8 @@ class XsltUtil extends TransformerObjectSupport{
 	 * @return
 	 * @throws TransformerException 
 	 */
-	void transform(Source template, Source source, Result result) throws TransformerException {
-		Transformer transformer = getTransformerFactory().newTransformer(template);
+	void transform(Templates template, Source source, Result result) throws TransformerException {
+		Transformer transformer = template.newTransformer();
 		setParameters(transformer);
 		transformer.transform(source, result);
 	}
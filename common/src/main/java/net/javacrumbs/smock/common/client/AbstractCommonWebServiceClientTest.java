@@ -207,7 +207,7 @@ public abstract class AbstractCommonWebServiceClientTest {
 	 * @return the request matcher
 	 */
 	public  RequestMatcher connectionTo(String uri) {
-		return RequestMatchers.connectionTo(uri);
+		return CommonSmockClient.connectionTo(uri);
 	}
 
 	/**
@@ -217,6 +217,6 @@ public abstract class AbstractCommonWebServiceClientTest {
 	 * @return the request matcher
 	 */
 	public  RequestMatcher connectionTo(URI uri) {
-		return RequestMatchers.connectionTo(uri);
+		return CommonSmockClient.connectionTo(uri);
 	}
 }
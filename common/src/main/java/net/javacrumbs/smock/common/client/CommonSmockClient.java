@@ -14,6 +14,7 @@
  * limitations under the License.
  */
 package net.javacrumbs.smock.common.client;
+import java.net.URI;
 import java.util.Collections;
 import java.util.Map;
 
@@ -21,12 +22,15 @@ import javax.xml.transform.Source;
 import javax.xml.transform.dom.DOMSource;
 
 import net.javacrumbs.smock.common.SmockCommon;
+import net.javacrumbs.smock.common.SoapActionMatcher;
 import net.javacrumbs.smock.common.TemplateAwareMessageCreator;
 import net.javacrumbs.smock.common.TemplateAwareMessageMatcher;
 import net.javacrumbs.smock.common.TemplateProcessor;
+import net.javacrumbs.smock.common.UriMatcher;
 
 import org.springframework.core.io.Resource;
 import org.springframework.util.Assert;
+import org.springframework.ws.test.client.RequestMatcher;
 import org.w3c.dom.Document;
 
 /*
@@ -153,4 +157,35 @@ public abstract class CommonSmockClient extends SmockCommon {
     	Assert.notNull(message, "'message' must not be null");
     	return withMessage(new DOMSource(message));
     }
+    
+    /**
+     * Expects the request with given SOAPAction. Surrounding quotes are ignored.
+     * 
+     * @param soapAction expected SOAPAction
+     * @return the request matcher
+     */
+    public static RequestMatcher soapAction(String soapAction) {
+    	return new SoapActionMatcher(soapAction);
+    }
+    
+    /**
+     * Expects a connection to the given URI.
+     * 
+     * @param uri the String uri expected to connect to
+     * @return the request matcher
+     */
+    public static RequestMatcher connectionTo(String uri) {
+    	Assert.notNull(uri, "'uri' must not be null");
+    	return connectionTo(URI.create(uri));
+    }
+    
+    /**
+     * Expects a connection to the given URI.
+     * 
+     * @param uri the uri expected to connect to
+     * @return the request matcher
+     */
+    public static RequestMatcher connectionTo(URI uri) {
+    	return new UriMatcher(uri);
+    }
 }
@@ -19,6 +19,10 @@ import static org.easymock.EasyMock.createMock;
 import static org.easymock.EasyMock.expect;
 import static org.easymock.EasyMock.replay;
 import static org.easymock.EasyMock.verify;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import net.javacrumbs.smock.common.InterceptionListener.Phase;
 
 import org.junit.Test;
 import org.springframework.ws.client.support.interceptor.ClientInterceptor;
@@ -132,4 +136,55 @@ public class InterceptingTemplateTest {
 		messageFactory.afterPropertiesSet();
 		return messageFactory;
 	}
+	@Test
+	public void testInterceptionListener() throws Exception
+	{
+		MessageContext messageContext = createMock(MessageContext.class);
+		WebServiceMessageReceiver messageReceiver = createMock(WebServiceMessageReceiver.class);
+		ClientInterceptor interceptor = createMock(ClientInterceptor.class);
+		
+		messageReceiver.receive(messageContext);
+		expect(interceptor.handleRequest(messageContext)).andReturn(true);
+		expect(interceptor.handleResponse(messageContext)).andReturn(true);
+		expect(messageContext.hasResponse()).andReturn(false);
+		expect(messageContext.hasResponse()).andReturn(true).atLeastOnce();
+		expect(messageContext.getResponse()).andReturn(null);
+		replay(messageReceiver, interceptor, messageContext);
+		
+		InterceptionStatistics statistics = new InterceptionStatistics();
+		InterceptingTemplate template = new InterceptingTemplate(new ClientInterceptor[]{interceptor}, statistics);
+		
+		template.interceptRequest(messageContext, messageReceiver);
+		
+		verify(messageReceiver, interceptor, messageContext);
+		assertEquals(1, statistics.getCount(interceptor.getClass(), Phase.HANDLE_REQUEST));
+		assertEquals(1, statistics.getCount(interceptor.getClass(), Phase.HANDLE_RESPONSE));
+		assertEquals(0, statistics.getCount(interceptor.getClass(), Phase.HANDLE_FAULT));
+		assertEquals(1, statistics.getReceiverCount());
+		assertTrue(statistics.getReceiverTime() >= 0);
+	}
+	@Test
+	public void testDefaultInterceptionListener() throws Exception
+	{
+		MessageContext messageContext = createMock(MessageContext.class);
+		WebServiceMessageReceiver messageReceiver = createMock(WebServiceMessageReceiver.class);
+		messageReceiver.receive(messageContext);
+		expect(messageContext.hasResponse()).andReturn(false);
+		expect(messageContext.hasResponse()).andReturn(false);
+		replay(messageReceiver, messageContext);
+		
+		InterceptionStatistics statistics = new InterceptionStatistics();
+		SmockCommon.setInterceptionListener(statistics);
+		try
+		{
+			new InterceptingTemplate(null).interceptRequest(messageContext, messageReceiver);
+		}
+		finally
+		{
+			SmockCommon.setInterceptionListener(null);
+		}
+		
+		verify(messageReceiver, messageContext);
+		assertEquals(1, statistics.getReceiverCount());
+	}
 }
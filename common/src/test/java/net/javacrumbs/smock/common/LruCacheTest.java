@@ -0,0 +1,80 @@
+/**
+ * Copyright 2009-2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.javacrumbs.smock.common;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+
+public class LruCacheTest {
+
+	@Test
+	public void testEviction()
+	{
+		LruCache<String, String> cache = new LruCache<String, String>(2);
+		cache.put("a", "1");
+		cache.put("b", "2");
+		assertEquals("1", cache.get("a"));
+		cache.put("c", "3");
+		
+		assertNull(cache.get("b"));
+		assertEquals("1", cache.get("a"));
+		assertEquals("3", cache.get("c"));
+		assertEquals(2, cache.size());
+		assertEquals(1, cache.getEvictionCount());
+		assertEquals(3, cache.getHitCount());
+		assertEquals(1, cache.getMissCount());
+	}
+	
+	@Test
+	public void testValues()
+	{
+		LruCache<String, String> cache = new LruCache<String, String>(2);
+		cache.put("a", "1");
+		cache.put("b", "2");
+		
+		assertEquals(Arrays.asList("1", "2"), cache.values());
+		assertEquals(0, cache.getHitCount());
+		assertEquals("1", cache.get("a"));
+		assertEquals(Arrays.asList("2", "1"), cache.values());
+	}
+	
+	@Test
+	public void testRemove()
+	{
+		final List<String> evicted = new ArrayList<String>();
+		LruCache<String, String> cache = new LruCache<String, String>(2) {
+			@Override
+			protected void onEviction(String key, String value) {
+				evicted.add(key);
+			}
+		};
+		cache.put("a", "1");
+		cache.put("b", "2");
+		
+		assertEquals(Arrays.asList("a", "b"), cache.keys());
+		assertEquals("1", cache.remove("a"));
+		assertNull(cache.remove("a"));
+		assertEquals(Arrays.asList("a"), evicted);
+		assertEquals(Arrays.asList("b"), cache.keys());
+	}
+}
@@ -15,12 +15,31 @@
  */
 package net.javacrumbs.smock.common;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringReader;
+import java.util.Collections;
+
+import javax.xml.soap.MessageFactory;
+import javax.xml.soap.MimeHeaders;
+import javax.xml.soap.SOAPConstants;
+import javax.xml.soap.SOAPException;
+import javax.xml.soap.SOAPMessage;
+import javax.xml.stream.XMLInputFactory;
 import javax.xml.transform.Source;
+import javax.xml.transform.dom.DOMSource;
+import javax.xml.transform.stax.StAXSource;
 
 import org.custommonkey.xmlunit.XMLAssert;
 import org.junit.Test;
 import org.springframework.ws.WebServiceMessageFactory;
 import org.springframework.ws.soap.SoapMessage;
+import org.springframework.ws.soap.saaj.SaajSoapMessageFactory;
 import org.springframework.xml.transform.StringSource;
 import org.w3c.dom.Document;
 
@@ -50,4 +69,106 @@ public class MessageCreatorTest extends AbstractSmockTest {
 		XMLAssert.assertXMLEqual(loadDocument(source), generatedDocument);
 	}
 
+	@Test
+	public void testReturnMessageFromDom() throws Exception
+	{
+		Document sourceDocument = loadDocument(new StringSource(MESSAGE));
+		Source source = new DOMSource(sourceDocument);
+		MessageCreator responseCreator = new MessageCreator(source);
+		WebServiceMessageFactory messageFactory = getMessageFactory();
+		
+		SoapMessage response1 = (SoapMessage) responseCreator.createMessage(TEST_URI, null, messageFactory);
+		SoapMessage response2 = (SoapMessage) responseCreator.createMessage(TEST_URI, null, messageFactory);
+		
+		XMLAssert.assertXMLEqual(loadDocument(new StringSource(MESSAGE)), sourceDocument);
+		XMLAssert.assertXMLEqual(sourceDocument, loadDocument(response1.getEnvelope().getSource()));
+		XMLAssert.assertXMLEqual(sourceDocument, loadDocument(response2.getEnvelope().getSource()));
+		XMLAssert.assertXMLEqual(loadDocument(new StringSource(PAYLOAD)), loadDocument(response2.getPayloadSource()));
+	}
+	@Test
+	public void testReturnMessageFromStax() throws Exception
+	{
+		Source source = new StAXSource(XMLInputFactory.newInstance().createXMLStreamReader(new StringReader(MESSAGE)));
+		MessageCreator responseCreator = new MessageCreator(source);
+		
+		SoapMessage response = (SoapMessage) responseCreator.createMessage(TEST_URI, null, getMessageFactory());
+		
+		XMLAssert.assertXMLEqual(loadDocument(new StringSource(MESSAGE)), loadDocument(response.getEnvelope().getSource()));
+	}
+
+	@Test
+	public void testSaajMessageNotParsed() throws Exception
+	{
+		CountingMessageFactory saajFactory = new CountingMessageFactory();
+		SaajSoapMessageFactory messageFactory = new SaajSoapMessageFactory(saajFactory);
+		Source domSource = new DOMSource(loadDocument(new StringSource(MESSAGE)));
+		Source staxSource = new StAXSource(XMLInputFactory.newInstance().createXMLStreamReader(new StringReader(MESSAGE)));
+		
+		SoapMessage response1 = (SoapMessage) new MessageCreator(domSource).createMessage(TEST_URI, null, messageFactory);
+		SoapMessage response2 = (SoapMessage) new MessageCreator(staxSource).createMessage(TEST_URI, null, messageFactory);
+		
+		assertEquals(0, saajFactory.parsedMessages);
+		XMLAssert.assertXMLEqual(loadDocument(new StringSource(MESSAGE)), loadDocument(response1.getEnvelope().getSource()));
+		XMLAssert.assertXMLEqual(loadDocument(new StringSource(MESSAGE)), loadDocument(response2.getEnvelope().getSource()));
+	}
+	
+	@Test
+	public void testStaticResponseSerializedOnce() throws Exception
+	{
+		MessageCreator responseCreator = new MessageCreator(new StringSource(MESSAGE));
+		WebServiceMessageFactory messageFactory = getMessageFactory();
+		
+		byte[] response1 = responseCreator.createResponseBytes(TEST_URI, null, messageFactory);
+		byte[] response2 = responseCreator.createResponseBytes(TEST_URI, null, messageFactory);
+		
+		assertSame(response1, response2);
+		XMLAssert.assertXMLEqual(MESSAGE, new String(response1, "UTF-8"));
+	}
+	
+	@Test
+	public void testStaticResponseSerializedForEachMessageFactory() throws Exception
+	{
+		MessageCreator responseCreator = new MessageCreator(new StringSource(PAYLOAD));
+		SaajSoapMessageFactory soap12Factory = new SaajSoapMessageFactory(MessageFactory.newInstance(SOAPConstants.SOAP_1_2_PROTOCOL));
+		
+		byte[] soap11Response = responseCreator.createResponseBytes(TEST_URI, null, getMessageFactory());
+		byte[] soap12Response = responseCreator.createResponseBytes(TEST_URI, null, soap12Factory);
+		
+		assertTrue(new String(soap11Response, "UTF-8").contains(SOAPConstants.URI_NS_SOAP_1_1_ENVELOPE));
+		assertTrue(new String(soap12Response, "UTF-8").contains(SOAPConstants.URI_NS_SOAP_1_2_ENVELOPE));
+	}
+	@Test
+	public void testTemplateResponseSerializedEachTime() throws Exception
+	{
+		String template = "<xsl:stylesheet xmlns:xsl=\"http://www.w3.org/1999/XSL/Transform\" version=\"1.0\"><xsl:template match=\"/\"><test/></xsl:template></xsl:stylesheet>";
+		MessageCreator responseCreator = new TemplateAwareMessageCreator(new StringSource(template), Collections.<String, Object>emptyMap(), new XsltTemplateProcessor());
+		
+		byte[] response1 = responseCreator.createResponseBytes(TEST_URI, null, getMessageFactory());
+		byte[] response2 = responseCreator.createResponseBytes(TEST_URI, null, getMessageFactory());
+		
+		assertNotSame(response1, response2);
+		XMLAssert.assertXMLEqual(new String(response1, "UTF-8"), new String(response2, "UTF-8"));
+	}
+	
+	private static class CountingMessageFactory extends MessageFactory
+	{
+		private final MessageFactory messageFactory;
+		
+		private int parsedMessages;
+		
+		public CountingMessageFactory() throws SOAPException {
+			messageFactory = MessageFactory.newInstance();
+		}
+
+		@Override
+		public SOAPMessage createMessage() throws SOAPException {
+			return messageFactory.createMessage();
+		}
+
+		@Override
+		public SOAPMessage createMessage(MimeHeaders headers, InputStream in) throws IOException, SOAPException {
+			parsedMessages++;
+			return messageFactory.createMessage(headers, in);
+		}
+	}
 }
@@ -19,13 +19,35 @@ import static org.easymock.EasyMock.createMock;
 import static org.easymock.EasyMock.expect;
 import static org.easymock.EasyMock.replay;
 import static org.easymock.EasyMock.verify;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
 
+import java.io.ByteArrayInputStream;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import javax.xml.namespace.QName;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.stream.XMLInputFactory;
 import javax.xml.transform.Source;
+import javax.xml.transform.dom.DOMSource;
+import javax.xml.transform.stax.StAXSource;
+import javax.xml.transform.stream.StreamSource;
 
+import org.apache.log4j.Level;
+import org.apache.log4j.Logger;
 import org.junit.Test;
 import org.springframework.ws.soap.SoapEnvelope;
 import org.springframework.ws.soap.SoapMessage;
 import org.springframework.xml.transform.StringSource;
+import org.w3c.dom.Document;
+import org.xml.sax.InputSource;
 
 
 public class MessageMatcherTest extends AbstractSmockTest{
@@ -91,5 +113,195 @@ public class MessageMatcherTest extends AbstractSmockTest{
 		
 		verify(request);
 	}
+	@Test
+	public void testPayloadStreaming()
+	{
+		SmockCommon.setStreamingComparison(true);
+		try
+		{
+			MessageMatcher matcher = new MessageMatcher(new StringSource(PAYLOAD));
+			
+			SoapMessage request = createMock(SoapMessage.class);
+			expect(request.getPayloadSource()).andReturn(new StringSource(PAYLOAD));
+			replay(request);
+			
+			matcher.matchInternal(null, request);
+			
+			verify(request);
+		}
+		finally
+		{
+			SmockCommon.setStreamingComparison(false);
+		}
+	}
+	@Test
+	public void testPayloadStreamingDifferentOrder()
+	{
+		SmockCommon.setStreamingComparison(true);
+		try
+		{
+			MessageMatcher matcher = new MessageMatcher(new StringSource("<a><b/><c/></a>"));
+			
+			SoapMessage request = createMock(SoapMessage.class);
+			expect(request.getPayloadSource()).andReturn(new StringSource("<a><c/><b/></a>"));
+			replay(request);
+			
+			matcher.matchInternal(null, request);
+			
+			verify(request);
+		}
+		finally
+		{
+			SmockCommon.setStreamingComparison(false);
+		}
+	}
+	@Test
+	public void testPayloadStreamingDifferentOrderStax() throws Exception
+	{
+		//debug logging makes the sources reusable
+		Logger logger = Logger.getLogger(MessageMatcher.class);
+		Level level = logger.getLevel();
+		logger.setLevel(Level.INFO);
+		SmockCommon.setStreamingComparison(true);
+		try
+		{
+			MessageMatcher matcher = new MessageMatcher(new StringSource("<a><b/><c/></a>"));
+			
+			SoapMessage request = createMock(SoapMessage.class);
+			expect(request.getPayloadSource()).andReturn(new StAXSource(XMLInputFactory.newInstance().createXMLStreamReader(new StringReader("<a><c/><b/></a>"))));
+			replay(request);
+			
+			matcher.matchInternal(null, request);
+			
+			verify(request);
+		}
+		finally
+		{
+			SmockCommon.setStreamingComparison(false);
+			logger.setLevel(level);
+		}
+	}
+	@Test
+	public void testPayloadStreamingDifferentOrderStream() throws Exception
+	{
+		Logger logger = Logger.getLogger(MessageMatcher.class);
+		Level level = logger.getLevel();
+		logger.setLevel(Level.INFO);
+		SmockCommon.setStreamingComparison(true);
+		try
+		{
+			MessageMatcher matcher = new MessageMatcher(new StringSource("<a><b/><c/></a>"));
+			
+			SoapMessage request = createMock(SoapMessage.class);
+			expect(request.getPayloadSource()).andReturn(new StreamSource(new ByteArrayInputStream(XmlUtil.stringToBytes("<a><c/><b/></a>"))));
+			replay(request);
+			
+			matcher.matchInternal(null, request);
+			
+			verify(request);
+		}
+		finally
+		{
+			SmockCommon.setStreamingComparison(false);
+			logger.setLevel(level);
+		}
+	}
+	@Test(expected=AssertionError.class)
+	public void testPayloadStreamingDifferentStax() throws Exception
+	{
+		//debug logging makes the sources reusable
+		Logger logger = Logger.getLogger(MessageMatcher.class);
+		Level level = logger.getLevel();
+		logger.setLevel(Level.INFO);
+		SmockCommon.setStreamingComparison(true);
+		try
+		{
+			MessageMatcher matcher = new MessageMatcher(new StringSource(PAYLOAD));
+			
+			SoapMessage request = createMock(SoapMessage.class);
+			expect(request.getPayloadSource()).andReturn(new StAXSource(XMLInputFactory.newInstance().createXMLStreamReader(new StringReader(PAYLOAD2))));
+			replay(request);
+			
+			matcher.matchInternal(null, request);
+		}
+		finally
+		{
+			SmockCommon.setStreamingComparison(false);
+			logger.setLevel(level);
+		}
+	}
+	@Test(expected=AssertionError.class)
+	public void testPayloadStreamingDifferent()
+	{
+		SmockCommon.setStreamingComparison(true);
+		try
+		{
+			MessageMatcher matcher = new MessageMatcher(new StringSource(PAYLOAD));
+			
+			SoapMessage request = createMock(SoapMessage.class);
+			expect(request.getPayloadSource()).andReturn(new StringSource(PAYLOAD2));
+			replay(request);
+			
+			matcher.matchInternal(null, request);
+		}
+		finally
+		{
+			SmockCommon.setStreamingComparison(false);
+		}
+	}
+	@Test
+	public void testExpectedPayloadRootName()
+	{
+		assertEquals(new QName("test"), new MessageMatcher(new StringSource(PAYLOAD)).getExpectedPayloadRootName());
+		assertEquals(new QName("test"), new MessageMatcher(new StringSource(MESSAGE)).getExpectedPayloadRootName());
+		assertEquals(new QName("http://example.com", "element"), new MessageMatcher(new StringSource("<ex:element xmlns:ex='http://example.com'/>")).getExpectedPayloadRootName());
+	}
+	@Test
+	public void testExpectedPayloadRootNameOfTemplate()
+	{
+		String template = "<xsl:stylesheet xmlns:xsl=\"http://www.w3.org/1999/XSL/Transform\" version=\"1.0\"><xsl:template match=\"/\">"
+			+ "<element xmlns='http://example.com'/></xsl:template></xsl:stylesheet>";
+		assertNull(new TemplateAwareMessageMatcher(new StringSource(template), Collections.<String, Object>emptyMap(), new XsltTemplateProcessor()).getExpectedPayloadRootName());
+	}
+	@Test
+	public void testSharedDomControlFromMoreThreads() throws Exception
+	{
+		StringBuilder payload = new StringBuilder("<a>");
+		for (int i=0; i<200; i++)
+		{
+			payload.append("<b id='").append(i).append("'><c>").append(i).append("</c></b>");
+		}
+		payload.append("</a>");
+		//deferred DOM expands nodes when they are read
+		Document control = DocumentBuilderFactory.newInstance().newDocumentBuilder().parse(new InputSource(new StringReader(payload.toString())));
+		final MessageMatcher matcher = new MessageMatcher(new DOMSource(control));
+		final String message = payload.toString();
+		
+		Logger logger = Logger.getLogger(MessageMatcher.class);
+		Level level = logger.getLevel();
+		logger.setLevel(Level.INFO);
+		ExecutorService executor = Executors.newFixedThreadPool(8);
+		try
+		{
+			List<Future<Object>> results = new ArrayList<Future<Object>>();
+			for (int i=0; i<32; i++)
+			{
+				results.add(executor.submit(new Callable<Object>() {
+					public Object call() throws Exception {
+						matcher.match(TEST_URI, new MessageCreator(new StringSource(message)).createRequest(getMessageFactory()));
+						return null;
+					}
+				}));
+			}
+			for (Future<Object> result : results)
+			{
+				result.get();
+			}
+		}
+		finally
+		{
+			executor.shutdown();
+			logger.setLevel(level);
+		}
+	}
 }
-
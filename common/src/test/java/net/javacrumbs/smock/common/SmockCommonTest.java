@@ -0,0 +1,48 @@
+/**
+ * Copyright 2009-2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.javacrumbs.smock.common;
+
+import static net.javacrumbs.smock.common.SmockCommon.fromResource;
+import static net.javacrumbs.smock.common.SmockCommon.getResourceCache;
+import static org.custommonkey.xmlunit.XMLAssert.assertXMLEqual;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+
+import javax.xml.transform.dom.DOMSource;
+
+import org.junit.Test;
+
+
+public class SmockCommonTest extends AbstractSmockTest {
+
+	@Test
+	public void testResourceCached() throws Exception
+	{
+		SmockCommon.clearResourceCache();
+		long hits = getResourceCache().getHitCount();
+		
+		DOMSource source1 = (DOMSource) fromResource("xml/request1.xml");
+		DOMSource source2 = (DOMSource) fromResource("xml/request1.xml");
+		
+		assertEquals(hits + 1, getResourceCache().getHitCount());
+		assertEquals(1, getResourceCache().size());
+		assertNotSame(source1.getNode(), source2.getNode());
+		assertNotNull(source1.getSystemId());
+		assertEquals(source1.getSystemId(), source2.getSystemId());
+		assertXMLEqual(loadDocument(source1), loadDocument(source2));
+	}
+}
@@ -0,0 +1,117 @@
+/**
+ * Copyright 2009-2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.javacrumbs.smock.common;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.StringReader;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.transform.Source;
+import javax.xml.transform.dom.DOMSource;
+import javax.xml.transform.stax.StAXSource;
+
+import org.junit.Test;
+import org.springframework.xml.transform.StringSource;
+
+
+public class StreamingDiffTest extends AbstractSmockTest {
+	
+	private static final String[][] SIMILAR = {
+		{"<a>text</a>", "<a>text</a>"},
+		{"<a>\n  <b>text</b>\n</a>", "<a><b> text </b></a>"},
+		{"<a>te<![CDATA[xt]]></a>", "<a>text</a>"},
+		{"<p:a xmlns:p='urn:a'><p:b/></p:a>", "<q:a xmlns:q='urn:a'><q:b/></q:a>"},
+		{"<a x='1' y='2'/>", "<a y='2' x='1'/>"},
+		{"<a x='${IGNORE}'/>", "<a x='3'/>"},
+		{"<a><b>${IGNORE}</b></a>", "<a><b>anything</b></a>"},
+		{"<a xmlns:p='urn:t' type='p:T'/>", "<a xmlns:q='urn:t' type='q:T'/>"},
+		{"<a xmlns='urn:t' type='T'/>", "<p:a xmlns:p='urn:t' xmlns='urn:t' type='p:T'/>"},
+		{"<a><!-- c --><b/></a>", "<a><!--c--><b/></a>"},
+		//same attribute values are not resolved at all
+		{"<a xmlns:p='urn:t' type='p:T'/>", "<a xmlns:p='urn:u' type='p:T'/>"},
+		{MESSAGE, MESSAGE},
+	};
+
+	private static final String[][] DIFFERENT = {
+		{"<a>text</a>", "<a>other</a>"},
+		{"<a><b/></a>", "<a><c/></a>"},
+		{"<a xmlns='urn:a'/>", "<a xmlns='urn:b'/>"},
+		{"<a x='1'/>", "<a x='2'/>"},
+		{"<a x='1'/>", "<a y='1'/>"},
+		{"<a x='1'/>", "<a/>"},
+		{"<a x='${IGNORE}'/>", "<a/>"},
+		{"<a><b>${IGNORE}</b></a>", "<a><b/></a>"},
+		{"<a><b>${IGNORE}</b></a>", "<a><b><c/></b></a>"},
+		{"<a><b/></a>", "<a><b/><b/></a>"},
+		{"<a><!--c--><b/></a>", "<a><b/></a>"},
+		{"<a xmlns:p='urn:t' type='p:T'/>", "<a xmlns:q='urn:u' type='q:T'/>"},
+		{"<a>${IGNORE}</a>", "<a x='1'>text</a>"},
+		{MESSAGE, MESSAGE2},
+	};
+
+	@Test
+	public void testSimilar() throws Exception
+	{
+		for (String[] pair : SIMILAR) {
+			assertTrue("EnhancedDiff " + pair[0], enhancedDiff(pair[0], pair[1]).similar());
+			assertSimilar(true, pair[0], pair[1]);
+		}
+	}
+	
+	@Test
+	public void testDifferent() throws Exception
+	{
+		for (String[] pair : DIFFERENT) {
+			assertFalse("EnhancedDiff " + pair[0], enhancedDiff(pair[0], pair[1]).similar());
+			assertSimilar(false, pair[0], pair[1]);
+		}
+	}
+	
+	@Test
+	public void testOrderMatters()
+	{
+		StreamingDiff diff = new StreamingDiff(new StringSource("<a><b/><c/></a>"), new StringSource("<a><c/><b/></a>"));
+		assertFalse(diff.similar());
+		assertEquals("StreamingDiff: Expected element b but was c at /a/b", diff.toString());
+	}
+
+	private EnhancedDiff enhancedDiff(String control, String test) {
+		return new EnhancedDiff(loadDocument(new StringSource(control)), loadDocument(new StringSource(test)));
+	}
+
+	private void assertSimilar(boolean expected, String control, String test) throws XMLStreamException {
+		//sources can be read only once, new instances are needed for each combination
+		for (int i = 0; i < sources(control).length; i++) {
+			for (int j = 0; j < sources(test).length; j++) {
+				StreamingDiff diff = new StreamingDiff(sources(control)[i], sources(test)[j]);
+				assertEquals(control + " " + test + " " + diff, expected, diff.similar());
+			}
+		}
+	}
+
+	private Source[] sources(String xml) throws XMLStreamException {
+		return new Source[]{
+			new StringSource(xml),
+			new DOMSource(loadDocument(new StringSource(xml))),
+			new StAXSource(XMLInputFactory.newInstance().createXMLStreamReader(new StringReader(xml))),
+			new StAXSource(XMLInputFactory.newInstance().createXMLEventReader(new StringReader(xml)))
+		};
+	}
+}
@@ -0,0 +1,78 @@
+/**
+ * Copyright 2009-2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.javacrumbs.smock.common;
+
+import static net.javacrumbs.smock.common.XmlUtil.getRootElementName;
+import static net.javacrumbs.smock.common.XmlUtil.isSoap;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.StringReader;
+
+import javax.xml.namespace.QName;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.transform.dom.DOMSource;
+import javax.xml.transform.stax.StAXSource;
+import javax.xml.transform.stream.StreamSource;
+
+import org.junit.Test;
+import org.springframework.xml.transform.StringSource;
+
+
+public class XmlUtilTest extends AbstractSmockTest {
+	private static final QName ENVELOPE = new QName("http://schemas.xmlsoap.org/soap/envelope/", "Envelope");
+
+	@Test
+	public void testRootElementNameString()
+	{
+		assertEquals(ENVELOPE, getRootElementName(new StringSource(MESSAGE)));
+		assertEquals(new QName("test"), getRootElementName(new StringSource("<?xml version=\"1.0\"?><!-- comment --><test/>")));
+	}
+	@Test
+	public void testRootElementNameStream()
+	{
+		assertEquals(ENVELOPE, getRootElementName(new StreamSource(new ByteArrayInputStream(XmlUtil.stringToBytes(MESSAGE)))));
+	}
+	@Test
+	public void testRootElementNameDom()
+	{
+		assertEquals(ENVELOPE, getRootElementName(new DOMSource(loadDocument(new StringSource(MESSAGE)))));
+		assertEquals(ENVELOPE, getRootElementName(new DOMSource(loadDocument(new StringSource(MESSAGE)).getDocumentElement())));
+		assertNull(getRootElementName(new DOMSource()));
+	}
+	@Test
+	public void testRootElementNameStax() throws XMLStreamException
+	{
+		XMLStreamReader reader = XMLInputFactory.newInstance().createXMLStreamReader(new StringReader(MESSAGE));
+		reader.nextTag();
+		StAXSource source = new StAXSource(reader);
+		assertEquals(ENVELOPE, getRootElementName(source));
+		assertTrue(isSoap(source));
+	}
+	@Test
+	public void testIsSoap()
+	{
+		assertTrue(isSoap(new StringSource(MESSAGE)));
+		assertTrue(isSoap(new StringSource("<env:Envelope xmlns:env=\"http://www.w3.org/2003/05/soap-envelope\"><env:Body/></env:Envelope>")));
+		assertFalse(isSoap(new StringSource(PAYLOAD)));
+		assertFalse(isSoap(new StringSource("<Envelope><Body/></Envelope>")));
+	}
+}
@@ -0,0 +1,101 @@
+/**
+ * Copyright 2009-2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.javacrumbs.smock.common;
+
+import static java.util.Collections.singletonMap;
+import static net.javacrumbs.smock.common.XmlUtil.serialize;
+import static org.custommonkey.xmlunit.XMLAssert.assertXMLEqual;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.lang.ref.WeakReference;
+import java.util.Collections;
+
+import javax.xml.transform.Source;
+import javax.xml.transform.dom.DOMSource;
+
+import org.junit.Test;
+import org.springframework.xml.transform.StringSource;
+import org.w3c.dom.Document;
+
+
+public class XsltTemplateProcessorTest extends AbstractSmockTest {
+	private static final String TEMPLATE = "<xsl:stylesheet xmlns:xsl=\"http://www.w3.org/1999/XSL/Transform\" version=\"1.0\">" + 
+		"<xsl:param name=\"a\"/>" +
+		"<xsl:template match=\"/\">" +
+		"<element><xsl:value-of select=\"$a\"/></element>" +
+		"</xsl:template></xsl:stylesheet>";
+
+	@Test
+	public void testTemplateCompiledOnce() throws Exception
+	{
+		XsltTemplateProcessor processor = new XsltTemplateProcessor();
+		Source template = new DOMSource(loadDocument(new StringSource(TEMPLATE)));
+		
+		Source result1 = processor.processTemplate(template, null, singletonMap("a", (Object)"1"));
+		Source result2 = processor.processTemplate(template, null, singletonMap("a", (Object)"2"));
+		
+		assertXMLEqual("<element>1</element>", serialize(result1));
+		assertXMLEqual("<element>2</element>", serialize(result2));
+		assertEquals(1, processor.getTemplatesCache().size());
+		assertEquals(1, processor.getTemplatesCache().getHitCount());
+		assertEquals(1, processor.getTemplateDetectionCache().getHitCount());
+	}
+	@Test
+	public void testNonTemplateDetectionRemembered() throws Exception
+	{
+		XsltTemplateProcessor processor = new XsltTemplateProcessor();
+		Source message = new DOMSource(loadDocument(new StringSource(MESSAGE)));
+		
+		assertSame(message, processor.processTemplate(message, null, Collections.<String, Object>emptyMap()));
+		assertSame(message, processor.processTemplate(message, null, Collections.<String, Object>emptyMap()));
+		
+		assertEquals(1, processor.getTemplateDetectionCache().size());
+		assertEquals(1, processor.getTemplateDetectionCache().getHitCount());
+		assertEquals(0, processor.getTemplatesCache().size());
+	}
+	@Test
+	public void testStringTemplateCachedByContent() throws Exception
+	{
+		XsltTemplateProcessor processor = new XsltTemplateProcessor();
+		
+		processor.processTemplate(new StringSource(TEMPLATE), null, singletonMap("a", (Object)"1"));
+		Source result = processor.processTemplate(new StringSource(TEMPLATE), null, singletonMap("a", (Object)"2"));
+		
+		assertXMLEqual("<element>2</element>", serialize(result));
+		assertEquals(1, processor.getTemplatesCache().size());
+		assertEquals(1, processor.getTemplatesCache().getHitCount());
+		assertEquals(1, processor.getTemplateDetectionCache().getHitCount());
+	}
+	@Test
+	public void testDomTemplateNotRetained() throws Exception
+	{
+		XsltTemplateProcessor processor = new XsltTemplateProcessor();
+		Document template = loadDocument(new StringSource(TEMPLATE));
+		processor.processTemplate(new DOMSource(template), null, singletonMap("a", (Object)"1"));
+		
+		WeakReference<Document> reference = new WeakReference<Document>(template);
+		template = null;
+		for (int i=0; i<50 && reference.get()!=null; i++)
+		{
+			System.gc();
+			Thread.sleep(10);
+		}
+		assertNull(reference.get());
+		assertEquals(1, processor.getTemplatesCache().size());
+	}
+}
@@ -0,0 +1,155 @@
+/**
+ * Copyright 2009-2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.javacrumbs.smock.extended.client.connection;
+
+import static net.javacrumbs.smock.common.XmlUtil.getRootElementName;
+
+import java.net.URI;
+import java.util.List;
+
+import javax.xml.namespace.QName;
+import javax.xml.transform.Source;
+import javax.xml.transform.dom.DOMSource;
+import javax.xml.transform.stax.StAXSource;
+
+import net.javacrumbs.smock.common.MessageMatcher;
+import net.javacrumbs.smock.common.SoapActionMatcher;
+import net.javacrumbs.smock.common.UriMatcher;
+
+import org.springframework.util.ObjectUtils;
+import org.springframework.ws.WebServiceMessage;
+import org.springframework.ws.test.client.RequestMatcher;
+
+/**
+ * Cheap to compare properties of a request - payload root element name, SOAPAction and URI. 
+ * Used to find expected connections that can accept a request without running all the request matchers.
+ * Null value means that the property is not known. URI is known only for matchers created by smock connectionTo.
+ * @author Lukas Krecan
+ */
+final class DispatchKey {
+	
+	private final QName payloadRootName;
+	
+	private final String soapAction;
+	
+	private final URI uri;
+
+	DispatchKey(QName payloadRootName, String soapAction, URI uri) {
+		this.payloadRootName = payloadRootName;
+		this.soapAction = soapAction;
+		this.uri = uri;
+	}
+	
+	/**
+	 * Reads the key of the request. Payload is not parsed, only its root element name is read.
+	 * @param uri
+	 * @param request
+	 * @return
+	 */
+	static DispatchKey forRequest(URI uri, WebServiceMessage request) {
+		return new DispatchKey(getPayloadRootName(request), SoapActionMatcher.getSoapAction(request), uri);
+	}
+	
+	/**
+	 * Creates the key of requests that can be accepted by given matchers. 
+	 * @param requestMatchers
+	 * @return
+	 */
+	static DispatchKey forMatchers(List<RequestMatcher> requestMatchers) {
+		QName payloadRootName = null;
+		String soapAction = null;
+		URI uri = null;
+		for (RequestMatcher requestMatcher : requestMatchers) 
+		{
+			if (payloadRootName==null && requestMatcher instanceof MessageMatcher)
+			{
+				payloadRootName = ((MessageMatcher)requestMatcher).getExpectedPayloadRootName();
+			}
+			else if (soapAction==null && requestMatcher instanceof SoapActionMatcher)
+			{
+				soapAction = ((SoapActionMatcher)requestMatcher).getExpectedSoapAction();
+			}
+			else if (uri==null && requestMatcher instanceof UriMatcher)
+			{
+				uri = ((UriMatcher)requestMatcher).getExpectedUri();
+			}
+		}
+		return new DispatchKey(payloadRootName, soapAction, uri);
+	}
+
+	/**
+	 * Returns true if a request with given key can be accepted. Unknown properties are not compared.
+	 * @param requestKey
+	 * @return
+	 */
+	boolean accepts(DispatchKey requestKey) {
+		return accepts(payloadRootName, requestKey.payloadRootName) && accepts(soapAction, requestKey.soapAction) && accepts(uri, requestKey.uri);
+	}
+	
+	private static boolean accepts(Object expected, Object actual) {
+		return expected==null || actual==null || ObjectUtils.nullSafeEquals(expected, actual);
+	}
+
+	/**
+	 * Returns human readable description of accepted requests.
+	 * @return
+	 */
+	String describe() {
+		StringBuilder result = new StringBuilder();
+		append(result, "payload root", payloadRootName);
+		append(result, "SOAPAction", soapAction);
+		append(result, "URI", uri);
+		return result.length() > 0 ? result.toString() : "any request";
+	}
+	
+	private static void append(StringBuilder description, String name, Object value) {
+		if (value!=null)
+		{
+			if (description.length() > 0)
+			{
+				description.append(", ");
+			}
+			description.append(name).append(' ').append(value);
+		}
+	}
+
+	QName getPayloadRootName() {
+		return payloadRootName;
+	}
+	
+	String getSoapAction() {
+		return soapAction;
+	}
+	
+	URI getUri() {
+		return uri;
+	}
+
+	private static QName getPayloadRootName(WebServiceMessage request) {
+		Source payloadSource = request.getPayloadSource();
+		//other sources could be consumed
+		if (payloadSource instanceof DOMSource || payloadSource instanceof StAXSource)
+		{
+			return getRootElementName(payloadSource);
+		}
+		return null;
+	}
+	
+	@Override
+	public String toString() {
+		return "DispatchKey[payloadRootName=" + payloadRootName + ", soapAction=" + soapAction + ", uri=" + uri + "]";
+	}
+}
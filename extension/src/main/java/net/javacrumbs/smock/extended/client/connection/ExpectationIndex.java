@@ -0,0 +1,124 @@
+/**
+ * Copyright 2009-2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.javacrumbs.smock.extended.client.connection;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Immutable index of expected connections by payload root element name, SOAPAction and URI. Each property has its own groups,
+ * connections accepting any value of the property are included in all its groups. Each group keeps the order in which 
+ * the connections were expected. 
+ * @author Lukas Krecan
+ */
+final class ExpectationIndex {
+	
+	private final int size;
+	
+	private final List<MockConnection> allConnections;
+	
+	private final PropertyIndex payloadRootIndex = new PropertyIndex();
+	
+	private final PropertyIndex soapActionIndex = new PropertyIndex();
+	
+	private final PropertyIndex uriIndex = new PropertyIndex();
+
+	ExpectationIndex(List<MockConnection> connections) {
+		this.size = connections.size();
+		this.allConnections = Collections.unmodifiableList(new ArrayList<MockConnection>(connections));
+		for (MockConnection connection : allConnections) 
+		{
+			DispatchKey key = connection.getDispatchKey();
+			payloadRootIndex.add(key.getPayloadRootName(), connection);
+			soapActionIndex.add(key.getSoapAction(), connection);
+			uriIndex.add(key.getUri(), connection);
+		}
+	}
+	
+	/**
+	 * Returns connections that can accept request with given key. The smallest group of the known request properties is returned,
+	 * so the key still has to be checked by the caller.
+	 * @param requestKey
+	 * @return
+	 */
+	List<MockConnection> getCandidates(DispatchKey requestKey) {
+		List<MockConnection> result = allConnections;
+		result = smaller(result, payloadRootIndex.getCandidates(requestKey.getPayloadRootName()));
+		result = smaller(result, soapActionIndex.getCandidates(requestKey.getSoapAction()));
+		result = smaller(result, uriIndex.getCandidates(requestKey.getUri()));
+		return result;
+	}
+	
+	private static List<MockConnection> smaller(List<MockConnection> list1, List<MockConnection> list2) {
+		return list2!=null && list2.size() < list1.size() ? list2 : list1;
+	}
+	
+	/**
+	 * Number of indexed connections.
+	 * @return
+	 */
+	int size() {
+		return size;
+	}
+	
+	/**
+	 * Groups of connections by value of one property.
+	 */
+	private static final class PropertyIndex {
+		
+		private final List<MockConnection> anyValueConnections = new ArrayList<MockConnection>();
+		
+		private final Map<Object, List<MockConnection>> connectionsByValue = new HashMap<Object, List<MockConnection>>();
+		
+		void add(Object value, MockConnection connection) {
+			if (value==null)
+			{
+				anyValueConnections.add(connection);
+				for (List<MockConnection> group : connectionsByValue.values())
+				{
+					group.add(connection);
+				}
+			}
+			else
+			{
+				List<MockConnection> group = connectionsByValue.get(value);
+				if (group==null)
+				{
+					group = new ArrayList<MockConnection>(anyValueConnections);
+					connectionsByValue.put(value, group);
+				}
+				group.add(connection);
+			}
+		}
+		
+		/**
+		 * Returns connections accepting given value, null if the value is not known.
+		 * @param value
+		 * @return
+		 */
+		List<MockConnection> getCandidates(Object value) {
+			if (value==null)
+			{
+				return null;
+			}
+			List<MockConnection> group = connectionsByValue.get(value);
+			return group!=null ? group : anyValueConnections;
+		}
+	}
+}
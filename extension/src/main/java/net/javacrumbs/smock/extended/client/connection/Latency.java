@@ -0,0 +1,139 @@
+/**
+ * Copyright 2009-2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.javacrumbs.smock.extended.client.connection;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.springframework.util.Assert;
+
+/**
+ * Delay of a mocked response. Use {@link ShapedResponseCreator#withLatency(Latency, org.springframework.ws.test.client.ResponseCreator)}
+ * to apply it.
+ * @author Lukas Krecan
+ */
+public abstract class Latency {
+	
+	private static final Random random = new Random();
+	
+	/**
+	 * Returns delay of the next response in milliseconds.
+	 * @return
+	 */
+	public abstract long nextDelay();
+	
+	/**
+	 * All responses are delayed by the same time.
+	 * @param millis
+	 * @return
+	 */
+	public static Latency fixed(final long millis) {
+		Assert.isTrue(millis >= 0, "'millis' can not be negative");
+		return new Latency() {
+			@Override
+			public long nextDelay() {
+				return millis;
+			}
+			@Override
+			public String toString() {
+				return "fixed latency " + millis + " ms";
+			}
+		};
+	}
+	
+	/**
+	 * Delays are uniformly distributed between min and max.
+	 * @param minMillis
+	 * @param maxMillis
+	 * @return
+	 */
+	public static Latency uniform(final long minMillis, final long maxMillis) {
+		Assert.isTrue(minMillis >= 0 && minMillis <= maxMillis, "Invalid range");
+		return new Latency() {
+			@Override
+			public long nextDelay() {
+				return minMillis + (long)(random.nextDouble() * (maxMillis - minMillis));
+			}
+			@Override
+			public String toString() {
+				return "uniform latency " + minMillis + "-" + maxMillis + " ms";
+			}
+		};
+	}
+	
+	/**
+	 * Delays are distributed according to given percentiles, for example <code>percentiles(new double[]{50, 99, 100}, new long[]{20, 200, 1000})</code>
+	 * means that half of the responses are delayed by at most 20 ms, 99% by at most 200 ms and no response by more than 1 s. 
+	 * Delays between the percentiles are linearly interpolated, percentile 0 corresponds to no delay unless specified. 
+	 * @param percentiles increasing percentiles from interval 0-100
+	 * @param millis delays corresponding to the percentiles, non-decreasing
+	 * @return
+	 */
+	public static Latency percentiles(double[] percentiles, long[] millis) {
+		Assert.isTrue(percentiles.length > 0 && percentiles.length==millis.length, "Percentiles and delays have to have the same non-zero length");
+		for (int i=0; i<percentiles.length; i++)
+		{
+			Assert.isTrue(percentiles[i] >= 0 && percentiles[i] <= 100, "Percentile has to be between 0 and 100");
+			Assert.isTrue(millis[i] >= 0, "Delay can not be negative");
+			if (i > 0)
+			{
+				Assert.isTrue(percentiles[i] > percentiles[i-1] && millis[i] >= millis[i-1], "Percentiles and delays have to be increasing");
+			}
+		}
+		return new PercentileLatency(percentiles.clone(), millis.clone());
+	}
+	
+	private static class PercentileLatency extends Latency {
+		private final double[] percentiles;
+		
+		private final long[] millis;
+
+		public PercentileLatency(double[] percentiles, long[] millis) {
+			this.percentiles = percentiles;
+			this.millis = millis;
+		}
+
+		@Override
+		public long nextDelay() {
+			return delayAt(random.nextDouble() * 100);
+		}
+
+		long delayAt(double percentile) {
+			double lowerPercentile = 0;
+			long lowerMillis = 0;
+			for (int i=0; i<percentiles.length; i++)
+			{
+				if (percentile <= percentiles[i])
+				{
+					if (percentiles[i]==lowerPercentile)
+					{
+						return millis[i];
+					}
+					double ratio = (percentile - lowerPercentile) / (percentiles[i] - lowerPercentile);
+					return lowerMillis + Math.round(ratio * (millis[i] - lowerMillis));
+				}
+				lowerPercentile = percentiles[i];
+				lowerMillis = millis[i];
+			}
+			return millis[millis.length - 1];
+		}
+		
+		@Override
+		public String toString() {
+			return "latency percentiles " + Arrays.toString(percentiles) + " ms " + Arrays.toString(millis);
+		}
+	}
+}
@@ -16,37 +16,45 @@
 package net.javacrumbs.smock.extended.client.connection;
 
 import static net.javacrumbs.smock.common.XmlUtil.getEnvelopeSource;
-import static net.javacrumbs.smock.common.XmlUtil.serialize;
-import static net.javacrumbs.smock.common.XmlUtil.stringToBytes;
+import static net.javacrumbs.smock.common.XmlUtil.transform;
 
 import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.net.URI;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.xml.transform.stream.StreamResult;
 
 import net.javacrumbs.smock.common.EndpointInterceptorClientAdapter;
 import net.javacrumbs.smock.common.InterceptingTemplate;
+import net.javacrumbs.smock.common.MessageBuffer;
+import net.javacrumbs.smock.common.MessageCreator;
+import net.javacrumbs.smock.extended.client.connection.metrics.ExpectationMetrics;
+
+import org.springframework.util.Assert;
 
 import org.springframework.ws.WebServiceMessage;
 import org.springframework.ws.WebServiceMessageFactory;
 import org.springframework.ws.context.DefaultMessageContext;
 import org.springframework.ws.context.MessageContext;
 import org.springframework.ws.server.EndpointInterceptor;
+import org.springframework.ws.soap.SoapMessage;
 import org.springframework.ws.test.client.RequestMatcher;
-import org.springframework.ws.test.client.ResponseActions;
 import org.springframework.ws.test.client.ResponseCreator;
 import org.springframework.ws.transport.WebServiceMessageReceiver;
 
 
 /**
- * Simulates connection to a server. 
+ * Simulates connection to a server. Used by {@link MockConversation} as an expectation that can be called 
+ * given number of times and as a connection that collects a request.
  * @author Lukas Krecan
  */
-public class MockConnection implements ResponseActions {
+public class MockConnection implements RepeatableResponseActions {
 	
 	private static final String CONTENT_TYPE = "text/xml;charset=UTF-8";
 	
@@ -56,23 +64,84 @@ public class MockConnection implements ResponseActions {
 	
 	private final WebServiceMessageFactory messageFactory;
 	
-	private final ByteArrayOutputStream requestStream = new ByteArrayOutputStream();
+	private static volatile long requestSpillThreshold = MessageBuffer.NO_SPILL;
+	
+	private static volatile boolean responseStreaming = false;
+	
+	private final MessageBuffer requestStream = new MessageBuffer(requestSpillThreshold);
 	
 	private URI uri;
 	
+	private String soapAction;
+	
+	/**
+	 * Key of requests this connection can accept, null if not created yet.
+	 */
+	private volatile DispatchKey dispatchKey;
+	
 	private final EndpointInterceptor[] interceptors; 
 	
+	private volatile int minCount = 1;
+	
+	private volatile int maxCount = 1;
+	
+	/**
+	 * Number of requests processed by this expectation.
+	 */
+	private final AtomicInteger callCount = new AtomicInteger(0);
+	
+	/**
+	 * Metrics of the expectation, null for connections without request matchers.
+	 */
+	private final ExpectationMetrics metrics;
+	
 	public MockConnection(RequestMatcher requestMatcher, WebServiceMessageFactory messageFactory, EndpointInterceptor[] interceptors)
 	{
+		this(messageFactory, interceptors, new ExpectationMetrics());
 		requestMatchers.add(requestMatcher);
+	}
+	
+	/**
+	 * Creates connection without request matchers.
+	 * @param messageFactory
+	 * @param interceptors
+	 */
+	protected MockConnection(WebServiceMessageFactory messageFactory, EndpointInterceptor[] interceptors)
+	{
+		this(messageFactory, interceptors, null);
+	}
+	
+	private MockConnection(WebServiceMessageFactory messageFactory, EndpointInterceptor[] interceptors, ExpectationMetrics metrics)
+	{
 		this.messageFactory = messageFactory;
 		this.interceptors = interceptors;
+		this.metrics = metrics;
 	}
 	
-	public ResponseActions andExpect(RequestMatcher requestMatcher) {
+	public RepeatableResponseActions andExpect(RequestMatcher requestMatcher) {
 		requestMatchers.add(requestMatcher);
 		return this;
 	}
+	
+	public RepeatableResponseActions times(int count) {
+		Assert.isTrue(count > 0, "'count' has to be positive");
+		return setCount(count, count);
+	}
+	
+	public RepeatableResponseActions atLeast(int count) {
+		Assert.isTrue(count >= 0, "'count' can not be negative");
+		return setCount(count, Integer.MAX_VALUE);
+	}
+	
+	public RepeatableResponseActions anyTimes() {
+		return setCount(0, Integer.MAX_VALUE);
+	}
+	
+	private RepeatableResponseActions setCount(int minCount, int maxCount) {
+		this.minCount = minCount;
+		this.maxCount = maxCount;
+		return this;
+	}
 
 	public void andRespond(ResponseCreator responseCreator) {
 		this.responseCreator = responseCreator;
@@ -85,25 +154,150 @@ public class MockConnection implements ResponseActions {
 	 * @throws IOException
 	 */
 	public InputStream getInputStream() throws IOException {
-		final WebServiceMessage request = crateRequest();
+		try {
+			return createResponse(uri, crateRequest(), getRequestSize(), new ConnectionSelector() {
+				public MockConnection select(URI uri, WebServiceMessage request) throws IOException {
+					validate(uri, request);
+					return MockConnection.this;
+				}
+			});
+		} finally {
+			discardRequest();
+		}
+	}
+
+	/**
+	 * Creates response to the request and returns it in serialized form. Request interceptors are applied first, 
+	 * then the selector chooses the expected connection that creates the response, so request matchers see 
+	 * the intercepted request. Static responses are serialized only once.
+	 * If the response creator is {@link ShapedResponseCreator}, the response is delayed and throttled. 
+	 * @param uri
+	 * @param request
+	 * @param requestSize size of the serialized request in bytes
+	 * @param selector selects the expected connection that creates the response
+	 * @return
+	 * @throws IOException
+	 */
+	InputStream createResponse(final URI uri, WebServiceMessage request, long requestSize, final ConnectionSelector selector) throws IOException {
+		if (interceptors==null || interceptors.length==0)
+		{
+			return selector.select(uri, request).createResponse(uri, request, requestSize);
+		}
+		final MockConnection[] selected = new MockConnection[1];
+		//time of creation without validation
+		final long[] creationTime = new long[1];
 		MessageContext messageContext = new DefaultMessageContext(request, messageFactory);
 
 		InterceptingTemplate interceptingTemplate = new InterceptingTemplate(EndpointInterceptorClientAdapter.wrapEndpointInterceptors(interceptors));
 		try {
 			interceptingTemplate.interceptRequest(messageContext, new WebServiceMessageReceiver() {
 				public void receive(MessageContext context) throws Exception {
-					validate(request);
-					context.setResponse(responseCreator.createResponse(uri, request, messageFactory));
+					MockConnection connection = selector.select(uri, context.getRequest());
+					selected[0] = connection;
+					long start = System.nanoTime();
+					context.setResponse(connection.getUnshapedResponseCreator().createResponse(uri, context.getRequest(), messageFactory));
+					creationTime[0] = System.nanoTime() - start;
 				}
 			});
 		} catch (Exception e) {
 			throw new IllegalStateException("Error when processing request.",e);
 		}
-		return new ByteArrayInputStream(stringToBytes(serialize(getEnvelopeSource(messageContext.getResponse()))));
+		//response can be set by an interceptor, without any expected connection 
+		MockConnection connection = selected[0]!=null ? selected[0] : this;
+		return connection.shape(connection.serializeResponse(messageContext.getResponse(), requestSize, creationTime[0]));
+	}
+	
+	/**
+	 * Creates response to a request that has been already matched. Interceptors are not applied.
+	 * @param uri
+	 * @param request
+	 * @param requestSize
+	 * @return
+	 * @throws IOException
+	 */
+	private InputStream createResponse(URI uri, WebServiceMessage request, long requestSize) throws IOException {
+		ResponseCreator responseCreator = getUnshapedResponseCreator();
+		long start = System.nanoTime();
+		if (responseCreator instanceof MessageCreator)
+		{
+			byte[] response = ((MessageCreator)responseCreator).createResponseBytes(uri, request, messageFactory);
+			if (metrics!=null)
+			{
+				metrics.recordResponse(System.nanoTime() - start, requestSize);
+				metrics.recordBytesOut(response.length);
+			}
+			return shape(new ByteArrayInputStream(response));
+		}
+		WebServiceMessage response = responseCreator.createResponse(uri, request, messageFactory);
+		return shape(serializeResponse(response, requestSize, System.nanoTime() - start));
+	}
+	
+	/**
+	 * Returns response creator without {@link ShapedResponseCreator} decoration.
+	 * @return
+	 */
+	private ResponseCreator getUnshapedResponseCreator() {
+		if (responseCreator instanceof ShapedResponseCreator)
+		{
+			return ((ShapedResponseCreator)responseCreator).getResponseCreator();
+		}
+		return responseCreator;
+	}
+	
+	/**
+	 * Delays and throttles the response if the response creator is {@link ShapedResponseCreator}.
+	 * @param response
+	 * @return
+	 */
+	private InputStream shape(InputStream response) {
+		if (responseCreator instanceof ShapedResponseCreator)
+		{
+			return ((ShapedResponseCreator)responseCreator).shape(response);
+		}
+		return response;
+	}
+	
+	/**
+	 * Serializes the response without converting it to a String. If response streaming is enabled, the response is
+	 * serialized by a background thread while the client is reading it.
+	 * @param response
+	 * @param requestSize
+	 * @param creationTime time spent creating the response in nanoseconds
+	 * @return
+	 * @throws IOException
+	 */
+	private InputStream serializeResponse(WebServiceMessage response, long requestSize, long creationTime) throws IOException {
+		long start = System.nanoTime();
+		InputStream result;
+		if (responseStreaming)
+		{
+			InputStream pipe = ResponsePipe.serialize(getEnvelopeSource(response));
+			result = metrics!=null ? new CountingInputStream(pipe, metrics) : pipe;
+		}
+		else
+		{
+			MessageBuffer responseBuffer = new MessageBuffer();
+			transform(getEnvelopeSource(response), new StreamResult(responseBuffer));
+			if (metrics!=null)
+			{
+				metrics.recordBytesOut(responseBuffer.size());
+			}
+			result = responseBuffer.getInputStream();
+		}
+		if (metrics!=null)
+		{
+			metrics.recordResponse(creationTime + System.nanoTime() - start, requestSize);
+		}
+		return result;
 	}
 
 	protected WebServiceMessage crateRequest() throws IOException {
-		 return messageFactory.createWebServiceMessage(new ByteArrayInputStream(requestStream.toByteArray()));
+		 WebServiceMessage request = messageFactory.createWebServiceMessage(requestStream.getInputStream());
+		 if (soapAction!=null && request instanceof SoapMessage)
+		 {
+			 ((SoapMessage)request).setSoapAction(soapAction);
+		 }
+		 return request;
 	}
 
 	/**
@@ -113,6 +307,22 @@ public class MockConnection implements ResponseActions {
 	public OutputStream getOutputStream() {
 		return requestStream;
 	}
+	
+	/**
+	 * Discards the request written to the output stream, including its temporary file.
+	 * @throws IOException
+	 */
+	void discardRequest() throws IOException {
+		requestStream.discard();
+	}
+	
+	/**
+	 * Returns number of bytes written to the output stream.
+	 * @return
+	 */
+	long getRequestSize() {
+		return requestStream.size();
+	}
 
 	public int getResponseCode() {
 		return 200;
@@ -127,12 +337,174 @@ public class MockConnection implements ResponseActions {
 	}
 	
 	protected void validate(WebServiceMessage request) throws IOException {
-		for (RequestMatcher requestMatcher: requestMatchers)
+		validate(uri, request);
+	}
+	
+	void validate(URI uri, WebServiceMessage request) throws IOException {
+		long start = System.nanoTime();
+		boolean matched = false;
+		try
+		{
+			for (RequestMatcher requestMatcher: requestMatchers)
+			{
+				requestMatcher.match(uri, request);
+			}
+			matched = true;
+		}
+		finally
 		{
-			requestMatcher.match(uri, request);
+			if (metrics!=null)
+			{
+				metrics.recordMatch(System.nanoTime() - start, matched);
+			}
 		}
 	}
+	
+	/**
+	 * Applies request matchers on the request. Returns null if the request matches, the error describing the mismatch otherwise. 
+	 * @param uri
+	 * @param request
+	 * @return
+	 * @throws IOException
+	 */
+	AssertionError findMismatch(URI uri, WebServiceMessage request) throws IOException {
+		try
+		{
+			validate(uri, request);
+			return null;
+		}
+		catch (AssertionError e)
+		{
+			return e;
+		}
+	}
+	
+	/**
+	 * Increments the call count. Returns false if the expectation has been already called maximal number of times.
+	 * @return
+	 */
+	boolean tryConsume() {
+		while (true)
+		{
+			int count = callCount.get();
+			if (count>=maxCount)
+			{
+				return false;
+			}
+			if (callCount.compareAndSet(count, count + 1))
+			{
+				return true;
+			}
+		}
+	}
+	
+	/**
+	 * Returns true if the expectation can not be called any more.
+	 * @return
+	 */
+	boolean isExhausted() {
+		return callCount.get()>=maxCount;
+	}
+	
+	/**
+	 * Returns true if the expectation has been called at least minimal number of times.
+	 * @return
+	 */
+	boolean isSatisfied() {
+		return callCount.get()>=minCount;
+	}
+	
+	public int getCallCount() {
+		return callCount.get();
+	}
+	
+	/**
+	 * Describes expected and actual number of calls.
+	 * @return
+	 */
+	String describeCallCount() {
+		String expected;
+		if (maxCount==Integer.MAX_VALUE)
+		{
+			expected = minCount==0 ? "any times" : "at least " + minCount + " time(s)";
+		}
+		else
+		{
+			expected = maxCount + " time(s)";
+		}
+		return "expected " + expected + ", called " + getCallCount() + " time(s)";
+	}
 		
+	/**
+	 * Returns key of requests this connection can accept. The key is created when the method is called for the first time, 
+	 * request matchers should not be added later.
+	 * @return
+	 */
+	DispatchKey getDispatchKey() {
+		DispatchKey result = dispatchKey;
+		if (result==null)
+		{
+			result = DispatchKey.forMatchers(requestMatchers);
+			dispatchKey = result;
+		}
+		return result;
+	}
+	
+	public String getSoapAction() {
+		return soapAction;
+	}
+
+	/**
+	 * Sets SOAPAction transport header of the request.
+	 * @param soapAction
+	 */
+	public void setSoapAction(String soapAction) {
+		this.soapAction = soapAction;
+	}
+
+	public static long getRequestSpillThreshold() {
+		return requestSpillThreshold;
+	}
+
+	/**
+	 * Requests bigger than the threshold are stored in a temporary file instead of memory. Useful for tests
+	 * with very big requests. Applies on connections created after the call.
+	 * @param requestSpillThreshold size in bytes, {@link MessageBuffer#NO_SPILL} to keep all requests in memory (default)
+	 */
+	public static void setRequestSpillThreshold(long requestSpillThreshold) {
+		MockConnection.requestSpillThreshold = requestSpillThreshold;
+	}
+
+	/**
+	 * Returns metrics of the expectation. 
+	 * @return
+	 */
+	public ExpectationMetrics getMetrics() {
+		return metrics;
+	}
+	
+	/**
+	 * Describes requests accepted by the expectation.
+	 * @return
+	 */
+	String describe() {
+		return getDispatchKey().describe();
+	}
+
+	public static boolean isResponseStreaming() {
+		return responseStreaming;
+	}
+
+	/**
+	 * If set to true, responses are serialized by a background thread and streamed to the client 
+	 * through a pipe, so the client can start parsing before the whole response is serialized. 
+	 * Static responses without interceptors are already serialized, so they are not affected.
+	 * @param responseStreaming
+	 */
+	public static void setResponseStreaming(boolean responseStreaming) {
+		MockConnection.responseStreaming = responseStreaming;
+	}
+
 	public URI getUri() {
 		return uri;
 	}
@@ -140,4 +512,51 @@ public class MockConnection implements ResponseActions {
 	public void setUri(URI uri) {
 		this.uri = uri;
 	}
+	
+	/**
+	 * Selects expected connection that creates the response.
+	 */
+	interface ConnectionSelector {
+		/**
+		 * Returns expected connection that creates response to the request, the request has been already intercepted.
+		 * Throws {@link AssertionError} if there is no such connection.
+		 * @param uri
+		 * @param request
+		 * @return
+		 * @throws IOException
+		 */
+		MockConnection select(URI uri, WebServiceMessage request) throws IOException;
+	}
+	
+	/**
+	 * Counts bytes of a streamed response read by the client.
+	 */
+	private static class CountingInputStream extends FilterInputStream {
+		private final ExpectationMetrics metrics;
+		
+		public CountingInputStream(InputStream in, ExpectationMetrics metrics) {
+			super(in);
+			this.metrics = metrics;
+		}
+		
+		@Override
+		public int read() throws IOException {
+			int result = super.read();
+			if (result >= 0)
+			{
+				metrics.recordBytesOut(1);
+			}
+			return result;
+		}
+		
+		@Override
+		public int read(byte[] buffer, int offset, int length) throws IOException {
+			int count = super.read(buffer, offset, length);
+			if (count > 0)
+			{
+				metrics.recordBytesOut(count);
+			}
+			return count;
+		}
+	}
 }
@@ -15,17 +15,26 @@
  */
 package net.javacrumbs.smock.extended.client.connection;
 
-import java.util.LinkedList;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
 import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
 
+import net.javacrumbs.smock.extended.client.connection.metrics.ConversationMetrics;
 
+import org.springframework.ws.WebServiceMessage;
 import org.springframework.ws.WebServiceMessageFactory;
 import org.springframework.ws.server.EndpointInterceptor;
 import org.springframework.ws.test.client.RequestMatcher;
-import org.springframework.ws.test.client.ResponseActions;
 
 /**
- * Stores information about communication with mock server.
+ * Stores information about communication with mock server. By default the expected connections have to be called in the same
+ * order as they were expected. If the conversation is not ordered, each request is dispatched to the first 
+ * expected connection whose request matchers accept it and which can still be called, so the requests can be sent from more threads at once.
+ * An expected connection can be called more times, see {@link RepeatableResponseActions}. Request interceptors are applied
+ * before the request is matched with expected connections.
  * @author Lukas Krecan
  */
 public class MockConversation {
@@ -33,20 +42,37 @@ public class MockConversation {
 	/**
 	 * Connections expected to be called.
 	 */
-	private final List<MockConnection> expectedConnections = new LinkedList<MockConnection>();
+	private final List<MockConnection> expectedConnections = new CopyOnWriteArrayList<MockConnection>();
 	
 	/**
-	 * Index of active connection
+	 * Index of active connection in ordered conversation.
 	 */
-	private int activeConnection = 0;
+	private final AtomicInteger activeConnection = new AtomicInteger(0);
 	
 	private final WebServiceMessageFactory messageFactory;
 
 	private final EndpointInterceptor[] interceptors;
+	
+	private final boolean ordered;
+	
+	/**
+	 * Index of expected connections used by unordered conversation, rebuilt when a connection is added.
+	 */
+	private volatile ExpectationIndex expectationIndex;
 		
 	public MockConversation(WebServiceMessageFactory messageFactory, EndpointInterceptor[] interceptors) {
+		this(messageFactory, interceptors, true);
+	}
+	
+	/**
+	 * @param messageFactory
+	 * @param interceptors
+	 * @param ordered if false, requests are matched with expected connections regardless of the order. 
+	 */
+	public MockConversation(WebServiceMessageFactory messageFactory, EndpointInterceptor[] interceptors, boolean ordered) {
 		this.messageFactory = messageFactory;
 		this.interceptors = interceptors; 
+		this.ordered = ordered;
 	}
 
 	/**
@@ -54,34 +80,201 @@ public class MockConversation {
 	 * @param requestMatcher
 	 * @return
 	 */
-	public ResponseActions expect(RequestMatcher requestMatcher) {
+	public RepeatableResponseActions expect(RequestMatcher requestMatcher) {
 		MockConnection mockConnection = new MockConnection(requestMatcher, messageFactory, interceptors);
 		expectedConnections.add(mockConnection);
 		return mockConnection;
 	}
 
 	/**
-	 * Returns connection to process a request.
+	 * Returns connection to process a request. Returned connection selects the expected connection 
+	 * when the request is complete.
 	 * @return
 	 */
 	public MockConnection getActiveConnection()
 	{
-		if (activeConnection>=expectedConnections.size())
+		return new DispatchingMockConnection();
+	}
+	
+	/**
+	 * Finds expected connection for the request. Called after request interceptors are applied.
+	 * @param uri
+	 * @param request
+	 * @return
+	 * @throws IOException
+	 */
+	MockConnection select(URI uri, WebServiceMessage request) throws IOException {
+		return ordered ? selectOrdered(uri, request) : selectUnordered(uri, request);
+	}
+	
+	/**
+	 * Uses active connection. The next one is used if the active one can not be called any more or if it does not match the request 
+	 * and has been already called expected number of times. 
+	 * @param uri
+	 * @param request
+	 * @return
+	 * @throws IOException
+	 */
+	private MockConnection selectOrdered(URI uri, WebServiceMessage request) throws IOException {
+		while (true)
 		{
-			throw new AssertionError("No further connections expected");
+			int index = activeConnection.get();
+			if (index>=expectedConnections.size())
+			{
+				throw new AssertionError("No further connections expected");
+			}
+			MockConnection expectedConnection = expectedConnections.get(index);
+			if (!expectedConnection.isExhausted())
+			{
+				if (!expectedConnection.isSatisfied())
+				{
+					//no other choice, the request has to match
+					if (expectedConnection.tryConsume())
+					{
+						expectedConnection.validate(uri, request);
+						return expectedConnection;
+					}
+				}
+				else if (expectedConnection.findMismatch(uri, request)==null)
+				{
+					if (expectedConnection.tryConsume())
+					{
+						return expectedConnection;
+					}
+				}
+				else
+				{
+					activeConnection.compareAndSet(index, index + 1);
+				}
+			}
+			else
+			{
+				activeConnection.compareAndSet(index, index + 1);
+			}
 		}
-		MockConnection connection = expectedConnections.get(activeConnection);
-		activeConnection++;
-		return connection;
 	}
 	
 	/**
-	 * Throws {@link AssertionError} if more calls were expected.
+	 * Finds first expected connection that can be called and matches the request. Request matchers are applied only on connections 
+	 * whose {@link DispatchKey} accepts the request, other connections can not match it. Each matcher is applied at most once.
+	 * @param uri
+	 * @param request
+	 * @return
+	 * @throws IOException
+	 */
+	private MockConnection selectUnordered(URI uri, WebServiceMessage request) throws IOException {
+		DispatchKey requestKey = DispatchKey.forRequest(uri, request);
+		AssertionError firstMismatch = null;
+		for (MockConnection expectedConnection : getExpectationIndex().getCandidates(requestKey))
+		{
+			if (!expectedConnection.isExhausted() && expectedConnection.getDispatchKey().accepts(requestKey))
+			{
+				AssertionError mismatch = expectedConnection.findMismatch(uri, request);
+				//the connection could have been exhausted by another thread in the meantime
+				if (mismatch==null && expectedConnection.tryConsume())
+				{
+					return expectedConnection;
+				}
+				if (firstMismatch==null)
+				{
+					firstMismatch = mismatch;
+				}
+			}
+		}
+		if (firstMismatch!=null)
+		{
+			throw new AssertionError("No expected connection matches the request. Mismatch of the first one: "+firstMismatch.getMessage());
+		}
+		for (MockConnection expectedConnection : expectedConnections)
+		{
+			if (!expectedConnection.isExhausted())
+			{
+				throw new AssertionError("No expected connection accepts request with " + requestKey.describe());
+			}
+		}
+		throw new AssertionError("No further connections expected");
+	}
+	
+	private ExpectationIndex getExpectationIndex() {
+		ExpectationIndex index = expectationIndex;
+		if (index==null || index.size()!=expectedConnections.size())
+		{
+			index = new ExpectationIndex(expectedConnections);
+			expectationIndex = index;
+		}
+		return index;
+	}
+	
+	/**
+	 * Throws {@link AssertionError} if more calls were expected. The error lists expected and actual call count
+	 * of all connections that were not called enough times.
 	 */
 	public void verifyConnections() {
-		 if (activeConnection<expectedConnections.size())
-		 {
-			 throw new AssertionError("Further connection(s) expected");
-		 }
+		StringBuilder message = new StringBuilder();
+		for (int i = 0; i < expectedConnections.size(); i++) 
+		{
+			MockConnection expectedConnection = expectedConnections.get(i);
+			if (!expectedConnection.isSatisfied())
+			{
+				message.append("\n  connection ").append(i + 1).append(": ").append(expectedConnection.describeCallCount());
+			}
+		}
+		if (message.length()>0)
+		{
+			throw new AssertionError("Further connection(s) expected:" + message);
+		}
+	}
+	
+	/**
+	 * Returns number of requests processed by each expected connection, in the order of expectation.
+	 * @return
+	 */
+	public int[] getCallCounts() {
+		int[] result = new int[expectedConnections.size()];
+		for (int i = 0; i < result.length; i++) 
+		{
+			result[i] = expectedConnections.get(i).getCallCount();
+		}
+		return result;
+	}
+	
+	/**
+	 * Returns metrics of expected connections, in the order of expectation.
+	 * @return
+	 */
+	public ConversationMetrics getMetrics() {
+		ConversationMetrics result = new ConversationMetrics();
+		for (MockConnection expectedConnection : expectedConnections)
+		{
+			result.add(expectedConnection.describe(), expectedConnection.getMetrics());
+		}
+		return result;
+	}
+	
+	public boolean isOrdered() {
+		return ordered;
+	}
+	
+	/**
+	 * Connection that collects the request, applies request interceptors and then dispatches it to the expected connection.
+	 */
+	private class DispatchingMockConnection extends MockConnection {
+		
+		public DispatchingMockConnection() {
+			super(messageFactory, interceptors);
+		}
+		
+		@Override
+		public InputStream getInputStream() throws IOException {
+			try {
+				return createResponse(getUri(), crateRequest(), getRequestSize(), new ConnectionSelector() {
+					public MockConnection select(URI uri, WebServiceMessage request) throws IOException {
+						return MockConversation.this.select(uri, request);
+					}
+				});
+			} finally {
+				discardRequest();
+			}
+		}
 	}
 }
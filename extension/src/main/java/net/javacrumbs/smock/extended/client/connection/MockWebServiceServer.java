@@ -16,7 +16,6 @@
 package net.javacrumbs.smock.extended.client.connection;
 
 import org.springframework.ws.test.client.RequestMatcher;
-import org.springframework.ws.test.client.ResponseActions;
 
 /**
  * Common interface for mock servers.
@@ -24,7 +23,7 @@ import org.springframework.ws.test.client.ResponseActions;
  */
 public interface MockWebServiceServer {
 
-	ResponseActions expect(RequestMatcher requestMatcher);
+	RepeatableResponseActions expect(RequestMatcher requestMatcher);
 	
 	void verify();
 
@@ -0,0 +1,51 @@
+/**
+ * Copyright 2009-2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.javacrumbs.smock.extended.client.connection;
+
+import org.springframework.ws.test.client.RequestMatcher;
+import org.springframework.ws.test.client.ResponseActions;
+
+/**
+ * {@link ResponseActions} of an expectation that can be called more than once. By default an expectation
+ * has to be called exactly once. The count has to be set before the response is defined, for example
+ * <code>server.expect(message("request.xml")).times(3).andRespond(withMessage("response.xml"))</code>.
+ * @author Lukas Krecan
+ */
+public interface RepeatableResponseActions extends ResponseActions {
+	
+	RepeatableResponseActions andExpect(RequestMatcher requestMatcher);
+	
+	/**
+	 * Expectation has to be called exactly count times.
+	 * @param count
+	 * @return
+	 */
+	RepeatableResponseActions times(int count);
+	
+	/**
+	 * Expectation has to be called at least count times.
+	 * @param count
+	 * @return
+	 */
+	RepeatableResponseActions atLeast(int count);
+	
+	/**
+	 * Expectation can be called any number of times, including zero.
+	 * @return
+	 */
+	RepeatableResponseActions anyTimes();
+
+}
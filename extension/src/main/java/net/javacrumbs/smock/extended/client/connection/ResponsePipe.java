@@ -0,0 +1,253 @@
+/**
+ * Copyright 2009-2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.javacrumbs.smock.extended.client.connection;
+
+import static net.javacrumbs.smock.common.XmlUtil.transform;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.xml.transform.Source;
+import javax.xml.transform.stream.StreamResult;
+
+/**
+ * Stream of a response serialized by a background thread. The client can start reading the response 
+ * before it is completely serialized and the whole response is never held in memory in serialized form.
+ * Serialization errors are rethrown to the reader. If the reader closes the stream, or does not read 
+ * from a full pipe for {@link #ABANDON_TIMEOUT_MILLIS}, the pipe is considered abandoned and the serialization is stopped.
+ * @author Lukas Krecan
+ */
+class ResponsePipe extends InputStream {
+	
+	private static final int PIPE_SIZE = 64 * 1024;
+	
+	/**
+	 * How long the writer waits for the reader to free space in the pipe.
+	 */
+	static final long ABANDON_TIMEOUT_MILLIS = 60 * 1000;
+	
+	private static final ExecutorService writers = Executors.newCachedThreadPool(new WriterThreadFactory());
+	
+	private final byte[] buffer = new byte[PIPE_SIZE];
+	
+	/**
+	 * Position of the first unread byte.
+	 */
+	private int readPosition;
+	
+	/**
+	 * Number of unread bytes.
+	 */
+	private int count;
+	
+	private long lastReadTime = System.nanoTime();
+	
+	private boolean writerClosed;
+	
+	private boolean readerClosed;
+	
+	private Throwable failure;
+	
+	private ResponsePipe() {
+		
+	}
+	
+	/**
+	 * Starts serialization of the source in a background thread.
+	 * @param source
+	 * @return stream with serialized source
+	 */
+	static ResponsePipe serialize(final Source source) {
+		final ResponsePipe pipe = new ResponsePipe();
+		writers.execute(new Runnable() {
+			public void run() {
+				Throwable failure = null;
+				try
+				{
+					transform(source, new StreamResult(pipe.new PipeOutputStream()));
+				}
+				catch (Throwable e)
+				{
+					failure = e;
+				}
+				finally
+				{
+					pipe.closeWriter(failure);
+				}
+			}
+		});
+		return pipe;
+	}
+	
+	@Override
+	public synchronized int read() throws IOException {
+		if (!awaitData())
+		{
+			return -1;
+		}
+		int result = buffer[readPosition] & 0xff;
+		consumed(1);
+		return result;
+	}
+	
+	@Override
+	public synchronized int read(byte[] data, int offset, int length) throws IOException {
+		if (length==0)
+		{
+			return 0;
+		}
+		if (!awaitData())
+		{
+			return -1;
+		}
+		int result = Math.min(length, Math.min(count, buffer.length - readPosition));
+		System.arraycopy(buffer, readPosition, data, offset, result);
+		consumed(result);
+		return result;
+	}
+	
+	/**
+	 * Waits until there are data in the pipe.
+	 * @return false if the response has been completely read
+	 * @throws IOException if the pipe is closed or the serialization failed
+	 */
+	private boolean awaitData() throws IOException {
+		while (count==0 && !writerClosed && !readerClosed)
+		{
+			try {
+				wait();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new IOException("Interrupted when reading response");
+			}
+		}
+		if (readerClosed)
+		{
+			throw new IOException("Stream closed");
+		}
+		if (count==0)
+		{
+			checkFailure();
+			return false;
+		}
+		return true;
+	}
+	
+	private void consumed(int length) {
+		readPosition = (readPosition + length) % buffer.length;
+		count -= length;
+		lastReadTime = System.nanoTime();
+		notifyAll();
+	}
+	
+	@Override
+	public synchronized int available() throws IOException {
+		return count;
+	}
+	
+	/**
+	 * Closes the pipe. The writer stops serializing the response.
+	 */
+	@Override
+	public synchronized void close() throws IOException {
+		readerClosed = true;
+		notifyAll();
+	}
+	
+	/**
+	 * Writes data to the pipe. Waits while the pipe is full, fails if the reader closed the pipe or 
+	 * did not read anything for {@link #ABANDON_TIMEOUT_MILLIS}.
+	 * @param data
+	 * @param offset
+	 * @param length
+	 * @throws IOException
+	 */
+	private synchronized void write(byte[] data, int offset, int length) throws IOException {
+		int position = offset;
+		int remaining = length;
+		while (remaining > 0)
+		{
+			while (count==buffer.length && !readerClosed)
+			{
+				long waitMillis = ABANDON_TIMEOUT_MILLIS - TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - lastReadTime);
+				if (waitMillis <= 0)
+				{
+					throw new IOException("Response has not been read for " + ABANDON_TIMEOUT_MILLIS + " ms, pipe closed");
+				}
+				try {
+					wait(waitMillis);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw new IOException("Interrupted when writing response");
+				}
+			}
+			if (readerClosed)
+			{
+				throw new IOException("Pipe closed by reader");
+			}
+			int writePosition = (readPosition + count) % buffer.length;
+			int written = Math.min(remaining, Math.min(buffer.length - count, buffer.length - writePosition));
+			System.arraycopy(data, position, buffer, writePosition, written);
+			count += written;
+			position += written;
+			remaining -= written;
+			notifyAll();
+		}
+	}
+	
+	private synchronized void closeWriter(Throwable failure) {
+		this.failure = failure;
+		writerClosed = true;
+		notifyAll();
+	}
+
+	private void checkFailure() throws IOException {
+		if (failure!=null)
+		{
+			IOException exception = new IOException("Can not serialize response");
+			exception.initCause(failure);
+			throw exception;
+		}
+	}
+	
+	private class PipeOutputStream extends OutputStream {
+		@Override
+		public void write(int b) throws IOException {
+			write(new byte[]{(byte)b}, 0, 1);
+		}
+		
+		@Override
+		public void write(byte[] data, int offset, int length) throws IOException {
+			ResponsePipe.this.write(data, offset, length);
+		}
+	}
+	
+	private static class WriterThreadFactory implements ThreadFactory {
+		private final AtomicInteger counter = new AtomicInteger();
+		
+		public Thread newThread(Runnable runnable) {
+			Thread thread = new Thread(runnable, "smock-response-writer-" + counter.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		}
+	}
+}
@@ -0,0 +1,219 @@
+/**
+ * Copyright 2009-2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.javacrumbs.smock.extended.client.connection;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Stream that releases data of another stream after a delay and at limited speed. Data are marked readable by tasks 
+ * of a shared scheduler, the reader waits for them as when reading from a network. The scheduler never reads the source, 
+ * so a slow source does not delay other streams. The next release is scheduled only when the reader has consumed 
+ * the released data, so an abandoned stream does not keep any task scheduled.
+ * @author Lukas Krecan
+ */
+class ShapedInputStream extends InputStream {
+	
+	/**
+	 * Interval in which the data are released when throughput is limited.
+	 */
+	private static final long RELEASE_INTERVAL_MILLIS = 10;
+	
+	private static final long RELEASE_INTERVAL_NANOS = TimeUnit.MILLISECONDS.toNanos(RELEASE_INTERVAL_MILLIS);
+	
+	private static final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(new SchedulerThreadFactory());
+	
+	private final InputStream source;
+	
+	/**
+	 * Number of bytes released in one interval, -1 if the throughput is not limited.
+	 */
+	private final int chunkSize;
+	
+	/**
+	 * Number of bytes the reader can read.
+	 */
+	private long released;
+	
+	private boolean releasePending;
+	
+	private boolean firstReleaseDone;
+	
+	private long lastReleaseTime;
+	
+	private boolean closed;
+	
+	private Runnable releaseListener;
+	
+	private Executor releaseListenerExecutor;
+	
+	/**
+	 * @param source
+	 * @param delayMillis
+	 * @param bytesPerSecond maximal speed or {@link ShapedResponseCreator#UNLIMITED}
+	 */
+	ShapedInputStream(InputStream source, long delayMillis, long bytesPerSecond) {
+		this.source = source;
+		if (bytesPerSecond==ShapedResponseCreator.UNLIMITED)
+		{
+			chunkSize = -1;
+		}
+		else
+		{
+			chunkSize = (int)Math.max(1, Math.min(Integer.MAX_VALUE, bytesPerSecond * RELEASE_INTERVAL_MILLIS / 1000));
+		}
+		releasePending = true;
+		scheduler.schedule(new ReleaseTask(), delayMillis, TimeUnit.MILLISECONDS);
+	}
+
+	@Override
+	public int read() throws IOException {
+		awaitRelease();
+		int result = source.read();
+		if (result >= 0)
+		{
+			consume(1);
+		}
+		return result;
+	}
+	
+	@Override
+	public int read(byte[] buffer, int offset, int length) throws IOException {
+		if (length==0)
+		{
+			return 0;
+		}
+		long available = awaitRelease();
+		int count = source.read(buffer, offset, (int)Math.min(length, available));
+		if (count > 0)
+		{
+			consume(count);
+		}
+		return count;
+	}
+	
+	/**
+	 * Runs the task when the first data are released. If they are already released, the task is run by the calling thread,
+	 * otherwise it is passed to the executor.
+	 * @param task
+	 * @param executor
+	 */
+	void whenReleased(Runnable task, Executor executor) {
+		synchronized (this)
+		{
+			if (!firstReleaseDone)
+			{
+				releaseListener = task;
+				releaseListenerExecutor = executor;
+				return;
+			}
+		}
+		task.run();
+	}
+
+	/**
+	 * Waits until there are released data. Schedules next release if the released data have been consumed.
+	 * @return number of bytes that can be read
+	 * @throws IOException
+	 */
+	private synchronized long awaitRelease() throws IOException {
+		while (released==0 && !closed)
+		{
+			if (!releasePending)
+			{
+				long delay = lastReleaseTime + RELEASE_INTERVAL_NANOS - System.nanoTime();
+				scheduler.schedule(new ReleaseTask(), Math.max(0, delay), TimeUnit.NANOSECONDS);
+				releasePending = true;
+			}
+			try
+			{
+				wait();
+			}
+			catch (InterruptedException e)
+			{
+				Thread.currentThread().interrupt();
+				throw new IOException("Interrupted while waiting for response");
+			}
+		}
+		if (closed)
+		{
+			throw new IOException("Stream closed");
+		}
+		return released;
+	}
+	
+	private synchronized void consume(int count) {
+		if (chunkSize >= 0)
+		{
+			released -= count;
+		}
+	}
+	
+	@Override
+	public void close() throws IOException {
+		synchronized (this)
+		{
+			closed = true;
+			notifyAll();
+		}
+		source.close();
+	}
+	
+	/**
+	 * Marks next chunk, or the whole source if the throughput is not limited, as readable. 
+	 */
+	private class ReleaseTask implements Runnable {
+		public void run() {
+			Runnable listener = null;
+			Executor listenerExecutor = null;
+			synchronized (ShapedInputStream.this)
+			{
+				releasePending = false;
+				released = chunkSize < 0 ? Long.MAX_VALUE : chunkSize;
+				lastReleaseTime = System.nanoTime();
+				if (!firstReleaseDone)
+				{
+					firstReleaseDone = true;
+					listener = releaseListener;
+					listenerExecutor = releaseListenerExecutor;
+					releaseListener = null;
+					releaseListenerExecutor = null;
+				}
+				ShapedInputStream.this.notifyAll();
+			}
+			if (listener!=null)
+			{
+				listenerExecutor.execute(listener);
+			}
+		}
+	}
+	
+	private static class SchedulerThreadFactory implements ThreadFactory {
+		private final AtomicInteger counter = new AtomicInteger();
+		
+		public Thread newThread(Runnable runnable) {
+			Thread thread = new Thread(runnable, "smock-response-scheduler-" + counter.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		}
+	}
+}
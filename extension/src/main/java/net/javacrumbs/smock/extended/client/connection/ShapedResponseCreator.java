@@ -0,0 +1,133 @@
+/**
+ * Copyright 2009-2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.javacrumbs.smock.extended.client.connection;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.util.concurrent.Executor;
+
+import org.springframework.util.Assert;
+import org.springframework.ws.WebServiceMessage;
+import org.springframework.ws.WebServiceMessageFactory;
+import org.springframework.ws.test.client.ResponseCreator;
+
+/**
+ * Decorates {@link ResponseCreator} so the response is delivered like by a real server - after a delay and at limited speed.
+ * The response is created by the decorated creator, {@link MockConnection} then releases it to the client. The data are
+ * released by a scheduler, the client waits for them as when reading from a network. When used outside of {@link MockConnection}, 
+ * the response is not shaped.
+ * <pre>
+ * server.expect(message("request.xml")).andRespond(withLatency(fixed(100), withMessage("response.xml")).withThroughputLimit(10000));
+ * </pre>
+ * @author Lukas Krecan
+ */
+public class ShapedResponseCreator implements ResponseCreator {
+	
+	/**
+	 * Throughput value meaning unlimited speed.
+	 */
+	public static final long UNLIMITED = -1;
+	
+	private static final Latency NO_LATENCY = Latency.fixed(0);
+	
+	private final ResponseCreator responseCreator;
+	
+	private final Latency latency;
+	
+	private final long bytesPerSecond;
+
+	public ShapedResponseCreator(ResponseCreator responseCreator, Latency latency, long bytesPerSecond) {
+		Assert.notNull(responseCreator, "'responseCreator' can not be null");
+		Assert.notNull(latency, "'latency' can not be null");
+		Assert.isTrue(bytesPerSecond > 0 || bytesPerSecond==UNLIMITED, "'bytesPerSecond' has to be positive");
+		this.responseCreator = responseCreator;
+		this.latency = latency;
+		this.bytesPerSecond = bytesPerSecond;
+	}
+	
+	/**
+	 * Delays responses created by responseCreator.
+	 * @param latency
+	 * @param responseCreator
+	 * @return
+	 */
+	public static ShapedResponseCreator withLatency(Latency latency, ResponseCreator responseCreator) {
+		return new ShapedResponseCreator(responseCreator, latency, UNLIMITED);
+	}
+	
+	/**
+	 * Sends responses created by responseCreator at limited speed.
+	 * @param bytesPerSecond
+	 * @param responseCreator
+	 * @return
+	 */
+	public static ShapedResponseCreator withThroughputLimit(long bytesPerSecond, ResponseCreator responseCreator) {
+		return new ShapedResponseCreator(responseCreator, NO_LATENCY, bytesPerSecond);
+	}
+	
+	public ShapedResponseCreator withLatency(Latency latency) {
+		return new ShapedResponseCreator(responseCreator, latency, bytesPerSecond);
+	}
+	
+	public ShapedResponseCreator withThroughputLimit(long bytesPerSecond) {
+		return new ShapedResponseCreator(responseCreator, latency, bytesPerSecond);
+	}
+
+	public WebServiceMessage createResponse(URI uri, WebServiceMessage request, WebServiceMessageFactory messageFactory) throws IOException {
+		return responseCreator.createResponse(uri, request, messageFactory);
+	}
+	
+	/**
+	 * Returns stream that releases the serialized response according to latency and throughput limit. 
+	 * @param response
+	 * @return
+	 */
+	InputStream shape(InputStream response) {
+		return new ShapedInputStream(response, latency.nextDelay(), bytesPerSecond);
+	}
+	
+	/**
+	 * Runs the task when the first data of the response are released, so a server does not have to block a thread 
+	 * while the response is delayed. The task is run by the calling thread if the response is not shaped or its 
+	 * data are already released, otherwise it is passed to the executor.
+	 * @param response stream returned by {@link MockConnection#getInputStream()}
+	 * @param task
+	 * @param executor
+	 */
+	public static void whenReleased(InputStream response, Runnable task, Executor executor) {
+		if (response instanceof ShapedInputStream)
+		{
+			((ShapedInputStream)response).whenReleased(task, executor);
+		}
+		else
+		{
+			task.run();
+		}
+	}
+	
+	public ResponseCreator getResponseCreator() {
+		return responseCreator;
+	}
+
+	public Latency getLatency() {
+		return latency;
+	}
+
+	public long getBytesPerSecond() {
+		return bytesPerSecond;
+	}
+}
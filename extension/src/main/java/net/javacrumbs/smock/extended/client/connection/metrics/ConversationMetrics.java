@@ -0,0 +1,146 @@
+/**
+ * Copyright 2009-2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.javacrumbs.smock.extended.client.connection.metrics;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import net.javacrumbs.smock.extended.metrics.Histogram;
+
+/**
+ * Metrics of all expectations of a mock server. Can be exported as JSON, for example at the end of a test run,
+ * to find out which expectations and matchers take most of the time. Times are in nanoseconds.
+ * @author Lukas Krecan
+ */
+public class ConversationMetrics {
+	
+	private static final double[] PERCENTILES = {50, 90, 99, 99.9};
+	
+	private static final String[] PERCENTILE_NAMES = {"p50", "p90", "p99", "p999"};
+	
+	private final List<String> descriptions = new ArrayList<String>();
+	
+	private final List<ExpectationMetrics> expectations = new ArrayList<ExpectationMetrics>();
+	
+	/**
+	 * Adds metrics of an expectation.
+	 * @param description
+	 * @param metrics
+	 */
+	public void add(String description, ExpectationMetrics metrics) {
+		descriptions.add(description);
+		expectations.add(metrics);
+	}
+	
+	/**
+	 * Returns metrics of expectations in the order of expectation.
+	 * @return
+	 */
+	public List<ExpectationMetrics> getExpectations() {
+		return Collections.unmodifiableList(expectations);
+	}
+	
+	public String getDescription(int index) {
+		return descriptions.get(index);
+	}
+	
+	/**
+	 * Writes the metrics as JSON.
+	 * @param writer
+	 * @throws IOException
+	 */
+	public void writeJson(Writer writer) throws IOException {
+		writer.write(toJson());
+	}
+	
+	/**
+	 * Returns the metrics as JSON.
+	 * @return
+	 */
+	public String toJson() {
+		StringBuilder json = new StringBuilder("{\"expectations\":[");
+		for (int i=0; i<expectations.size(); i++)
+		{
+			ExpectationMetrics metrics = expectations.get(i);
+			if (i > 0)
+			{
+				json.append(',');
+			}
+			json.append("{\"index\":").append(i);
+			json.append(",\"description\":");
+			appendString(json, descriptions.get(i));
+			json.append(",\"responses\":").append(metrics.getResponses());
+			json.append(",\"matchAttempts\":").append(metrics.getMatchAttempts());
+			json.append(",\"matchFailures\":").append(metrics.getMatchFailures());
+			json.append(",\"matchTime\":").append(metrics.getMatchTime());
+			json.append(",\"responseCreationTime\":").append(metrics.getResponseCreationTime());
+			json.append(",\"bytesIn\":").append(metrics.getBytesIn());
+			json.append(",\"bytesOut\":").append(metrics.getBytesOut());
+			json.append(",\"matchTimeHistogram\":");
+			appendHistogram(json, metrics.getMatchTimeHistogram());
+			json.append(",\"responseCreationTimeHistogram\":");
+			appendHistogram(json, metrics.getResponseCreationTimeHistogram());
+			json.append('}');
+		}
+		return json.append("]}").toString();
+	}
+
+	private void appendHistogram(StringBuilder json, Histogram histogram) {
+		json.append("{\"count\":").append(histogram.getCount());
+		json.append(",\"min\":").append(histogram.getMin());
+		json.append(",\"max\":").append(histogram.getMax());
+		json.append(",\"mean\":").append(Math.round(histogram.getMean()));
+		for (int i=0; i<PERCENTILES.length; i++)
+		{
+			json.append(",\"").append(PERCENTILE_NAMES[i]).append("\":").append(histogram.getValueAtPercentile(PERCENTILES[i]));
+		}
+		json.append('}');
+	}
+	
+	private void appendString(StringBuilder json, String value) {
+		json.append('"');
+		for (int i=0; i<value.length(); i++)
+		{
+			char c = value.charAt(i);
+			switch (c)
+			{
+				case '"': json.append("\\\""); break;
+				case '\\': json.append("\\\\"); break;
+				case '\n': json.append("\\n"); break;
+				case '\r': json.append("\\r"); break;
+				case '\t': json.append("\\t"); break;
+				default:
+					if (c < 0x20)
+					{
+						json.append(String.format("\\u%04x", (int)c));
+					}
+					else
+					{
+						json.append(c);
+					}
+			}
+		}
+		json.append('"');
+	}
+	
+	@Override
+	public String toString() {
+		return toJson();
+	}
+}
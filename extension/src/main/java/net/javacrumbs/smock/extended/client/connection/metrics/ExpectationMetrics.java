@@ -0,0 +1,118 @@
+/**
+ * Copyright 2009-2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.javacrumbs.smock.extended.client.connection.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import net.javacrumbs.smock.extended.metrics.Histogram;
+
+/**
+ * Metrics of one expected connection. Times are in nanoseconds. Updated concurrently by the threads sending requests.
+ * @author Lukas Krecan
+ */
+public class ExpectationMetrics {
+	
+	private final AtomicLong matchAttempts = new AtomicLong();
+	
+	private final AtomicLong matchFailures = new AtomicLong();
+	
+	private final AtomicLong responses = new AtomicLong();
+	
+	private final AtomicLong bytesIn = new AtomicLong();
+	
+	private final AtomicLong bytesOut = new AtomicLong();
+	
+	private final Histogram matchTime = new Histogram();
+	
+	private final Histogram responseCreationTime = new Histogram();
+	
+	/**
+	 * Records application of request matchers on a request.
+	 * @param nanos
+	 * @param matched
+	 */
+	public void recordMatch(long nanos, boolean matched) {
+		matchAttempts.incrementAndGet();
+		if (!matched)
+		{
+			matchFailures.incrementAndGet();
+		}
+		matchTime.record(nanos);
+	}
+	
+	/**
+	 * Records creation of a response.
+	 * @param nanos time of response creation and serialization
+	 * @param requestSize size of the request in bytes
+	 */
+	public void recordResponse(long nanos, long requestSize) {
+		responses.incrementAndGet();
+		bytesIn.addAndGet(requestSize);
+		responseCreationTime.record(nanos);
+	}
+	
+	/**
+	 * Records bytes of a response read by the client.
+	 * @param count
+	 */
+	public void recordBytesOut(long count) {
+		bytesOut.addAndGet(count);
+	}
+
+	public long getMatchAttempts() {
+		return matchAttempts.get();
+	}
+
+	public long getMatchFailures() {
+		return matchFailures.get();
+	}
+
+	public long getResponses() {
+		return responses.get();
+	}
+
+	public long getBytesIn() {
+		return bytesIn.get();
+	}
+
+	public long getBytesOut() {
+		return bytesOut.get();
+	}
+	
+	/**
+	 * Returns total time spent by request matchers.
+	 * @return
+	 */
+	public long getMatchTime() {
+		return matchTime.getSum();
+	}
+	
+	/**
+	 * Returns total time spent by response creation.
+	 * @return
+	 */
+	public long getResponseCreationTime() {
+		return responseCreationTime.getSum();
+	}
+
+	public Histogram getMatchTimeHistogram() {
+		return matchTime;
+	}
+
+	public Histogram getResponseCreationTimeHistogram() {
+		return responseCreationTime;
+	}
+}
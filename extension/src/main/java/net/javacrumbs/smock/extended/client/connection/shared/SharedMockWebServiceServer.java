@@ -0,0 +1,125 @@
+/**
+ * Copyright 2009-2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.javacrumbs.smock.extended.client.connection.shared;
+
+import net.javacrumbs.smock.extended.client.connection.MockConnection;
+import net.javacrumbs.smock.extended.client.connection.MockConversation;
+import net.javacrumbs.smock.extended.client.connection.MockWebServiceServer;
+import net.javacrumbs.smock.extended.client.connection.RepeatableResponseActions;
+import net.javacrumbs.smock.extended.client.connection.metrics.ConversationMetrics;
+import net.javacrumbs.smock.extended.client.connection.metrics.MetricsAware;
+import net.javacrumbs.smock.extended.client.connection.threadlocal.ThreadLocalMockWebServiceServer;
+
+import org.springframework.util.Assert;
+import org.springframework.ws.WebServiceMessageFactory;
+import org.springframework.ws.server.EndpointInterceptor;
+import org.springframework.ws.test.client.RequestMatcher;
+
+/**
+ * MockWebServiceServer whose mock conversation is shared by all threads, including pooled threads of executors 
+ * created before the server. The server is registered globally when created and unregistered by {@link #close()}, 
+ * so only one shared server can be active at a time. Creating a server while a server created by another 
+ * running thread is active fails, since tests running in parallel would use each other's conversation. 
+ * Active server created by the same thread, e.g. by a previous test that did not close it, is replaced.
+ * Conversation bound to a thread by {@link ThreadLocalMockWebServiceServer} takes precedence, so the constructor 
+ * removes the conversation bound to the current thread.
+ * @author Lukas Krecan
+ */
+public class SharedMockWebServiceServer implements MockWebServiceServer, MetricsAware {
+	private static volatile SharedMockWebServiceServer activeServer;
+	
+	private final MockConversation mockConversation;
+	
+	private final Thread owner;
+	
+	/**
+	 * @param messageFactory
+	 * @param interceptors
+	 * @param ordered if false, requests are matched with expectations regardless of the order. See {@link MockConversation}.
+	 * @throws IllegalStateException if a server created by another thread is active
+	 */
+	public SharedMockWebServiceServer(WebServiceMessageFactory messageFactory, EndpointInterceptor[] interceptors, boolean ordered) {
+		Assert.notNull(messageFactory, "messageFactory can not be null");
+		mockConversation = new MockConversation(messageFactory, interceptors, ordered);
+		owner = Thread.currentThread();
+		register(this);
+		ThreadLocalMockWebServiceServer.removeMockConversation();
+	}
+
+	public RepeatableResponseActions expect(RequestMatcher requestMatcher)
+	{
+		return mockConversation.expect(requestMatcher);
+	}
+	
+	public void verify() {
+		mockConversation.verifyConnections();
+	}
+	
+	public ConversationMetrics getMetrics() {
+		return mockConversation.getMetrics();
+	}
+	
+	/**
+	 * Unregisters the server, so other server can be created.
+	 */
+	public void close() {
+		unregister(this);
+	}
+	
+	private static synchronized void register(SharedMockWebServiceServer server) {
+		SharedMockWebServiceServer active = activeServer;
+		if (active!=null && active.owner!=server.owner && active.owner.isAlive())
+		{
+			throw new IllegalStateException("Shared server created by thread \""+active.owner.getName()+"\" is active, it has to be closed first.");
+		}
+		activeServer = server;
+	}
+	
+	private static synchronized void unregister(SharedMockWebServiceServer server) {
+		if (activeServer==server)
+		{
+			activeServer = null;
+		}
+	}
+	
+	/**
+	 * Returns active connection of the conversation bound to the current thread by {@link ThreadLocalMockWebServiceServer}
+	 * or, if there is none, of the active shared conversation.
+	 * @return
+	 */
+	public static MockConnection getActiveConnection()
+	{
+		MockConversation conversation = ThreadLocalMockWebServiceServer.getMockConversation();
+		if (conversation==null)
+		{
+			conversation = getMockConversation();
+		}
+		if (conversation==null)
+		{
+			throw new AssertionError("No further connections expected");
+		}
+		return conversation.getActiveConnection();
+	}
+	
+	/**
+	 * Returns conversation of the active shared server or null.
+	 * @return
+	 */
+	public static MockConversation getMockConversation() {
+		SharedMockWebServiceServer server = activeServer;
+		return server!=null ? server.mockConversation : null;
+	}
+}
@@ -18,39 +18,71 @@ package net.javacrumbs.smock.extended.client.connection.threadlocal;
 import net.javacrumbs.smock.extended.client.connection.MockConnection;
 import net.javacrumbs.smock.extended.client.connection.MockConversation;
 import net.javacrumbs.smock.extended.client.connection.MockWebServiceServer;
+import net.javacrumbs.smock.extended.client.connection.RepeatableResponseActions;
+import net.javacrumbs.smock.extended.client.connection.metrics.ConversationMetrics;
+import net.javacrumbs.smock.extended.client.connection.metrics.MetricsAware;
 
 import org.springframework.util.Assert;
 import org.springframework.ws.WebServiceMessageFactory;
 import org.springframework.ws.server.EndpointInterceptor;
 import org.springframework.ws.test.client.RequestMatcher;
-import org.springframework.ws.test.client.ResponseActions;
 
 /**
  * MockWebServiceServer that stores mock conversation in {@link ThreadLocal}.
  * @author Lukas Krecan
  */
-public class ThreadLocalMockWebServiceServer implements MockWebServiceServer{
+public class ThreadLocalMockWebServiceServer implements MockWebServiceServer, MetricsAware{
 	private static final ThreadLocal<MockConversation> mockConversation = new ThreadLocal<MockConversation>();
 	
 	public ThreadLocalMockWebServiceServer(WebServiceMessageFactory messageFactory, EndpointInterceptor[] interceptors) {
+		this(messageFactory, interceptors, true);
+	}
+	
+	/**
+	 * @param messageFactory
+	 * @param interceptors
+	 * @param ordered if false, requests are matched with expectations regardless of the order. See {@link MockConversation}.
+	 */
+	public ThreadLocalMockWebServiceServer(WebServiceMessageFactory messageFactory, EndpointInterceptor[] interceptors, boolean ordered) {
 		Assert.notNull(messageFactory, "messageFactory can not be null");
-		mockConversation.set(new MockConversation(messageFactory, interceptors));
+		mockConversation.set(new MockConversation(messageFactory, interceptors, ordered));
 	}
 
-	public ResponseActions expect(RequestMatcher requestMatcher)
+	public RepeatableResponseActions expect(RequestMatcher requestMatcher)
 	{
 		return getMockConversation().expect(requestMatcher);
 	}
 	
 	public static MockConnection getActiveConnection()
 	{
-		return getMockConversation().getActiveConnection();
+		MockConversation conversation = getMockConversation();
+		if (conversation==null)
+		{
+			throw new AssertionError("No further connections expected");
+		}
+		return conversation.getActiveConnection();
 	}
 	
+	/**
+	 * Returns conversation bound to the current thread or null.
+	 * @return
+	 */
 	public static MockConversation getMockConversation() {
 		return mockConversation.get();
 	}
+	
+	/**
+	 * Removes conversation bound to the current thread.
+	 */
+	public static void removeMockConversation() {
+		mockConversation.remove();
+	}
+	
 	public void verify() {
 		getMockConversation().verifyConnections();
 	}
+	
+	public ConversationMetrics getMetrics() {
+		return getMockConversation().getMetrics();
+	}
 }
@@ -0,0 +1,151 @@
+/**
+ * Copyright 2009-2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.javacrumbs.smock.extended.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Thread-safe histogram of non-negative values with bounded relative error. Values are counted in buckets whose 
+ * width grows with the value (in the way of HdrHistogram), so percentiles are precise to about 1.6%. Recording 
+ * does not allocate nor lock.
+ * @author Lukas Krecan
+ */
+public class Histogram {
+	
+	/**
+	 * Number of buckets per power of two.
+	 */
+	private static final int SUB_BUCKET_COUNT = 64;
+	
+	private static final int SUB_BUCKET_BITS = 6;
+	
+	/**
+	 * Values lower than this are counted precisely.
+	 */
+	private static final int LINEAR_LIMIT = 2 * SUB_BUCKET_COUNT;
+	
+	private static final int BUCKET_COUNT = (Long.SIZE - SUB_BUCKET_BITS) * SUB_BUCKET_COUNT + LINEAR_LIMIT;
+	
+	private final AtomicLongArray counts = new AtomicLongArray(BUCKET_COUNT);
+	
+	private final AtomicLong count = new AtomicLong();
+	
+	private final AtomicLong sum = new AtomicLong();
+	
+	private final AtomicLong min = new AtomicLong(Long.MAX_VALUE);
+	
+	private final AtomicLong max = new AtomicLong(Long.MIN_VALUE);
+	
+	/**
+	 * Records a value.
+	 * @param value non-negative value, negative values are recorded as 0
+	 */
+	public void record(long value) {
+		long recorded = Math.max(value, 0);
+		counts.incrementAndGet(getBucketIndex(recorded));
+		count.incrementAndGet();
+		sum.addAndGet(recorded);
+		updateMin(recorded);
+		updateMax(recorded);
+	}
+
+	private void updateMin(long value) {
+		long current;
+		while (value < (current = min.get()) && !min.compareAndSet(current, value))
+		{
+			//retry
+		}
+	}
+
+	private void updateMax(long value) {
+		long current;
+		while (value > (current = max.get()) && !max.compareAndSet(current, value))
+		{
+			//retry
+		}
+	}
+	
+	static int getBucketIndex(long value) {
+		if (value < LINEAR_LIMIT)
+		{
+			return (int)value;
+		}
+		int magnitude = Long.SIZE - 1 - Long.numberOfLeadingZeros(value);
+		int shift = magnitude - SUB_BUCKET_BITS;
+		return shift * SUB_BUCKET_COUNT + (int)(value >>> shift);
+	}
+	
+	/**
+	 * Returns value in the middle of the bucket.
+	 * @param index
+	 * @return
+	 */
+	static long getBucketValue(int index) {
+		if (index < LINEAR_LIMIT)
+		{
+			return index;
+		}
+		int shift = index / SUB_BUCKET_COUNT - 1;
+		long subBucket = index % SUB_BUCKET_COUNT + SUB_BUCKET_COUNT;
+		return (subBucket << shift) + ((1L << shift) >>> 1);
+	}
+	
+	/**
+	 * Returns value below which given percentage of recorded values falls. Returns 0 if there are no values.
+	 * @param percentile value from 0 to 100
+	 * @return
+	 */
+	public long getValueAtPercentile(double percentile) {
+		long total = count.get();
+		if (total==0)
+		{
+			return 0;
+		}
+		long target = Math.max(1, (long)Math.ceil(percentile / 100 * total));
+		long cumulative = 0;
+		for (int i=0; i<BUCKET_COUNT; i++)
+		{
+			cumulative += counts.get(i);
+			if (cumulative >= target)
+			{
+				return Math.min(Math.max(getBucketValue(i), getMin()), getMax());
+			}
+		}
+		return getMax();
+	}
+	
+	public long getCount() {
+		return count.get();
+	}
+	
+	public long getSum() {
+		return sum.get();
+	}
+	
+	public long getMin() {
+		return count.get()==0 ? 0 : min.get();
+	}
+	
+	public long getMax() {
+		return count.get()==0 ? 0 : max.get();
+	}
+	
+	public double getMean() {
+		long total = count.get();
+		return total==0 ? 0 : (double)sum.get() / total;
+	}
+}
@@ -0,0 +1,155 @@
+/**
+ * Copyright 2009-2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.javacrumbs.smock.extended.server;
+
+import java.lang.reflect.Method;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.springframework.util.Assert;
+import org.springframework.ws.test.server.RequestCreator;
+import org.springframework.ws.test.server.ResponseActions;
+
+/**
+ * Sends requests from a bounded number of concurrent workers and collects responses, errors and latencies.
+ * Errors do not stop the run. The first request is sent by the calling thread before the workers are started, 
+ * so that lazily initialized state is not created concurrently (JDK SAAJ parser pool is not initialized in a thread-safe way).
+ * This warm-up request is not included in elapsed time and throughput.
+ * @author Lukas Krecan
+ */
+public class LoadDriver {
+	
+	/**
+	 * Sends single request. Has to be thread-safe.
+	 */
+	public interface RequestSender {
+		ResponseActions sendRequest(RequestCreator requestCreator);
+	}
+	
+	private LoadDriver() {
+		
+	}
+	
+	/**
+	 * Sends requests from given number of concurrent threads. Uses executor created by {@link #createExecutor(int)}.
+	 * @param requestCreators
+	 * @param concurrency
+	 * @param sender
+	 * @return
+	 */
+	public static LoadTestResult sendRequests(List<? extends RequestCreator> requestCreators, int concurrency, RequestSender sender) {
+		Assert.isTrue(concurrency > 0, "'concurrency' has to be positive");
+		ExecutorService executor = createExecutor(concurrency);
+		try {
+			return sendRequests(requestCreators, concurrency, executor, sender);
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+	
+	/**
+	 * Sends requests using given executor. At most <code>concurrency</code> requests are sent at the same time.
+	 * The executor is not shut down.
+	 * @param requestCreators
+	 * @param concurrency
+	 * @param executor
+	 * @param sender
+	 * @return
+	 */
+	public static LoadTestResult sendRequests(final List<? extends RequestCreator> requestCreators, int concurrency, Executor executor, final RequestSender sender) {
+		Assert.notNull(requestCreators, "'requestCreators' must not be null");
+		Assert.notNull(executor, "'executor' must not be null");
+		Assert.notNull(sender, "'sender' must not be null");
+		Assert.isTrue(concurrency > 0, "'concurrency' has to be positive");
+		final LoadTestResult result = new LoadTestResult(requestCreators.size());
+		if (requestCreators.isEmpty())
+		{
+			return result;
+		}
+		//warm-up request is not part of the measured interval
+		sendRequest(0, requestCreators, sender, result);
+		long start = System.nanoTime();
+		final AtomicInteger nextRequest = new AtomicInteger(1);
+		int workers = Math.min(concurrency, requestCreators.size() - 1);
+		final CountDownLatch finished = new CountDownLatch(workers);
+		for (int i=0; i<workers; i++)
+		{
+			executor.execute(new Runnable() {
+				public void run() {
+					try {
+						int index;
+						while ((index = nextRequest.getAndIncrement()) < requestCreators.size())
+						{
+							sendRequest(index, requestCreators, sender, result);
+						}
+					} finally {
+						finished.countDown();
+					}
+				}
+			});
+		}
+		try {
+			finished.await();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted when waiting for requests", e);
+		}
+		result.setMeasuredInterval(System.nanoTime() - start, requestCreators.size() - 1);
+		return result;
+	}
+	
+	private static void sendRequest(int index, List<? extends RequestCreator> requestCreators, RequestSender sender, LoadTestResult result) {
+		long requestStart = System.nanoTime();
+		try {
+			ResponseActions response = sender.sendRequest(requestCreators.get(index));
+			result.recordResponse(index, response, System.nanoTime() - requestStart);
+		} catch (RuntimeException e) {
+			result.recordError(index, e, System.nanoTime() - requestStart);
+		} catch (AssertionError e) {
+			result.recordError(index, e, System.nanoTime() - requestStart);
+		}
+	}
+	
+	/**
+	 * Creates executor that uses virtual threads if the JVM supports them, otherwise a pool of daemon threads.
+	 * @param concurrency
+	 * @return
+	 */
+	public static ExecutorService createExecutor(int concurrency) {
+		try {
+			Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+			return (ExecutorService)factory.invoke(null);
+		} catch (Exception e) {
+			//virtual threads not supported
+			return Executors.newFixedThreadPool(concurrency, new LoadThreadFactory());
+		}
+	}
+	
+	private static class LoadThreadFactory implements ThreadFactory {
+		private final AtomicInteger counter = new AtomicInteger();
+		
+		public Thread newThread(Runnable runnable) {
+			Thread thread = new Thread(runnable, "smock-load-" + counter.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		}
+	}
+}
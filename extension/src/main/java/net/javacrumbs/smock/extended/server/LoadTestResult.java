@@ -0,0 +1,162 @@
+/**
+ * Copyright 2009-2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.javacrumbs.smock.extended.server;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import net.javacrumbs.smock.extended.metrics.Histogram;
+
+import org.springframework.ws.test.server.ResponseActions;
+
+/**
+ * Result of requests sent by {@link LoadDriver}. 
+ * Responses are kept in the order of request creators, latencies are measured in nanoseconds.
+ * @author Lukas Krecan
+ */
+public class LoadTestResult {
+	
+	private final AtomicReferenceArray<ResponseActions> responses;
+	
+	private final AtomicReferenceArray<Throwable> errors;
+	
+	private final Histogram latency = new Histogram();
+	
+	private volatile long elapsedNanos;
+	
+	private volatile int measuredRequestCount;
+	
+	LoadTestResult(int requestCount) {
+		responses = new AtomicReferenceArray<ResponseActions>(requestCount);
+		errors = new AtomicReferenceArray<Throwable>(requestCount);
+	}
+	
+	void recordResponse(int index, ResponseActions response, long nanos) {
+		responses.set(index, response);
+		latency.record(nanos);
+	}
+	
+	void recordError(int index, Throwable error, long nanos) {
+		errors.set(index, error);
+		latency.record(nanos);
+	}
+	
+	void setMeasuredInterval(long elapsedNanos, int measuredRequestCount) {
+		this.elapsedNanos = elapsedNanos;
+		this.measuredRequestCount = measuredRequestCount;
+	}
+	
+	/**
+	 * Returns response actions in the order of request creators. Failed requests have null response.
+	 * @return
+	 */
+	public List<ResponseActions> getResponses() {
+		List<ResponseActions> result = new ArrayList<ResponseActions>(responses.length());
+		for (int i=0; i<responses.length(); i++)
+		{
+			result.add(responses.get(i));
+		}
+		return Collections.unmodifiableList(result);
+	}
+	
+	/**
+	 * Returns response actions of the request with given index.
+	 * @param index
+	 * @return
+	 * @throws IllegalStateException if the request failed
+	 */
+	public ResponseActions getResponse(int index) {
+		Throwable error = errors.get(index);
+		if (error!=null)
+		{
+			throw new IllegalStateException("Request "+index+" failed", error);
+		}
+		return responses.get(index);
+	}
+	
+	/**
+	 * Returns errors thrown when sending requests.
+	 * @return
+	 */
+	public List<Throwable> getErrors() {
+		List<Throwable> result = new ArrayList<Throwable>();
+		for (int i=0; i<errors.length(); i++)
+		{
+			if (errors.get(i)!=null)
+			{
+				result.add(errors.get(i));
+			}
+		}
+		return result;
+	}
+	
+	public int getRequestCount() {
+		return responses.length();
+	}
+	
+	public int getErrorCount() {
+		return getErrors().size();
+	}
+	
+	/**
+	 * Returns number of requests sent in the measured interval, i.e. without the warm-up request.
+	 * @return
+	 */
+	public int getMeasuredRequestCount() {
+		return measuredRequestCount;
+	}
+	
+	/**
+	 * Returns wall clock time of the run without the warm-up request in nanoseconds.
+	 * @return
+	 */
+	public long getElapsedNanos() {
+		return elapsedNanos;
+	}
+	
+	/**
+	 * Returns number of requests processed per second in the measured interval.
+	 * @return
+	 */
+	public double getThroughput() {
+		return elapsedNanos > 0 ? measuredRequestCount * 1e9 / elapsedNanos : 0;
+	}
+	
+	/**
+	 * Returns request latency at given percentile in nanoseconds.
+	 * @param percentile from 0 to 100
+	 * @return
+	 */
+	public long getLatencyAtPercentile(double percentile) {
+		return latency.getValueAtPercentile(percentile);
+	}
+	
+	/**
+	 * Returns histogram of request latencies in nanoseconds.
+	 * @return
+	 */
+	public Histogram getLatency() {
+		return latency;
+	}
+	
+	@Override
+	public String toString() {
+		return "LoadTestResult[requests=" + getRequestCount() + ", errors=" + getErrorCount() + ", throughput=" + Math.round(getThroughput()) 
+			+ "/s, p50=" + getLatencyAtPercentile(50) + "ns, p99=" + getLatencyAtPercentile(99) + "ns, max=" + latency.getMax() + "ns]";
+	}
+}
@@ -15,32 +15,54 @@
  */
 package net.javacrumbs.smock.common.groovy;
 
-import static net.javacrumbs.smock.common.XmlUtil.loadDocument;
+import static net.javacrumbs.smock.common.XmlUtil.getRootElementName;
 import static net.javacrumbs.smock.common.XmlUtil.serialize;
+import static net.javacrumbs.smock.common.XmlUtil.transform;
 import groovy.text.SimpleTemplateEngine;
+import groovy.text.Template;
 import groovy.text.TemplateEngine;
 import groovy.util.XmlSlurper;
+import groovy.util.slurpersupport.GPathResult;
 
-import java.io.StringReader;
 import java.util.HashMap;
 import java.util.Map;
 
+import javax.xml.namespace.QName;
 import javax.xml.transform.Source;
+import javax.xml.transform.dom.DOMSource;
+import javax.xml.transform.sax.SAXResult;
+import javax.xml.transform.stax.StAXSource;
 
+import net.javacrumbs.smock.common.LruCache;
 import net.javacrumbs.smock.common.TemplateProcessor;
 
 import org.springframework.xml.transform.StringSource;
-import org.w3c.dom.Document;
 
 /**
  * Groovy based template engine.
  * @author Lukas Krecan
  */
 public class GroovyTemplateProcessor implements TemplateProcessor {
+	
+	private static final int DEFAULT_CACHE_SIZE = 256;
+	
 	private final TemplateEngine templateEngine;
 	
+	private final LruCache<String, Template> templateCache;
+	
+	private volatile boolean bindInputOnlyIfReferenced = false;
+	
 	public GroovyTemplateProcessor(TemplateEngine templateEngine) {
+		this(templateEngine, DEFAULT_CACHE_SIZE);
+	}
+	
+	/**
+	 * @param templateEngine
+	 * @param cacheSize maximal number of compiled templates kept in the cache.
+	 */
+	public GroovyTemplateProcessor(TemplateEngine templateEngine, int cacheSize) {
 		this.templateEngine = templateEngine;
+		this.templateCache = new LruCache<String, Template>(cacheSize);
 	}
 
 	public GroovyTemplateProcessor() {
@@ -51,17 +73,84 @@ public class GroovyTemplateProcessor implements TemplateProcessor {
 		try {
 			String templateText = serialize(template);
 			HashMap<String, Object>  binding = new HashMap<String, Object> (parameters);
-			if (input!=null)
+			if (input!=null && isInputBound(input, templateText))
 			{
-				Document inputDocument = loadDocument(input);
-				binding.put(inputDocument.getFirstChild().getLocalName(), new XmlSlurper().parse(new StringReader(serialize(inputDocument))));
+				GPathResult inputDocument = parse(input);
+				binding.put(inputDocument.name(), inputDocument);
 			}
 			binding.put("IGNORE", "${IGNORE}");
-			return new StringSource(templateEngine.createTemplate(templateText).make(binding).toString());
+			return new StringSource(getTemplate(templateText).make(binding).toString());
 		} catch (Exception e) {
 			throw new IllegalArgumentException("Can not process Groovy template.",e);
 		}
 	}
 
+	/**
+	 * Parses the input by {@link XmlSlurper} directly from the source events, without serializing it.
+	 * @param input
+	 * @return
+	 * @throws Exception
+	 */
+	private GPathResult parse(Source input) throws Exception {
+		XmlSlurper slurper = new XmlSlurper();
+		transform(input, new SAXResult(slurper));
+		return slurper.getDocument();
+	}
 
+	/**
+	 * Returns false if the input has no root element or if the template does not refer to it and {@link #setBindInputOnlyIfReferenced(boolean)}
+	 * is set. The root element is read only if it can be done without consuming the input, other inputs are always bound.
+	 * @param input
+	 * @param templateText
+	 * @return
+	 */
+	private boolean isInputBound(Source input, String templateText) {
+		if (input instanceof DOMSource || input instanceof StAXSource || input instanceof StringSource)
+		{
+			QName rootName = getRootElementName(input);
+			if (rootName==null)
+			{
+				return false;
+			}
+			return !bindInputOnlyIfReferenced || templateText.contains(rootName.getLocalPart());
+		}
+		else
+		{
+			return true;
+		}
+	}
+
+	/**
+	 * Returns compiled template. Templates are compiled only once, each compilation generates a new class.
+	 * @param templateText
+	 * @return
+	 * @throws Exception
+	 */
+	private Template getTemplate(String templateText) throws Exception {
+		Template template = templateCache.get(templateText);
+		if (template==null)
+		{
+			template = templateEngine.createTemplate(templateText);
+			templateCache.put(templateText, template);
+		}
+		return template;
+	}
+	
+	public boolean isBindInputOnlyIfReferenced() {
+		return bindInputOnlyIfReferenced;
+	}
+
+	/**
+	 * If set to true the input is parsed and bound to the template only if the template text contains name of the input 
+	 * root element. Saves parsing of inputs that are not used, but the template must not access the input indirectly, 
+	 * for example through "binding.variables". Default is false.
+	 * @param bindInputOnlyIfReferenced
+	 */
+	public void setBindInputOnlyIfReferenced(boolean bindInputOnlyIfReferenced) {
+		this.bindInputOnlyIfReferenced = bindInputOnlyIfReferenced;
+	}
+
+	LruCache<String, Template> getTemplateCache() {
+		return templateCache;
+	}
 }
@@ -16,12 +16,18 @@
 package net.javacrumbs.smock.common.groovy;
 
 import static java.util.Collections.singletonMap;
+import static net.javacrumbs.smock.common.XmlUtil.loadDocument;
 import static net.javacrumbs.smock.common.XmlUtil.serialize;
 import static org.custommonkey.xmlunit.XMLAssert.assertXMLEqual;
+import static org.junit.Assert.assertEquals;
+import groovy.text.SimpleTemplateEngine;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
 
 import javax.xml.transform.Source;
+import javax.xml.transform.dom.DOMSource;
+import javax.xml.transform.stream.StreamSource;
 
 import org.junit.Test;
 import org.springframework.xml.transform.StringSource;
@@ -60,4 +66,69 @@ public class GroovyTemplateProcessorTest {
 		Source result = processor.processTemplate(template, request, singletonMap("value", (Object)"test"));
 		assertXMLEqual("<a>test 2</a>", serialize(result));
 	}
+	@Test
+	public void testTemplateCompiledOnce() throws SAXException, IOException
+	{
+		GroovyTemplateProcessor processor = new GroovyTemplateProcessor();
+		
+		Source result1 = processor.processTemplate(new StringSource("<a>$value</a>"), null, singletonMap("value", (Object)"test1"));
+		Source result2 = processor.processTemplate(new StringSource("<a>$value</a>"), null, singletonMap("value", (Object)"test2"));
+		assertXMLEqual("<a>test1</a>", serialize(result1));
+		assertXMLEqual("<a>test2</a>", serialize(result2));
+		assertEquals(1, processor.getTemplateCache().size());
+		assertEquals(1, processor.getTemplateCache().getHitCount());
+	}
+	@Test
+	public void testTemplateCacheBounded() throws SAXException, IOException
+	{
+		GroovyTemplateProcessor processor = new GroovyTemplateProcessor(new SimpleTemplateEngine(), 1);
+		
+		processor.processTemplate(new StringSource("<a>$value</a>"), null, singletonMap("value", (Object)"test"));
+		Source result = processor.processTemplate(new StringSource("<b>$value</b>"), null, singletonMap("value", (Object)"test"));
+		assertXMLEqual("<b>test</b>", serialize(result));
+		assertEquals(1, processor.getTemplateCache().size());
+		assertEquals(1, processor.getTemplateCache().getEvictionCount());
+	}
+	@Test
+	public void testWithDomRequest() throws SAXException, IOException
+	{
+		GroovyTemplateProcessor processor = new GroovyTemplateProcessor();
+		Source template = new StringSource("<a>$value $requestB.b</a>");
+		Source request = new DOMSource(loadDocument(new StringSource("<!-- comment --><requestB xmlns:ns=\"http://example.org/abc\"><ns:b>2</ns:b></requestB>")));	
+		
+		Source result = processor.processTemplate(template, request, singletonMap("value", (Object)"test"));
+		assertXMLEqual("<a>test 2</a>", serialize(result));
+	}
+	@Test
+	public void testWithStreamRequest() throws SAXException, IOException
+	{
+		GroovyTemplateProcessor processor = new GroovyTemplateProcessor();
+		Source template = new StringSource("<a>${binding.hasVariable('requestB')}</a>");
+		Source request = new StreamSource(new ByteArrayInputStream("<requestB><b>2</b></requestB>".getBytes("UTF-8")));	
+		
+		Source result = processor.processTemplate(template, request, singletonMap("value", (Object)"test"));
+		assertXMLEqual("<a>true</a>", serialize(result));
+	}
+	@Test
+	public void testRequestNotReferenced() throws SAXException, IOException
+	{
+		GroovyTemplateProcessor processor = new GroovyTemplateProcessor();
+		Source template = new StringSource("<a>${binding.hasVariable('request' + 'B')}</a>");
+		
+		Source result = processor.processTemplate(template, new StringSource("<requestB><b>2</b></requestB>"), singletonMap("value", (Object)"test"));
+		assertXMLEqual("<a>true</a>", serialize(result));
+		
+		processor.setBindInputOnlyIfReferenced(true);
+		result = processor.processTemplate(template, new StringSource("<requestB><b>2</b></requestB>"), singletonMap("value", (Object)"test"));
+		assertXMLEqual("<a>false</a>", serialize(result));
+	}
+	@Test
+	public void testEmptyRequest() throws SAXException, IOException
+	{
+		GroovyTemplateProcessor processor = new GroovyTemplateProcessor();
+		Source template = new StringSource("<a>${value}</a>");
+		
+		Source result = processor.processTemplate(template, new DOMSource(), singletonMap("value", (Object)"test"));
+		assertXMLEqual("<a>test</a>", serialize(result));
+	}
 }
@@ -33,7 +33,11 @@ import net.javacrumbs.smock.extended.client.connection.threadlocal.ThreadLocalMo
  */
 public abstract class AbstractMockHttpUrlConnection extends HttpURLConnection {
 
+	private static final String SOAP_ACTION_HEADER = "SOAPAction";
+
 	protected final MockConnection activeConnection;
+	
+	private InputStream responseStream;
 
 	public AbstractMockHttpUrlConnection(URL u, MockConnection activConnection) {
 		super(u);
@@ -62,7 +66,13 @@ public abstract class AbstractMockHttpUrlConnection extends HttpURLConnection {
 
 	@Override
 	public InputStream getInputStream() throws IOException {
-		return activeConnection.getInputStream();
+		//the response can be streamed, so it has to be created only once
+		if (responseStream==null)
+		{
+			activeConnection.setSoapAction(getRequestProperty(SOAP_ACTION_HEADER));
+			responseStream = activeConnection.getInputStream();
+		}
+		return responseStream;
 	}
 
 	@Override
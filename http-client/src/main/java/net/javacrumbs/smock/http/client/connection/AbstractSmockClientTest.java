@@ -17,12 +17,12 @@ package net.javacrumbs.smock.http.client.connection;
 
 import net.javacrumbs.smock.common.client.AbstractCommonSmockClientTest;
 import net.javacrumbs.smock.extended.client.connection.MockWebServiceServer;
+import net.javacrumbs.smock.extended.client.connection.RepeatableResponseActions;
 
 import org.springframework.context.ApplicationContext;
 import org.springframework.ws.WebServiceMessageFactory;
 import org.springframework.ws.server.EndpointInterceptor;
 import org.springframework.ws.test.client.RequestMatcher;
-import org.springframework.ws.test.client.ResponseActions;
 
 /**
  * Class to be extended by HTTP client test. Automatically creates {@link MockWebServiceServer}.
@@ -76,13 +76,13 @@ public abstract class AbstractSmockClientTest extends AbstractCommonSmockClientT
 	}
 
 	/**
-	 * Records an expectation specified by the given {@link RequestMatcher}. Returns a {@link ResponseActions} object
+	 * Records an expectation specified by the given {@link RequestMatcher}. Returns a {@link RepeatableResponseActions} object
 	 * that allows for creating the response, or to set up more expectations.
 	 *
 	 * @param requestMatcher the request matcher expected
 	 * @return the response actions
 	 */
-	public ResponseActions expect(RequestMatcher requestMatcher) {
+	public RepeatableResponseActions expect(RequestMatcher requestMatcher) {
 		return mockWebServiceServer.expect(requestMatcher);
 	}
 
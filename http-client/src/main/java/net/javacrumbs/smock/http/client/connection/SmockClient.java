@@ -15,8 +15,13 @@
  */
 package net.javacrumbs.smock.http.client.connection;
 
+import java.io.IOException;
+
 import net.javacrumbs.smock.common.client.CommonSmockClient;
 import net.javacrumbs.smock.extended.client.connection.MockWebServiceServer;
+import net.javacrumbs.smock.extended.client.connection.shared.SharedMockWebServiceServer;
+import net.javacrumbs.smock.http.client.connection.server.LocalHttpMockWebServiceServer;
+import net.javacrumbs.smock.http.client.connection.shared.HttpSharedMockWebServiceServer;
 import net.javacrumbs.smock.http.client.connection.threadlocal.http.HttpThreadLocalMockWebServiceServer;
 
 import org.springframework.ws.WebServiceMessageFactory;
@@ -27,10 +32,25 @@ import org.springframework.ws.server.EndpointInterceptor;
  * @author Lukas Krecan
  */
 public class SmockClient extends CommonSmockClient {
+	
+	private static final int DEFAULT_WORKER_THREADS = 2 * Runtime.getRuntime().availableProcessors();
 		
 	public static MockWebServiceServer createServer(WebServiceMessageFactory messageFactory, EndpointInterceptor[] interceptors)
 	{
-		return new HttpThreadLocalMockWebServiceServer(messageFactory, interceptors);
+		return createServer(messageFactory, interceptors, true);
+	}
+	
+	/**
+	 * Creates mock server. If ordered is false, requests are matched with expectations regardless of the order,
+	 * which is useful when the client sends requests in parallel. 
+	 * @param messageFactory
+	 * @param interceptors
+	 * @param ordered
+	 * @return
+	 */
+	public static MockWebServiceServer createServer(WebServiceMessageFactory messageFactory, EndpointInterceptor[] interceptors, boolean ordered)
+	{
+		return new HttpThreadLocalMockWebServiceServer(messageFactory, interceptors, ordered);
 	}
 	
 	public static MockWebServiceServer createServer(EndpointInterceptor[] interceptors)
@@ -42,4 +62,55 @@ public class SmockClient extends CommonSmockClient {
 	{
 		return createServer(createMessageFactory(), null);
 	}
+	
+	/**
+	 * Creates mock server that is shared by all threads. Use it if the client sends requests from other threads 
+	 * than the test. Only one shared server can be active at a time, it has to be closed by 
+	 * {@link SharedMockWebServiceServer#close()} after the test. 
+	 * @param messageFactory
+	 * @param interceptors
+	 * @param ordered
+	 * @return
+	 */
+	public static HttpSharedMockWebServiceServer createSharedServer(WebServiceMessageFactory messageFactory, EndpointInterceptor[] interceptors, boolean ordered)
+	{
+		return new HttpSharedMockWebServiceServer(messageFactory, interceptors, ordered);
+	}
+	
+	/**
+	 * Creates mock server that is shared by more threads. Since requests sent from more threads 
+	 * come in unpredictable order, the server does not require expectations to be called in order.
+	 * @return
+	 */
+	public static HttpSharedMockWebServiceServer createSharedServer()
+	{
+		return createSharedServer(createMessageFactory(), null, false);
+	}
+	
+	/**
+	 * Creates mock server listening on localhost. It can be used with any HTTP client library, 
+	 * clients have to send the requests to {@link LocalHttpMockWebServiceServer#getUri()}. 
+	 * The server has to be closed after the test. 
+	 * @param messageFactory
+	 * @param interceptors
+	 * @param ordered
+	 * @param port port to listen on, 0 means any free port
+	 * @param workerThreads number of threads processing the requests
+	 * @return
+	 * @throws IOException
+	 */
+	public static LocalHttpMockWebServiceServer createLocalServer(WebServiceMessageFactory messageFactory, EndpointInterceptor[] interceptors, boolean ordered, int port, int workerThreads) throws IOException
+	{
+		return new LocalHttpMockWebServiceServer(messageFactory, interceptors, ordered, port, workerThreads);
+	}
+	
+	/**
+	 * Creates mock server listening on a free localhost port. The server does not require expectations to be called in order.
+	 * @return
+	 * @throws IOException
+	 */
+	public static LocalHttpMockWebServiceServer createLocalServer() throws IOException
+	{
+		return createLocalServer(createMessageFactory(), null, false, 0, DEFAULT_WORKER_THREADS);
+	}
 }
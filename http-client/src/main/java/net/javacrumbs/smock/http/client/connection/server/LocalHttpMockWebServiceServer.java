@@ -0,0 +1,286 @@
+/**
+ * Copyright 2009-2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.javacrumbs.smock.http.client.connection.server;
+
+import static net.javacrumbs.smock.extended.client.connection.ShapedResponseCreator.whenReleased;
+
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PushbackInputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import net.javacrumbs.smock.extended.client.connection.MockConnection;
+import net.javacrumbs.smock.extended.client.connection.MockConversation;
+import net.javacrumbs.smock.extended.client.connection.MockWebServiceServer;
+import net.javacrumbs.smock.extended.client.connection.RepeatableResponseActions;
+import net.javacrumbs.smock.extended.client.connection.metrics.ConversationMetrics;
+import net.javacrumbs.smock.extended.client.connection.metrics.MetricsAware;
+
+import org.springframework.util.Assert;
+import org.springframework.util.FileCopyUtils;
+import org.springframework.ws.WebServiceMessageFactory;
+import org.springframework.ws.server.EndpointInterceptor;
+import org.springframework.ws.test.client.RequestMatcher;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * MockWebServiceServer listening on a localhost port. Unlike {@link net.javacrumbs.smock.http.client.connection.threadlocal.http.HttpThreadLocalMockWebServiceServer} 
+ * it does not replace the JDK HTTP protocol handler, so it can be used with any HTTP client library (Apache HttpClient, CXF, etc.).
+ * Requests are processed by the NIO based HTTP server of the JDK. Connections are kept alive and requests are handled 
+ * by a pool of worker threads. 
+ * <p>
+ * Requests that do not match the expectations or fail otherwise are answered with HTTP status 500, the error is reported by {@link #verify()}.
+ * <p>
+ * Responses delayed by {@link net.javacrumbs.smock.extended.client.connection.ShapedResponseCreator} do not occupy a worker thread while they wait, the response is sent
+ * when the scheduler releases it. A worker thread is busy while the response is being sent, so responses with limited 
+ * throughput need enough worker threads for the expected number of concurrent clients.
+ * @author Lukas Krecan
+ */
+public class LocalHttpMockWebServiceServer implements MockWebServiceServer, MetricsAware, Closeable {
+	
+	private static final String SOAP_ACTION_HEADER = "SOAPAction";
+	
+	private static final String HOST_HEADER = "Host";
+	
+	private static final String CONTENT_TYPE_HEADER = "Content-Type";
+	
+	private static final String ERROR_CONTENT_TYPE = "text/plain;charset=UTF-8";
+	
+	private static final int STOP_DELAY = 0;
+	
+	/**
+	 * Response lengths understood by {@link HttpExchange#sendResponseHeaders(int, long)}.
+	 */
+	private static final int NO_RESPONSE_BODY = -1;
+	
+	private static final int CHUNKED_RESPONSE_BODY = 0;
+	
+	private final MockConversation mockConversation;
+	
+	private final HttpServer httpServer;
+	
+	private final ExecutorService workers;
+	
+	private final Queue<Throwable> errors = new ConcurrentLinkedQueue<Throwable>();
+	
+	/**
+	 * Creates and starts the server.
+	 * @param messageFactory
+	 * @param interceptors
+	 * @param ordered if false, requests are matched with expectations regardless of the order. See {@link MockConversation}.
+	 * @param port port to listen on, 0 means any free port
+	 * @param workerThreads number of threads processing the requests and sending the responses
+	 * @throws IOException if the server can not be started
+	 */
+	public LocalHttpMockWebServiceServer(WebServiceMessageFactory messageFactory, EndpointInterceptor[] interceptors, boolean ordered, int port, int workerThreads) throws IOException {
+		Assert.notNull(messageFactory, "messageFactory can not be null");
+		Assert.isTrue(workerThreads > 0, "workerThreads has to be positive");
+		mockConversation = new MockConversation(messageFactory, interceptors, ordered);
+		workers = Executors.newFixedThreadPool(workerThreads, new WorkerThreadFactory());
+		httpServer = HttpServer.create(new InetSocketAddress("localhost", port), 0);
+		httpServer.setExecutor(workers);
+		httpServer.createContext("/", new MockHandler());
+		httpServer.start();
+	}
+	
+	public RepeatableResponseActions expect(RequestMatcher requestMatcher)
+	{
+		return mockConversation.expect(requestMatcher);
+	}
+	
+	/**
+	 * Throws the first error of request processing, if any, or verifies that all expected requests were sent.
+	 */
+	public void verify() {
+		Throwable error = errors.peek();
+		if (error instanceof Error)
+		{
+			throw (Error)error;
+		}
+		else if (error instanceof RuntimeException)
+		{
+			throw (RuntimeException)error;
+		}
+		else if (error!=null)
+		{
+			throw new IllegalStateException("Error when processing request", error);
+		}
+		mockConversation.verifyConnections();
+	}
+	
+	public ConversationMetrics getMetrics() {
+		return mockConversation.getMetrics();
+	}
+	
+	/**
+	 * Stops the server and its worker threads.
+	 */
+	public void close() {
+		httpServer.stop(STOP_DELAY);
+		workers.shutdown();
+		try
+		{
+			workers.awaitTermination(1, TimeUnit.SECONDS);
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+		}
+	}
+	
+	public int getPort() {
+		return httpServer.getAddress().getPort();
+	}
+	
+	/**
+	 * Returns URI the clients should send the requests to, for example "http://localhost:8080/".
+	 * @return
+	 */
+	public URI getUri() {
+		return URI.create("http://localhost:" + getPort() + "/");
+	}
+	
+	public MockConversation getMockConversation() {
+		return mockConversation;
+	}
+	
+	private URI getRequestUri(HttpExchange exchange) {
+		String host = exchange.getRequestHeaders().getFirst(HOST_HEADER);
+		if (host==null)
+		{
+			host = "localhost:" + getPort();
+		}
+		return URI.create("http://" + host + exchange.getRequestURI());
+	}
+	
+	private class MockHandler implements HttpHandler {
+		
+		public void handle(final HttpExchange exchange) throws IOException {
+			final MockConnection connection;
+			final InputStream response;
+			try
+			{
+				connection = mockConversation.getActiveConnection();
+				connection.setUri(getRequestUri(exchange));
+				connection.setSoapAction(exchange.getRequestHeaders().getFirst(SOAP_ACTION_HEADER));
+				FileCopyUtils.copy(exchange.getRequestBody(), connection.getOutputStream());
+				response = connection.getInputStream();
+			}
+			catch (Throwable e)
+			{
+				try
+				{
+					sendError(exchange, e);
+				}
+				finally
+				{
+					exchange.close();
+				}
+				return;
+			}
+			//the worker thread is not blocked while the response is delayed
+			whenReleased(response, new Runnable() {
+				public void run() {
+					sendResponse(exchange, connection, response);
+				}
+			}, workers);
+		}
+		
+		private void sendResponse(HttpExchange exchange, MockConnection connection, InputStream response) {
+			boolean headersSent = false;
+			try
+			{
+				exchange.getResponseHeaders().set(CONTENT_TYPE_HEADER, connection.getHeaderField("content-type"));
+				if (response instanceof ByteArrayInputStream)
+				{
+					//known content length keeps the connection alive, zero length would mean chunked encoding
+					int length = response.available();
+					exchange.sendResponseHeaders(connection.getResponseCode(), length > 0 ? length : NO_RESPONSE_BODY);
+					headersSent = true;
+				}
+				else
+				{
+					//streamed response, headers are sent with the first byte, so delayed responses are delayed as a whole
+					PushbackInputStream pushbackResponse = new PushbackInputStream(response);
+					int firstByte = pushbackResponse.read();
+					if (firstByte >= 0)
+					{
+						pushbackResponse.unread(firstByte);
+					}
+					response = pushbackResponse;
+					//chunked transfer encoding
+					exchange.sendResponseHeaders(connection.getResponseCode(), firstByte >= 0 ? CHUNKED_RESPONSE_BODY : NO_RESPONSE_BODY);
+					headersSent = true;
+				}
+				FileCopyUtils.copy(response, exchange.getResponseBody());
+			}
+			catch (Throwable e)
+			{
+				//if the response has already started, closing the exchange is the only way to report the error
+				if (headersSent)
+				{
+					errors.add(e);
+				}
+				else
+				{
+					try
+					{
+						sendError(exchange, e);
+					}
+					catch (IOException sendFailure)
+					{
+						//client has closed the connection
+					}
+				}
+			}
+			finally
+			{
+				exchange.close();
+			}
+		}
+		
+		private void sendError(HttpExchange exchange, Throwable e) throws IOException {
+			errors.add(e);
+			byte[] message = String.valueOf(e.getMessage()).getBytes("UTF-8");
+			exchange.getResponseHeaders().set(CONTENT_TYPE_HEADER, ERROR_CONTENT_TYPE);
+			exchange.sendResponseHeaders(500, message.length);
+			exchange.getResponseBody().write(message);
+		}
+	}
+	
+	private static class WorkerThreadFactory implements ThreadFactory {
+		private final AtomicInteger counter = new AtomicInteger();
+		
+		public Thread newThread(Runnable runnable) {
+			Thread thread = new Thread(runnable, "smock-http-worker-" + counter.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		}
+	}
+}
@@ -0,0 +1,37 @@
+/**
+ * Copyright 2009-2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.javacrumbs.smock.http.client.connection.shared;
+
+import static net.javacrumbs.smock.http.client.connection.threadlocal.http.HttpThreadLocalMockWebServiceServer.HANDLER_PACKAGE;
+
+import net.javacrumbs.smock.extended.client.connection.shared.SharedMockWebServiceServer;
+
+import org.springframework.ws.WebServiceMessageFactory;
+import org.springframework.ws.server.EndpointInterceptor;
+
+/**
+ * Shared mock server for HTTP clients. Requests sent from threads that share this server are processed by it,
+ * unless the thread has its own thread local mock server.
+ * @author Lukas Krecan
+ */
+public class HttpSharedMockWebServiceServer extends SharedMockWebServiceServer {
+
+	public HttpSharedMockWebServiceServer(WebServiceMessageFactory messageFactory, EndpointInterceptor[] interceptors, boolean ordered) {
+		super(messageFactory, interceptors, ordered);
+		System.setProperty("java.protocol.handler.pkgs", HANDLER_PACKAGE);
+	}
+
+}
@@ -23,9 +23,18 @@ import net.javacrumbs.smock.extended.client.connection.threadlocal.ThreadLocalMo
 
 public class HttpThreadLocalMockWebServiceServer extends ThreadLocalMockWebServiceServer {
 	
+	/**
+	 * Package with mock "http" and "https" URL handlers.
+	 */
+	public static final String HANDLER_PACKAGE = "net.javacrumbs.smock.http.client.connection.threadlocal";
+	
 	public HttpThreadLocalMockWebServiceServer(WebServiceMessageFactory messageFactory,	EndpointInterceptor[] interceptors) {
-		super(messageFactory, interceptors);
-		System.setProperty("java.protocol.handler.pkgs", "net.javacrumbs.smock.http.client.connection.threadlocal");
+		this(messageFactory, interceptors, true);
+	}
+	
+	public HttpThreadLocalMockWebServiceServer(WebServiceMessageFactory messageFactory,	EndpointInterceptor[] interceptors, boolean ordered) {
+		super(messageFactory, interceptors, ordered);
+		System.setProperty("java.protocol.handler.pkgs", HANDLER_PACKAGE);
 	}
 
 }
@@ -17,16 +17,18 @@ package net.javacrumbs.smock.http.client.connection.threadlocal.http;
 
 import java.net.URL;
 
+import net.javacrumbs.smock.extended.client.connection.shared.SharedMockWebServiceServer;
 import net.javacrumbs.smock.extended.client.connection.threadlocal.ThreadLocalMockWebServiceServer;
 import net.javacrumbs.smock.http.client.connection.AbstractMockHttpUrlConnection;
 
 /**
- * MockHttpUrlConnection that return active connection from {@link ThreadLocalMockWebServiceServer}.
+ * MockHttpUrlConnection that return active connection from {@link ThreadLocalMockWebServiceServer} or, if there is none
+ * bound to the current thread, from {@link SharedMockWebServiceServer}.
  * @author Lukas Krecan
  */
 public class ThreadLocalMockHttpUrlConnection extends AbstractMockHttpUrlConnection {
 	
 	public ThreadLocalMockHttpUrlConnection(URL url) {
-		super(url, ThreadLocalMockWebServiceServer.getActiveConnection());
+		super(url, SharedMockWebServiceServer.getActiveConnection());
 	}
 }
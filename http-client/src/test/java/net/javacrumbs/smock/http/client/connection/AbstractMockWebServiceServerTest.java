@@ -16,18 +16,32 @@
 package net.javacrumbs.smock.http.client.connection;
 
 import static net.javacrumbs.smock.common.XmlUtil.transform;
+import static net.javacrumbs.smock.common.client.CommonSmockClient.connectionTo;
 import static net.javacrumbs.smock.common.client.CommonSmockClient.message;
 import static net.javacrumbs.smock.common.client.CommonSmockClient.withMessage;
+import static net.javacrumbs.smock.extended.client.connection.Latency.fixed;
+import static net.javacrumbs.smock.extended.client.connection.Latency.percentiles;
+import static net.javacrumbs.smock.extended.client.connection.ShapedResponseCreator.withLatency;
+import static net.javacrumbs.smock.extended.client.connection.ShapedResponseCreator.withThroughputLimit;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
-import static org.springframework.ws.test.client.RequestMatchers.connectionTo;
+import static org.springframework.ws.test.client.ResponseCreators.withPayload;
 
+import java.io.File;
+import java.io.FilenameFilter;
 import java.io.IOException;
 
 import javax.xml.transform.TransformerException;
 import javax.xml.transform.stream.StreamSource;
 
+import net.javacrumbs.smock.common.MessageBuffer;
+import net.javacrumbs.smock.extended.client.connection.Latency;
+import net.javacrumbs.smock.extended.client.connection.MockConnection;
 import net.javacrumbs.smock.extended.client.connection.MockWebServiceServer;
+import net.javacrumbs.smock.extended.client.connection.metrics.ConversationMetrics;
+import net.javacrumbs.smock.extended.client.connection.metrics.ExpectationMetrics;
+import net.javacrumbs.smock.extended.client.connection.metrics.MetricsAware;
 
 import org.junit.Test;
 import org.springframework.ws.WebServiceMessage;
@@ -36,6 +50,7 @@ import org.springframework.ws.client.core.WebServiceMessageCallback;
 import org.springframework.ws.client.core.WebServiceMessageExtractor;
 import org.springframework.ws.client.core.WebServiceTemplate;
 import org.springframework.ws.soap.saaj.SaajSoapMessageFactory;
+import org.springframework.xml.transform.StringSource;
 
 public abstract class AbstractMockWebServiceServerTest {
 
@@ -134,6 +149,71 @@ public abstract class AbstractMockWebServiceServerTest {
 	
 
 
+	@Test
+	public void testTimes() throws IOException
+	{
+		MockWebServiceServer server = createServer();
+		server.expect(connectionTo(ADDRESS)).andExpect(message("request.xml")).times(3).andRespond(withMessage("response.xml"));
+		
+		for (int i=0; i<3; i++)
+		{
+			message("response.xml").match(null, sendMessage(ADDRESS, "request.xml"));
+		}
+		server.verify();
+		try
+		{
+			sendMessage(ADDRESS, "request.xml");
+			fail("Unexpected exeption");
+		}
+		catch(AssertionError e)
+		{
+			assertEquals("No further connections expected",e.getMessage());
+		}
+	}
+	
+	@Test
+	public void testTimesVerify() throws IOException
+	{
+		MockWebServiceServer server = createServer();
+		server.expect(connectionTo(ADDRESS)).times(2).andRespond(withMessage("response.xml"));
+		
+		sendMessage(ADDRESS, "request.xml");
+		try
+		{
+			server.verify();
+			fail("Unexpected exeption");
+		}
+		catch(AssertionError e)
+		{
+			assertTrue(e.getMessage(), e.getMessage().contains("connection 1: expected 2 time(s), called 1 time(s)"));
+		}
+	}
+	
+	@Test
+	public void testAtLeast() throws IOException
+	{
+		MockWebServiceServer server = createServer();
+		server.expect(message("request.xml")).atLeast(1).andRespond(withMessage("response.xml"));
+		server.expect(message("request2.xml")).andRespond(withMessage("response2.xml"));
+		
+		message("response.xml").match(null, sendMessage(ADDRESS, "request.xml"));
+		message("response.xml").match(null, sendMessage(ADDRESS, "request.xml"));
+		message("response2.xml").match(null, sendMessage(ADDRESS, "request2.xml"));
+		server.verify();
+	}
+	
+	@Test
+	public void testAnyTimes() throws IOException
+	{
+		MockWebServiceServer server = createServer();
+		server.expect(message("request.xml")).anyTimes().andRespond(withMessage("response.xml"));
+		server.verify();
+		
+		message("response.xml").match(null, sendMessage(ADDRESS, "request.xml"));
+		message("response.xml").match(null, sendMessage(ADDRESS, "request.xml"));
+		server.verify();
+	}
+
 	@Test(expected=AssertionError.class)
 	public void testDifferentUri() throws IOException
 	{
@@ -151,6 +231,130 @@ public abstract class AbstractMockWebServiceServerTest {
 		server.verify();
 	}
 
+	@Test
+	public void testRequestSpilledToFile() throws IOException
+	{
+		MockConnection.setRequestSpillThreshold(10);
+		try
+		{
+			int tempFiles = countTemporaryFiles();
+			MockWebServiceServer server = createServer();
+			server.expect(message("request.xml")).andRespond(withMessage("response.xml"));
+			
+			message("response.xml").match(null, sendMessage(ADDRESS, "request.xml"));
+			server.verify();
+			assertEquals(tempFiles, countTemporaryFiles());
+		}
+		finally
+		{
+			MockConnection.setRequestSpillThreshold(MessageBuffer.NO_SPILL);
+		}
+	}
+
+	private int countTemporaryFiles()
+	{
+		String[] files = new File(System.getProperty("java.io.tmpdir")).list(new FilenameFilter() {
+			public boolean accept(File dir, String name) {
+				return name.startsWith("smock-message");
+			}
+		});
+		return files!=null ? files.length : 0;
+	}
+
+	@Test
+	public void testResponseStreaming() throws IOException
+	{
+		StringBuilder payload = new StringBuilder("<response>");
+		for (int i=0; i<20000; i++)
+		{
+			payload.append("<item id=\"").append(i).append("\">Lorem ipsum dolor sit amet</item>");
+		}
+		payload.append("</response>");
+		MockConnection.setResponseStreaming(true);
+		try
+		{
+			MockWebServiceServer server = createServer();
+			server.expect(message("request.xml")).andRespond(withPayload(new StringSource(payload.toString())));
+			
+			WebServiceMessage response = sendMessage(ADDRESS, "request.xml");
+			message(new StringSource(payload.toString())).match(null, response);
+			server.verify();
+		}
+		finally
+		{
+			MockConnection.setResponseStreaming(false);
+		}
+	}
+
+	@Test
+	public void testLatency() throws IOException
+	{
+		MockWebServiceServer server = createServer();
+		server.expect(message("request.xml")).andRespond(withLatency(fixed(200), withMessage("response.xml")));
+		
+		long start = System.currentTimeMillis();
+		WebServiceMessage response = sendMessage(ADDRESS, "request.xml");
+		assertTrue("Response not delayed", System.currentTimeMillis() - start >= 200);
+		message("response.xml").match(null, response);
+		server.verify();
+	}
+	
+	@Test
+	public void testThroughputLimit() throws IOException
+	{
+		MockWebServiceServer server = createServer();
+		//response has about 300 bytes
+		server.expect(message("request.xml")).andRespond(withThroughputLimit(1000, withMessage("response.xml")));
+		
+		long start = System.currentTimeMillis();
+		WebServiceMessage response = sendMessage(ADDRESS, "request.xml");
+		assertTrue("Response not throttled", System.currentTimeMillis() - start >= 200);
+		message("response.xml").match(null, response);
+		server.verify();
+	}
+	
+	@Test
+	public void testPercentileLatency()
+	{
+		Latency latency = percentiles(new double[]{50, 100}, new long[]{10, 20});
+		for (int i=0; i<100; i++)
+		{
+			long delay = latency.nextDelay();
+			assertTrue(String.valueOf(delay), delay >= 0 && delay <= 20);
+		}
+	}
+
+	@Test
+	public void testMetrics() throws IOException
+	{
+		MockWebServiceServer server = createServer();
+		server.expect(message("request.xml")).times(2).andRespond(withMessage("response.xml"));
+		server.expect(connectionTo(ADDRESS)).andRespond(withPayload(new StringSource("<response/>")));
+		
+		sendMessage(ADDRESS, "request.xml");
+		sendMessage(ADDRESS, "request.xml");
+		sendMessage(ADDRESS, "request2.xml");
+		server.verify();
+		
+		ConversationMetrics metrics = ((MetricsAware)server).getMetrics();
+		assertEquals(2, metrics.getExpectations().size());
+		ExpectationMetrics first = metrics.getExpectations().get(0);
+		assertEquals(2, first.getResponses());
+		assertTrue(first.getMatchAttempts() >= 2);
+		assertTrue(first.getBytesIn() > 0);
+		assertTrue(first.getBytesOut() > 0);
+		assertEquals(first.getMatchAttempts(), first.getMatchTimeHistogram().getCount());
+		assertTrue(first.getMatchTimeHistogram().getValueAtPercentile(50) <= first.getMatchTimeHistogram().getMax());
+		ExpectationMetrics second = metrics.getExpectations().get(1);
+		assertEquals(1, second.getResponses());
+		assertTrue(second.getBytesOut() > 0);
+		
+		String json = metrics.toJson();
+		assertTrue(json, json.startsWith("{\"expectations\":[{\"index\":0,\"description\":\"payload root {http://javacrumbs.net/test}testMethod\",\"responses\":2,"));
+		assertTrue(json, json.contains("\"description\":\"URI " + ADDRESS + "\",\"responses\":1,"));
+		assertTrue(json, json.contains("\"p99\":"));
+	}
+
 	protected WebServiceMessage sendMessage(String uri, final String request) {
 		WebServiceTemplate template = new WebServiceTemplate();
 		template.afterPropertiesSet();
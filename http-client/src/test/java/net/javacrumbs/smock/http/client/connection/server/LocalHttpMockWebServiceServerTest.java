@@ -0,0 +1,426 @@
+/**
+ * Copyright 2009-2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.javacrumbs.smock.http.client.connection.server;
+
+import static net.javacrumbs.smock.common.XmlUtil.stringToBytes;
+import static net.javacrumbs.smock.common.client.CommonSmockClient.connectionTo;
+import static net.javacrumbs.smock.common.client.CommonSmockClient.message;
+import static net.javacrumbs.smock.common.client.CommonSmockClient.withMessage;
+import static net.javacrumbs.smock.extended.client.connection.Latency.fixed;
+import static net.javacrumbs.smock.extended.client.connection.ShapedResponseCreator.withLatency;
+import static net.javacrumbs.smock.http.client.connection.SmockClient.createLocalServer;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import net.javacrumbs.smock.common.MessageCreator;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.ws.WebServiceMessage;
+import org.springframework.ws.WebServiceMessageFactory;
+import org.springframework.ws.soap.saaj.SaajSoapMessageFactory;
+import org.springframework.ws.test.client.ResponseCreator;
+import org.springframework.xml.transform.StringSource;
+
+/**
+ * Sends raw HTTP requests, so the test does not depend on java.protocol.handler.pkgs set by other tests.
+ */
+public class LocalHttpMockWebServiceServerTest {
+	
+	private static final String REQUEST = "<test:testMethod xmlns:test=\"http://javacrumbs.net/test\"><text>Lukas</text></test:testMethod>";
+	
+	private static final String REQUEST2 = "<test:testMethod xmlns:test=\"http://javacrumbs.net/test\"><text>John</text></test:testMethod>";
+	
+	private LocalHttpMockWebServiceServer server;
+	
+	private SaajSoapMessageFactory messageFactory;
+	
+	@Before
+	public void setUp() throws IOException
+	{
+		messageFactory = new SaajSoapMessageFactory();
+		messageFactory.afterPropertiesSet();
+		server = createLocalServer();
+	}
+	
+	@After
+	public void tearDown()
+	{
+		server.close();
+	}
+	
+	@Test
+	public void testKeepAlive() throws IOException
+	{
+		server.expect(message("request.xml")).andRespond(withMessage("response.xml"));
+		server.expect(message("request2.xml")).andRespond(withMessage("response2.xml"));
+		
+		Socket socket = connect();
+		try
+		{
+			InputStream in = new BufferedInputStream(socket.getInputStream());
+			send(socket.getOutputStream(), REQUEST);
+			message("response.xml").match(null, readResponse(in, 200));
+			send(socket.getOutputStream(), REQUEST2);
+			message("response2.xml").match(null, readResponse(in, 200));
+		}
+		finally
+		{
+			socket.close();
+		}
+		server.verify();
+	}
+	
+	@Test
+	public void testPipelining() throws IOException
+	{
+		server.expect(message("request.xml")).andRespond(withMessage("response.xml"));
+		server.expect(message("request2.xml")).andRespond(withMessage("response2.xml"));
+		
+		Socket socket = connect();
+		try
+		{
+			ByteArrayOutputStream requests = new ByteArrayOutputStream();
+			send(requests, REQUEST);
+			send(requests, REQUEST2);
+			socket.getOutputStream().write(requests.toByteArray());
+			socket.getOutputStream().flush();
+			
+			InputStream in = new BufferedInputStream(socket.getInputStream());
+			message("response.xml").match(null, readResponse(in, 200));
+			message("response2.xml").match(null, readResponse(in, 200));
+		}
+		finally
+		{
+			socket.close();
+		}
+		server.verify();
+	}
+	
+	@Test
+	public void testConnectionTo() throws IOException
+	{
+		server.expect(connectionTo(server.getUri() + "service")).andExpect(message("request.xml")).andRespond(withMessage("response.xml"));
+		
+		Socket socket = connect();
+		try
+		{
+			send(socket.getOutputStream(), REQUEST);
+			message("response.xml").match(null, readResponse(new BufferedInputStream(socket.getInputStream()), 200));
+		}
+		finally
+		{
+			socket.close();
+		}
+		server.verify();
+	}
+	
+	@Test
+	public void testUnexpectedRequest() throws IOException
+	{
+		server.expect(message("request.xml")).andRespond(withMessage("response.xml"));
+		
+		Socket socket = connect();
+		try
+		{
+			send(socket.getOutputStream(), REQUEST2);
+			readResponse(new BufferedInputStream(socket.getInputStream()), 500);
+		}
+		finally
+		{
+			socket.close();
+		}
+		try
+		{
+			server.verify();
+			fail("Exception expected");
+		}
+		catch (AssertionError e)
+		{
+			assertTrue(e.getMessage(), e.getMessage().contains("Mismatch"));
+		}
+	}
+	
+	@Test
+	public void testEmptyResponse() throws IOException
+	{
+		server.expect(message("request.xml")).andRespond(new MessageCreator(new StringSource("<empty/>")) {
+			@Override
+			public byte[] createResponseBytes(URI uri, WebServiceMessage request, WebServiceMessageFactory messageFactory) throws IOException {
+				return new byte[0];
+			}
+		});
+		server.expect(message("request2.xml")).andRespond(withMessage("response2.xml"));
+		
+		Socket socket = connect();
+		try
+		{
+			InputStream in = new BufferedInputStream(socket.getInputStream());
+			send(socket.getOutputStream(), REQUEST);
+			assertTrue(readLine(in).contains(" 200 "));
+			List<String> headers = new ArrayList<String>();
+			String header;
+			while ((header = readLine(in)).length() > 0)
+			{
+				headers.add(header.toLowerCase());
+			}
+			assertTrue(headers.toString(), headers.contains("content-length: 0"));
+			//the connection is still usable
+			send(socket.getOutputStream(), REQUEST2);
+			message("response2.xml").match(null, readResponse(in, 200));
+		}
+		finally
+		{
+			socket.close();
+		}
+		server.verify();
+	}
+	
+	@Test
+	public void testResponseCreatorError() throws IOException
+	{
+		server.expect(message("request.xml")).andRespond(new ResponseCreator() {
+			public WebServiceMessage createResponse(URI uri, WebServiceMessage request, WebServiceMessageFactory messageFactory) throws IOException {
+				throw new IllegalStateException("Test error");
+			}
+		});
+		
+		Socket socket = connect();
+		try
+		{
+			send(socket.getOutputStream(), REQUEST);
+			readResponse(new BufferedInputStream(socket.getInputStream()), 500);
+		}
+		finally
+		{
+			socket.close();
+		}
+		try
+		{
+			server.verify();
+			fail("Exception expected");
+		}
+		catch (RuntimeException e)
+		{
+			assertTrue(String.valueOf(e), e.toString().contains("Test error") || String.valueOf(e.getCause()).contains("Test error"));
+		}
+	}
+	
+	@Test
+	public void testParallelClients() throws Exception
+	{
+		final int clients = 8;
+		final int requests = 20;
+		server.expect(message("request.xml")).times(clients * requests).andRespond(withMessage("response.xml"));
+		
+		ExecutorService executor = Executors.newFixedThreadPool(clients);
+		try
+		{
+			List<Future<Void>> results = new ArrayList<Future<Void>>();
+			for (int i=0; i<clients; i++)
+			{
+				results.add(executor.submit(new Callable<Void>() {
+					public Void call() throws Exception {
+						Socket socket = connect();
+						try
+						{
+							InputStream in = new BufferedInputStream(socket.getInputStream());
+							for (int j=0; j<requests; j++)
+							{
+								send(socket.getOutputStream(), REQUEST);
+								message("response.xml").match(null, readResponse(in, 200));
+							}
+						}
+						finally
+						{
+							socket.close();
+						}
+						return null;
+					}
+				}));
+			}
+			for (Future<Void> result : results)
+			{
+				result.get();
+			}
+		}
+		finally
+		{
+			executor.shutdown();
+		}
+		server.verify();
+	}
+
+	@Test
+	public void testDelayedResponsesDoNotBlockWorkers() throws Exception
+	{
+		final int clients = 4;
+		final LocalHttpMockWebServiceServer singleWorkerServer = createLocalServer(messageFactory, null, true, 0, 1);
+		try
+		{
+			singleWorkerServer.expect(message("request.xml")).times(clients).andRespond(withLatency(fixed(500), withMessage("response.xml")));
+			
+			ExecutorService executor = Executors.newFixedThreadPool(clients);
+			try
+			{
+				long start = System.currentTimeMillis();
+				List<Future<Void>> results = new ArrayList<Future<Void>>();
+				for (int i=0; i<clients; i++)
+				{
+					results.add(executor.submit(new Callable<Void>() {
+						public Void call() throws Exception {
+							Socket socket = new Socket("localhost", singleWorkerServer.getPort());
+							try
+							{
+								send(socket.getOutputStream(), REQUEST, singleWorkerServer.getPort());
+								message("response.xml").match(null, readResponse(new BufferedInputStream(socket.getInputStream()), 200));
+							}
+							finally
+							{
+								socket.close();
+							}
+							return null;
+						}
+					}));
+				}
+				for (Future<Void> result : results)
+				{
+					result.get();
+				}
+				long duration = System.currentTimeMillis() - start;
+				assertTrue("Responses were delayed one after another: " + duration + "ms", duration < 2 * 500);
+			}
+			finally
+			{
+				executor.shutdown();
+			}
+			singleWorkerServer.verify();
+		}
+		finally
+		{
+			singleWorkerServer.close();
+		}
+	}
+
+	private Socket connect() throws IOException {
+		return new Socket("localhost", server.getPort());
+	}
+	
+	private void send(OutputStream out, String payload) throws IOException {
+		send(out, payload, server.getPort());
+	}
+	
+	private void send(OutputStream out, String payload, int port) throws IOException {
+		byte[] body = stringToBytes("<soapenv:Envelope xmlns:soapenv=\"http://schemas.xmlsoap.org/soap/envelope/\"><soapenv:Body>" + payload + "</soapenv:Body></soapenv:Envelope>");
+		String headers = "POST /service HTTP/1.1\r\n"
+			+ "Host: localhost:" + port + "\r\n"
+			+ "Content-Type: text/xml;charset=UTF-8\r\n"
+			+ "Content-Length: " + body.length + "\r\n\r\n";
+		out.write(stringToBytes(headers));
+		out.write(body);
+		out.flush();
+	}
+	
+	private WebServiceMessage readResponse(InputStream in, int expectedStatus) throws IOException {
+		String statusLine = readLine(in);
+		assertEquals(statusLine, expectedStatus, Integer.parseInt(statusLine.split(" ")[1]));
+		int contentLength = 0;
+		boolean chunked = false;
+		String header;
+		while ((header = readLine(in)).length() > 0)
+		{
+			if (header.toLowerCase().startsWith("content-length:"))
+			{
+				contentLength = Integer.parseInt(header.substring("content-length:".length()).trim());
+			}
+			else if (header.toLowerCase().startsWith("transfer-encoding:") && header.toLowerCase().contains("chunked"))
+			{
+				chunked = true;
+			}
+		}
+		byte[] body;
+		if (chunked)
+		{
+			ByteArrayOutputStream chunks = new ByteArrayOutputStream();
+			int chunkLength;
+			while ((chunkLength = Integer.parseInt(readLine(in).trim(), 16)) > 0)
+			{
+				chunks.write(readBytes(in, chunkLength));
+				readLine(in);
+			}
+			readLine(in);
+			body = chunks.toByteArray();
+		}
+		else
+		{
+			body = readBytes(in, contentLength);
+		}
+		if (expectedStatus != 200)
+		{
+			return null;
+		}
+		return messageFactory.createWebServiceMessage(new ByteArrayInputStream(body));
+	}
+	
+	private byte[] readBytes(InputStream in, int length) throws IOException {
+		byte[] result = new byte[length];
+		int read = 0;
+		while (read < length)
+		{
+			int count = in.read(result, read, length - read);
+			if (count < 0)
+			{
+				throw new IOException("Unexpected end of stream");
+			}
+			read += count;
+		}
+		return result;
+	}
+	
+	private String readLine(InputStream in) throws IOException {
+		StringBuilder line = new StringBuilder();
+		int c;
+		while ((c = in.read()) != '\n')
+		{
+			if (c < 0)
+			{
+				throw new IOException("Unexpected end of stream");
+			}
+			if (c != '\r')
+			{
+				line.append((char) c);
+			}
+		}
+		return line.toString();
+	}
+}
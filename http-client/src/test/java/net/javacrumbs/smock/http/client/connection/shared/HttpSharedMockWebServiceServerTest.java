@@ -0,0 +1,181 @@
+/**
+ * Copyright 2009-2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.javacrumbs.smock.http.client.connection.shared;
+
+import static net.javacrumbs.smock.common.client.CommonSmockClient.connectionTo;
+import static net.javacrumbs.smock.common.client.CommonSmockClient.message;
+import static net.javacrumbs.smock.common.client.CommonSmockClient.withMessage;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+
+import net.javacrumbs.smock.extended.client.connection.MockConversation;
+import net.javacrumbs.smock.extended.client.connection.MockWebServiceServer;
+import net.javacrumbs.smock.extended.client.connection.shared.SharedMockWebServiceServer;
+import net.javacrumbs.smock.extended.client.connection.threadlocal.ThreadLocalMockWebServiceServer;
+import net.javacrumbs.smock.http.client.connection.AbstractMockWebServiceServerTest;
+
+import org.junit.After;
+import org.junit.Test;
+import org.springframework.ws.WebServiceMessage;
+
+public class HttpSharedMockWebServiceServerTest extends AbstractMockWebServiceServerTest{
+
+	private static final String ADDRESS = "http://localhost:8080";
+	
+	private HttpSharedMockWebServiceServer server;
+	
+	@Override
+	protected MockWebServiceServer createServer() {
+		server = new HttpSharedMockWebServiceServer(getMessageFactory(), null, true);
+		return server;
+	}
+	
+	@After
+	public void closeServer()
+	{
+		if (server!=null)
+		{
+			server.close();
+		}
+	}
+
+	@Test
+	public void testRequestsFromOtherThreads() throws Exception
+	{
+		//threads of the pool are started before the server is created
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+		try
+		{
+			for (int i=0; i<4; i++)
+			{
+				executor.submit(new Runnable() {
+					public void run() {
+					}
+				}).get();
+			}
+			server = new HttpSharedMockWebServiceServer(getMessageFactory(), null, false);
+			int count = 10;
+			for (int i=0; i<count; i++)
+			{
+				server.expect(connectionTo(ADDRESS)).andExpect(message("request.xml")).andRespond(withMessage("response.xml"));
+				server.expect(connectionTo(ADDRESS)).andExpect(message("request2.xml")).andRespond(withMessage("response2.xml"));
+			}
+			
+			List<Future<WebServiceMessage>> responses = new ArrayList<Future<WebServiceMessage>>();
+			for (int i=0; i<count; i++)
+			{
+				responses.add(executor.submit(new MessageSender("request.xml")));
+				responses.add(executor.submit(new MessageSender("request2.xml")));
+			}
+			for (int i=0; i<count; i++)
+			{
+				message("response.xml").match(null, responses.get(2*i).get());
+				message("response2.xml").match(null, responses.get(2*i + 1).get());
+			}
+			server.verify();
+			server.close();
+			assertNull(executor.submit(new ConversationGetter()).get());
+		}
+		finally
+		{
+			executor.shutdown();
+		}
+	}
+	
+	@Test
+	public void testRequestFromStartedThread() throws Exception
+	{
+		server = new HttpSharedMockWebServiceServer(getMessageFactory(), null, false);
+		server.expect(connectionTo(ADDRESS)).andExpect(message("request.xml")).andRespond(withMessage("response.xml"));
+		
+		FutureTask<WebServiceMessage> response = new FutureTask<WebServiceMessage>(new MessageSender("request.xml"));
+		Thread thread = new Thread(response);
+		thread.start();
+		message("response.xml").match(null, response.get());
+		server.verify();
+	}
+	
+	@Test
+	public void testClose() throws Exception
+	{
+		server = new HttpSharedMockWebServiceServer(getMessageFactory(), null, false);
+		assertNotNull(SharedMockWebServiceServer.getMockConversation());
+		assertNull(ThreadLocalMockWebServiceServer.getMockConversation());
+		server.close();
+		assertNull(SharedMockWebServiceServer.getMockConversation());
+	}
+	
+	@Test
+	public void testServerOfOtherThreadHasToBeClosed() throws Exception
+	{
+		server = new HttpSharedMockWebServiceServer(getMessageFactory(), null, false);
+		ExecutorService executor = Executors.newSingleThreadExecutor();
+		try
+		{
+			Future<HttpSharedMockWebServiceServer> otherServer = executor.submit(new ServerCreator());
+			try
+			{
+				otherServer.get();
+				fail("Exception expected");
+			}
+			catch (ExecutionException e)
+			{
+				assertTrue(e.getCause() instanceof IllegalStateException);
+			}
+			server.close();
+			executor.submit(new ServerCreator()).get().close();
+		}
+		finally
+		{
+			executor.shutdown();
+		}
+	}
+	
+	private class ServerCreator implements Callable<HttpSharedMockWebServiceServer> {
+		public HttpSharedMockWebServiceServer call() {
+			return new HttpSharedMockWebServiceServer(getMessageFactory(), null, false);
+		}
+	}
+	
+	private static class ConversationGetter implements Callable<MockConversation> {
+		public MockConversation call() {
+			return SharedMockWebServiceServer.getMockConversation();
+		}
+	}
+	
+	private class MessageSender implements Callable<WebServiceMessage> {
+		private final String request;
+
+		public MessageSender(String request) {
+			this.request = request;
+		}
+
+		public WebServiceMessage call() throws Exception {
+			return sendMessage(ADDRESS, request);
+		}
+	}
+}
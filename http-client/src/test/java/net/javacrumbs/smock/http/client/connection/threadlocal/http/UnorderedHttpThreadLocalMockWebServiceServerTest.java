@@ -0,0 +1,247 @@
+/**
+ * Copyright 2009-2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.javacrumbs.smock.http.client.connection.threadlocal.http;
+
+import static net.javacrumbs.smock.common.XmlUtil.stringToBytes;
+import static net.javacrumbs.smock.common.XmlUtil.transform;
+import static net.javacrumbs.smock.common.client.CommonSmockClient.connectionTo;
+import static net.javacrumbs.smock.common.client.CommonSmockClient.message;
+import static net.javacrumbs.smock.common.client.CommonSmockClient.soapAction;
+import static net.javacrumbs.smock.common.client.CommonSmockClient.withMessage;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import javax.xml.transform.TransformerException;
+
+import net.javacrumbs.smock.extended.client.connection.MockConnection;
+import net.javacrumbs.smock.extended.client.connection.MockConversation;
+import net.javacrumbs.smock.extended.client.connection.MockWebServiceServer;
+import net.javacrumbs.smock.extended.client.connection.metrics.ExpectationMetrics;
+import net.javacrumbs.smock.extended.client.connection.metrics.MetricsAware;
+import net.javacrumbs.smock.extended.client.connection.threadlocal.ThreadLocalMockWebServiceServer;
+import net.javacrumbs.smock.http.client.connection.AbstractMockWebServiceServerTest;
+
+import org.junit.Test;
+import org.springframework.ws.WebServiceMessage;
+import org.springframework.ws.client.core.WebServiceMessageCallback;
+import org.springframework.ws.client.core.WebServiceMessageExtractor;
+import org.springframework.ws.client.core.WebServiceTemplate;
+import org.springframework.ws.context.MessageContext;
+import org.springframework.ws.server.EndpointInterceptor;
+import org.springframework.ws.server.endpoint.interceptor.EndpointInterceptorAdapter;
+import org.springframework.ws.soap.client.core.SoapActionCallback;
+import org.springframework.xml.transform.StringSource;
+
+public class UnorderedHttpThreadLocalMockWebServiceServerTest extends AbstractMockWebServiceServerTest{
+
+	private static final String ADDRESS = "http://localhost:8080";
+	
+	private static final String ADDRESS2 = "https://localhost:8080";
+	
+	@Override
+	protected MockWebServiceServer createServer() {
+		return new HttpThreadLocalMockWebServiceServer(getMessageFactory(), null, false);
+	}
+
+	@Test
+	public void testReversedOrder() throws IOException
+	{
+		MockWebServiceServer server = createServer();
+		server.expect(connectionTo(ADDRESS)).andExpect(message("request.xml")).andRespond(withMessage("response.xml"));
+		server.expect(connectionTo(ADDRESS)).andExpect(message("request2.xml")).andRespond(withMessage("response2.xml"));
+		
+		WebServiceMessage response2 = sendMessage(ADDRESS, "request2.xml");
+		message("response2.xml").match(null, response2);
+		
+		WebServiceMessage response1 = sendMessage(ADDRESS, "request.xml");
+		message("response.xml").match(null, response1);
+		
+		server.verify();
+	}
+	
+	@Test
+	public void testSameRequests() throws IOException
+	{
+		MockWebServiceServer server = createServer();
+		server.expect(message("request.xml")).andRespond(withMessage("response.xml"));
+		server.expect(message("request.xml")).andRespond(withMessage("response2.xml"));
+		
+		message("response.xml").match(null, sendMessage(ADDRESS, "request.xml"));
+		message("response2.xml").match(null, sendMessage(ADDRESS, "request.xml"));
+		
+		server.verify();
+	}
+	
+	@Test
+	public void testDispatchByPayloadRoot() throws IOException
+	{
+		MockWebServiceServer server = createServer();
+		server.expect(message("request3.xml")).andRespond(withMessage("response2.xml"));
+		server.expect(connectionTo(ADDRESS)).andRespond(withMessage("response.xml"));
+		server.expect(message("request.xml")).andRespond(withMessage("response2.xml"));
+		
+		message("response2.xml").match(null, sendMessage(ADDRESS, "request3.xml"));
+		message("response.xml").match(null, sendMessage(ADDRESS, "request.xml"));
+		message("response2.xml").match(null, sendMessage(ADDRESS, "request.xml"));
+		
+		server.verify();
+	}
+	
+	@Test
+	public void testDispatchBySoapAction() throws IOException
+	{
+		MockWebServiceServer server = createServer();
+		server.expect(soapAction("urn:first")).andExpect(message("request.xml")).andRespond(withMessage("response.xml"));
+		server.expect(soapAction("urn:second")).andExpect(message("request.xml")).andRespond(withMessage("response2.xml"));
+		
+		message("response2.xml").match(null, sendMessage(ADDRESS, "request.xml", "urn:second"));
+		message("response.xml").match(null, sendMessage(ADDRESS, "request.xml", "urn:first"));
+		
+		server.verify();
+	}
+	
+	@Test
+	public void testDispatchByUri() throws IOException
+	{
+		MockWebServiceServer server = createServer();
+		server.expect(connectionTo(ADDRESS)).andExpect(message("request.xml")).andRespond(withMessage("response.xml"));
+		server.expect(connectionTo(ADDRESS2)).andExpect(message("request.xml")).andRespond(withMessage("response2.xml"));
+		
+		message("response2.xml").match(null, sendMessage(ADDRESS2, "request.xml"));
+		ExpectationMetrics first = ((MetricsAware)server).getMetrics().getExpectations().get(0);
+		assertEquals(0, first.getMatchAttempts());
+		
+		try
+		{
+			sendMessage(ADDRESS, "request2.xml");
+			fail("AssertionError expected");
+		}
+		catch (AssertionError e)
+		{
+			//expected
+		}
+		assertEquals(1, first.getMatchAttempts());
+		assertEquals(1, first.getMatchFailures());
+	}
+	
+	@Test(expected=AssertionError.class)
+	public void testUnexpectedSoapAction() throws IOException
+	{
+		MockWebServiceServer server = createServer();
+		server.expect(soapAction("urn:first")).andExpect(message("request.xml")).andRespond(withMessage("response.xml"));
+		
+		sendMessage(ADDRESS, "request.xml", "urn:second");
+	}
+	
+	@Test
+	public void testInterceptorsAppliedBeforeMatching() throws IOException
+	{
+		EndpointInterceptor interceptor = new EndpointInterceptorAdapter() {
+			@Override
+			public boolean handleRequest(MessageContext messageContext, Object endpoint) throws Exception {
+				transform(new StringSource("<test:testMethod xmlns:test=\"http://javacrumbs.net/test\"><text>Lukas</text></test:testMethod>"), 
+						messageContext.getRequest().getPayloadResult());
+				return true;
+			}
+		};
+		MockWebServiceServer server = new HttpThreadLocalMockWebServiceServer(getMessageFactory(), new EndpointInterceptor[]{interceptor}, false);
+		server.expect(message("request.xml")).andRespond(withMessage("response.xml"));
+		
+		message("response.xml").match(null, sendMessage(ADDRESS, "request2.xml"));
+		
+		server.verify();
+	}
+	
+	@Test(expected=AssertionError.class)
+	public void testVerifyNotConsumed() throws IOException
+	{
+		MockWebServiceServer server = createServer();
+		server.expect(connectionTo(ADDRESS)).andExpect(message("request.xml")).andRespond(withMessage("response.xml"));
+		server.expect(connectionTo(ADDRESS)).andExpect(message("request2.xml")).andRespond(withMessage("response2.xml"));
+		
+		sendMessage(ADDRESS, "request2.xml");
+		server.verify();
+	}
+	
+	@Test
+	public void testParallelRequests() throws Exception
+	{
+		int count = 50;
+		MockWebServiceServer server = createServer();
+		for (int i=0; i<count; i++)
+		{
+			server.expect(message(new StringSource("<request id=\"" + i + "\"/>"))).andRespond(withMessage(new StringSource("<response id=\"" + i + "\"/>")));
+		}
+		final MockConversation conversation = ThreadLocalMockWebServiceServer.getMockConversation();
+		
+		ExecutorService executor = Executors.newFixedThreadPool(8);
+		try
+		{
+			List<Future<WebServiceMessage>> responses = new ArrayList<Future<WebServiceMessage>>();
+			//requests are sent in reverse order
+			for (int i=count-1; i>=0; i--)
+			{
+				final int id = i;
+				responses.add(executor.submit(new Callable<WebServiceMessage>() {
+					public WebServiceMessage call() throws Exception {
+						MockConnection connection = conversation.getActiveConnection();
+						connection.setUri(URI.create(ADDRESS));
+						connection.getOutputStream().write(stringToBytes("<soapenv:Envelope xmlns:soapenv=\"http://schemas.xmlsoap.org/soap/envelope/\"><soapenv:Body><request id=\"" + id + "\"/></soapenv:Body></soapenv:Envelope>"));
+						InputStream response = connection.getInputStream();
+						return getMessageFactory().createWebServiceMessage(response);
+					}
+				}));
+			}
+			for (int i=0; i<count; i++)
+			{
+				int id = count - 1 - i;
+				message(new StringSource("<response id=\"" + id + "\"/>")).match(null, responses.get(i).get());
+			}
+		}
+		finally
+		{
+			executor.shutdown();
+		}
+		server.verify();
+	}
+	
+	private WebServiceMessage sendMessage(String uri, final String request, String soapAction) {
+		WebServiceTemplate template = new WebServiceTemplate();
+		template.afterPropertiesSet();
+		
+		final SoapActionCallback soapActionCallback = new SoapActionCallback(soapAction);
+		return template.sendAndReceive(uri, new WebServiceMessageCallback() {
+			public void doWithMessage(WebServiceMessage message) throws IOException, TransformerException {
+				soapActionCallback.doWithMessage(message);
+				transform(loadMessage(request), message.getPayloadResult());
+			}
+		}, new WebServiceMessageExtractor<WebServiceMessage>() {
+			public WebServiceMessage extractData(WebServiceMessage message) throws IOException, TransformerException {
+				return message;
+			}
+		});
+	}
+}
@@ -16,19 +16,33 @@
 package net.javacrumbs.smock.http.server.servlet;
 
 import static net.javacrumbs.smock.common.XmlUtil.getEnvelopeSource;
-import static net.javacrumbs.smock.common.XmlUtil.serialize;
-import static net.javacrumbs.smock.common.XmlUtil.stringToBytes;
+import static net.javacrumbs.smock.common.XmlUtil.transform;
 
-import java.io.ByteArrayInputStream;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
 import java.io.UnsupportedEncodingException;
+import java.util.List;
+import java.util.concurrent.Executor;
 
+import javax.servlet.ServletInputStream;
+import javax.servlet.ServletOutputStream;
 import javax.servlet.http.HttpServlet;
+import javax.xml.transform.stream.StreamResult;
 
 import net.javacrumbs.smock.common.InterceptingTemplate;
+import net.javacrumbs.smock.common.InterceptionListener;
 import net.javacrumbs.smock.common.server.MockWebServiceClientResponseActions;
+import net.javacrumbs.smock.extended.server.LoadDriver;
+import net.javacrumbs.smock.extended.server.LoadDriver.RequestSender;
+import net.javacrumbs.smock.extended.server.LoadTestResult;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
+import org.springframework.mock.web.DelegatingServletInputStream;
 import org.springframework.mock.web.MockHttpServletRequest;
 import org.springframework.mock.web.MockHttpServletResponse;
 import org.springframework.util.Assert;
@@ -37,6 +51,7 @@ import org.springframework.ws.WebServiceMessageFactory;
 import org.springframework.ws.client.support.interceptor.ClientInterceptor;
 import org.springframework.ws.context.DefaultMessageContext;
 import org.springframework.ws.context.MessageContext;
+import org.springframework.ws.soap.SoapMessage;
 import org.springframework.ws.test.server.RequestCreator;
 import org.springframework.ws.test.server.ResponseActions;
 import org.springframework.ws.transport.WebServiceMessageReceiver;
@@ -48,6 +63,18 @@ import org.springframework.ws.transport.WebServiceMessageReceiver;
 public class CommonServletBasedMockWebServiceClient {
 
 	private static final String CONTENT_TYPE = "text/xml;charset=UTF-8";
+	
+	private static final String DEFAULT_ENCODING = "UTF-8";
+	
+	/**
+	 * Bigger request buffers are not kept for reuse.
+	 */
+	private static final int MAX_REUSED_BUFFER_SIZE = 1024 * 1024;
+	
+	/**
+	 * Request buffer reused by subsequent requests sent from the same thread.
+	 */
+	private static final ThreadLocal<ContentBuffer> requestBuffer = new ThreadLocal<ContentBuffer>();
 
 	private final HttpServlet servlet;
 	
@@ -58,11 +85,21 @@ public class CommonServletBasedMockWebServiceClient {
 	private static final Log LOG = LogFactory.getLog(CommonServletBasedMockWebServiceClient.class);
 	
 	public CommonServletBasedMockWebServiceClient(HttpServlet servlet, WebServiceMessageFactory messageFactory, ClientInterceptor[] clientInterceptors) {
+		this(servlet, messageFactory, clientInterceptors, null);
+	}
+	
+	/**
+	 * @param servlet
+	 * @param messageFactory
+	 * @param clientInterceptors
+	 * @param interceptionListener notified about time spent in interceptors and in the servlet, can be null
+	 */
+	public CommonServletBasedMockWebServiceClient(HttpServlet servlet, WebServiceMessageFactory messageFactory, ClientInterceptor[] clientInterceptors, InterceptionListener interceptionListener) {
 		Assert.notNull(servlet, "servlet has to be set");
 		Assert.notNull(messageFactory, "messageFactory has to be set");
-        this.messageFactory =  messageFactory;
-        this.servlet = servlet;
-        interceptingTemplate = new InterceptingTemplate(clientInterceptors);
+		this.messageFactory =  messageFactory;
+		this.servlet = servlet;
+		interceptingTemplate = new InterceptingTemplate(clientInterceptors, interceptionListener);
 	}
 	
 	public ResponseActions sendRequestTo(String path, RequestCreator requestCreator) {
@@ -71,53 +108,206 @@ public class CommonServletBasedMockWebServiceClient {
 			WebServiceMessage requestMessage = requestCreator.createRequest(messageFactory);
 			final MockHttpServletRequest   request = createRequest(path, requestMessage);
 			MessageContext messageContext = new DefaultMessageContext(requestMessage, messageFactory);
-			interceptingTemplate.interceptRequest(messageContext, new WebServiceMessageReceiver() {
-				public void receive(MessageContext messageContext) throws Exception {
-					MockHttpServletResponse response = new ExtendedMockHttpServletResponse();
-					servlet.service(request, response);
-					if (LOG.isDebugEnabled())
-					{
-						LOG.debug("Received response:"+response.getContentAsString());
+			try {
+				interceptingTemplate.interceptRequest(messageContext, new WebServiceMessageReceiver() {
+					public void receive(MessageContext messageContext) throws Exception {
+						ExtendedMockHttpServletResponse response = new ExtendedMockHttpServletResponse();
+						servlet.service(request, response);
+						if (LOG.isDebugEnabled())
+						{
+							LOG.debug("Received response:"+response.getContentAsString());
+						}
+						//the response can be parsed lazily, its buffer can not be reused
+						messageContext.setResponse(messageFactory.createWebServiceMessage(response.getContentAsStream()));
 					}
-					messageContext.setResponse(messageFactory.createWebServiceMessage(new ByteArrayInputStream(response.getContentAsByteArray())));
-				}
-			});
+				});
+			} finally {
+				releaseRequestBuffer(request);
+			}
 			return new MockWebServiceClientResponseActions(messageContext);
 		} catch (Exception e) {
 			throw new IllegalStateException("Error when sending request",e);
 		}
 	}
+	
+	/**
+	 * Sends requests from given number of concurrent threads. Virtual threads are used where available.
+	 * Errors do not stop the run, they are collected in the result. 
+	 * @param path
+	 * @param requestCreators
+	 * @param concurrency
+	 * @return
+	 */
+	public LoadTestResult sendRequests(String path, List<? extends RequestCreator> requestCreators, int concurrency) {
+		return LoadDriver.sendRequests(requestCreators, concurrency, createSender(path));
+	}
+	
+	/**
+	 * Sends requests using given executor. At most <code>concurrency</code> requests are sent at the same time.
+	 * The executor is not shut down.
+	 * @param path
+	 * @param requestCreators
+	 * @param concurrency
+	 * @param executor
+	 * @return
+	 */
+	public LoadTestResult sendRequests(String path, List<? extends RequestCreator> requestCreators, int concurrency, Executor executor) {
+		return LoadDriver.sendRequests(requestCreators, concurrency, executor, createSender(path));
+	}
+	
+	private RequestSender createSender(final String path) {
+		return new RequestSender() {
+			public ResponseActions sendRequest(RequestCreator requestCreator) {
+				return sendRequestTo(path, requestCreator);
+			}
+		};
+	}
 
+	/**
+	 * Creates request whose content is read by the servlet directly from a buffer reused by the current thread.
+	 * @param path
+	 * @param message
+	 * @return
+	 */
 	protected MockHttpServletRequest createRequest(String path, WebServiceMessage message) {
-		String requestXml = serialize(getEnvelopeSource(message));
-		MockHttpServletRequest request = new ExtendedMockHttpServletRequest();
+		ContentBuffer content = getRequestBuffer();
+		try {
+			writeMessage(message, content);
+		} catch (IOException e) {
+			throw new IllegalStateException("Can not write request", e);
+		}
+		MockHttpServletRequest request = new ExtendedMockHttpServletRequest(content);
 		request.setMethod("POST");
 		request.setPathInfo(path);
 		request.setRequestURI(path);
-		request.setContent(stringToBytes(requestXml));
 		request.setContentType(CONTENT_TYPE);
 		request.addHeader("Content-Type", CONTENT_TYPE);
 		return request;
 	}
 	
+	/**
+	 * Writes the message envelope. Messages without attachments are written by the message itself, 
+	 * which is faster than a transformation.
+	 * @param message
+	 * @param out
+	 * @throws IOException
+	 */
+	private void writeMessage(WebServiceMessage message, ContentBuffer out) throws IOException {
+		if (message instanceof SoapMessage && !((SoapMessage)message).getAttachments().hasNext())
+		{
+			message.writeTo(out);
+		}
+		else
+		{
+			transform(getEnvelopeSource(message), new StreamResult(out));
+		}
+	}
+	
+	/**
+	 * Takes the buffer of the current thread. The buffer is not available to nested requests until it is released.
+	 * @return
+	 */
+	private static ContentBuffer getRequestBuffer() {
+		ContentBuffer buffer = requestBuffer.get();
+		if (buffer==null)
+		{
+			return new ContentBuffer();
+		}
+		requestBuffer.remove();
+		buffer.reset();
+		return buffer;
+	}
+	
+	private static void releaseRequestBuffer(MockHttpServletRequest request) {
+		if (request instanceof ExtendedMockHttpServletRequest)
+		{
+			ContentBuffer buffer = ((ExtendedMockHttpServletRequest)request).content;
+			if (buffer.capacity() <= MAX_REUSED_BUFFER_SIZE)
+			{
+				requestBuffer.set(buffer);
+			}
+		}
+	}
+	
 	private static class ExtendedMockHttpServletRequest extends MockHttpServletRequest
 	{
+		private final ContentBuffer content;
+		
+		public ExtendedMockHttpServletRequest(ContentBuffer content) {
+			this.content = content;
+		}
+
 		@Override
 		public String getRealPath(String path) {
 			return super.getPathInfo();
 		}
+		
+		@Override
+		public ServletInputStream getInputStream() {
+			return new DelegatingServletInputStream(content.getInputStream());
+		}
+		
+		@Override
+		public BufferedReader getReader() throws UnsupportedEncodingException {
+			String encoding = getCharacterEncoding()!=null ? getCharacterEncoding() : DEFAULT_ENCODING;
+			return new BufferedReader(new InputStreamReader(content.getInputStream(), encoding));
+		}
+		
+		@Override
+		public int getContentLength() {
+			return content.size();
+		}
 	}
 	private static class ExtendedMockHttpServletResponse extends MockHttpServletResponse
 	{
-		public String getContentAsString() throws UnsupportedEncodingException {
-			if (getCharacterEncoding()!=null)
+		private final ContentBuffer content = new ContentBuffer();
+		
+		private final ServletOutputStream outputStream = content.asServletOutputStream();
+		
+		private PrintWriter writer;
+		
+		@Override
+		public ServletOutputStream getOutputStream() {
+			return outputStream;
+		}
+		
+		@Override
+		public PrintWriter getWriter() throws UnsupportedEncodingException {
+			if (writer==null)
 			{
-				return new String(getContentAsByteArray(), getCharacterEncoding().toUpperCase().replaceAll("\"", ""));
+				writer = new PrintWriter(new OutputStreamWriter(content, getEncoding()));
 			}
-			else
+			return writer;
+		}
+		
+		@Override
+		public void flushBuffer() {
+			if (writer!=null)
 			{
-				return new String(getContentAsByteArray());
+				writer.flush();
 			}
+			super.flushBuffer();
+		}
+		
+		@Override
+		public byte[] getContentAsByteArray() {
+			flushBuffer();
+			return content.toByteArray();
+		}
+		
+		public InputStream getContentAsStream() {
+			flushBuffer();
+			return content.getInputStream();
+		}
+
+		@Override
+		public String getContentAsString() throws UnsupportedEncodingException {
+			flushBuffer();
+			return content.toString(getEncoding());
+		}
+		
+		private String getEncoding() {
+			return getCharacterEncoding()!=null ? getCharacterEncoding().toUpperCase().replaceAll("\"", "") : DEFAULT_ENCODING;
 		}
 	}
 }
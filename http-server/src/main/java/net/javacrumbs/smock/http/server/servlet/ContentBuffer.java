@@ -0,0 +1,82 @@
+/**
+ * Copyright 2009-2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.javacrumbs.smock.http.server.servlet;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UnsupportedEncodingException;
+
+import javax.servlet.ServletOutputStream;
+
+/**
+ * Growable buffer whose content can be read without copying. The buffer keeps its capacity when reset, 
+ * so it can be reused for subsequent messages.
+ * @author Lukas Krecan
+ */
+class ContentBuffer extends ByteArrayOutputStream {
+	
+	private static final int INITIAL_SIZE = 8 * 1024;
+	
+	public ContentBuffer() {
+		super(INITIAL_SIZE);
+	}
+	
+	/**
+	 * Returns stream reading the content. Content must not be modified while the stream is being read. 
+	 * @return
+	 */
+	public synchronized InputStream getInputStream() {
+		return new ByteArrayInputStream(buf, 0, count);
+	}
+	
+	/**
+	 * Returns allocated capacity.
+	 * @return
+	 */
+	public synchronized int capacity() {
+		return buf.length;
+	}
+	
+	/**
+	 * Decodes the content without copying it to a byte array first.
+	 * @param encoding
+	 * @return
+	 * @throws UnsupportedEncodingException
+	 */
+	public synchronized String toString(String encoding) throws UnsupportedEncodingException {
+		return new String(buf, 0, count, encoding);
+	}
+	
+	/**
+	 * Returns servlet output stream writing to this buffer.
+	 * @return
+	 */
+	public ServletOutputStream asServletOutputStream() {
+		return new ServletOutputStream() {
+			@Override
+			public void write(int b) throws IOException {
+				ContentBuffer.this.write(b);
+			}
+			
+			@Override
+			public void write(byte[] data, int offset, int length) throws IOException {
+				ContentBuffer.this.write(data, offset, length);
+			}
+		};
+	}
+}
@@ -1,30 +1,54 @@
 package net.javacrumbs.smock.http.server.servlet;
 
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.Map;
 import java.util.WeakHashMap;
 
 import javax.servlet.ServletException;
 import javax.servlet.http.HttpServlet;
 
+import net.javacrumbs.smock.common.LruCache;
+
 import org.springframework.beans.BeanUtils;
 import org.springframework.context.ApplicationContext;
+import org.springframework.context.ApplicationListener;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.context.event.ContextClosedEvent;
 import org.springframework.mock.web.MockServletConfig;
 import org.springframework.mock.web.MockServletContext;
 import org.springframework.util.Assert;
+import org.springframework.util.ObjectUtils;
 import org.springframework.web.context.WebApplicationContext;
 
 /**
- * Utility class that helps with creating servlets. Servlets are cached based on applicationContext.
+ * Utility class that helps with creating servlets. Servlets are cached based on applicationContext, servlet class,
+ * basePath and init parameters, so each configuration is initialized only once. The cache is thread-safe and bounded.
+ * A servlet is destroyed when it is evicted from the cache or when its application context is closed. 
+ * Since a servlet references its application context, the cache size limits number of application contexts kept in memory.
  * @author Lukas Krecan
  */
 public abstract class ServletUtils {
-	private static final WeakHashMap<ApplicationContext, HttpServlet> servletCache = new WeakHashMap<ApplicationContext, HttpServlet>();
+	private static final int SERVLET_CACHE_SIZE = 16;
+	
+	private static final LruCache<ServletKey, ServletHolder> servletCache = new LruCache<ServletKey, ServletHolder>(SERVLET_CACHE_SIZE) {
+		@Override
+		protected void onEviction(ServletKey key, ServletHolder holder) {
+			holder.destroy();
+		}
+	};
+	
+	/**
+	 * Application contexts with registered close listener. Values do not reference the keys, so the contexts are held weakly.
+	 */
+	private static final Map<ApplicationContext, Boolean> observedContexts = new WeakHashMap<ApplicationContext, Boolean>();
 	
 	private ServletUtils() {
 	}
 
 	/**
-	 * Creates and configures servlet. Adds applicationContext to servletContext
+	 * Creates and configures servlet. Adds applicationContext to servletContext. If applicationContext is set, 
+	 * the servlet is cached and subsequent calls with the same parameters return the same instance.
 	 * @param servletClass
 	 * @param applicationContext
 	 * @param basePath
@@ -33,11 +57,62 @@ public abstract class ServletUtils {
 	 */
 	public static HttpServlet createServlet(Class<? extends HttpServlet> servletClass, ApplicationContext applicationContext, String basePath, Map<String, String> initParameters)
 	{
-		if (servletCache.containsKey(applicationContext))
+		Assert.notNull(servletClass, "servletClass has to be specified.");
+		if (applicationContext==null)
 		{
-			return servletCache.get(applicationContext);
+			return initServlet(servletClass, applicationContext, basePath, initParameters);
 		}
-		Assert.notNull(servletClass, "servletClass has to be specified.");
+		ServletKey key = new ServletKey(servletClass, applicationContext, basePath, initParameters);
+		ServletHolder holder;
+		synchronized (servletCache)
+		{
+			holder = servletCache.get(key);
+			if (holder==null)
+			{
+				holder = new ServletHolder();
+				servletCache.put(key, holder);
+				observeContext(applicationContext);
+			}
+		}
+		//initialized outside of the cache lock, so servlets with different keys are initialized in parallel
+		return holder.getServlet(key);
+	}
+	
+	/**
+	 * Removes servlets of the application context from the cache when the context is closed. 
+	 * @param applicationContext
+	 */
+	private static void observeContext(final ApplicationContext applicationContext) {
+		if (applicationContext instanceof ConfigurableApplicationContext && !observedContexts.containsKey(applicationContext))
+		{
+			observedContexts.put(applicationContext, Boolean.TRUE);
+			((ConfigurableApplicationContext)applicationContext).addApplicationListener(new ApplicationListener<ContextClosedEvent>() {
+				public void onApplicationEvent(ContextClosedEvent event) {
+					if (event.getApplicationContext()==applicationContext)
+					{
+						removeServlets(applicationContext);
+					}
+				}
+			});
+		}
+	}
+	
+	private static void removeServlets(ApplicationContext applicationContext) {
+		synchronized (servletCache)
+		{
+			for (ServletKey key : servletCache.keys())
+			{
+				if (key.applicationContext==applicationContext)
+				{
+					servletCache.remove(key);
+				}
+			}
+			observedContexts.remove(applicationContext);
+		}
+	}
+	
+	private static HttpServlet initServlet(Class<? extends HttpServlet> servletClass, ApplicationContext applicationContext, String basePath, Map<String, String> initParameters)
+	{
 		HttpServlet servlet = BeanUtils.instantiate(servletClass);
 		MockServletContext context = new MockServletContext(basePath, applicationContext);
 		MockServletConfig config = new MockServletConfig(context);
@@ -57,18 +132,109 @@ public abstract class ServletUtils {
 		} catch (ServletException e) {
 			throw new IllegalStateException("Error when creating servlet "+servletClass.getName(),e);
 		}
-		if (applicationContext!=null)
-		{
-			servletCache.put(applicationContext, servlet);
-		}
         return servlet;
 	}
 	
 	/**
-	 * Clears the cache
+	 * Clears the cache. Cached servlets are destroyed.
 	 */
 	public static void clearCache()
 	{
-		servletCache.clear();
+		synchronized (servletCache)
+		{
+			servletCache.clear();
+			observedContexts.clear();
+		}
+	}
+	
+	/**
+	 * Returns the servlet cache. Can be used to get cache statistics.
+	 * @return
+	 */
+	public static LruCache<?, ?> getServletCache()
+	{
+		return servletCache;
+	}
+	
+	/**
+	 * Initializes the servlet when it is requested for the first time and destroys it when it is removed from the cache.
+	 * Does not reference the application context, it is part of the key.
+	 */
+	private static class ServletHolder
+	{
+		private HttpServlet servlet;
+		
+		private boolean destroyed;
+		
+		/**
+		 * Returns the cached servlet. If the holder has been removed from the cache before the servlet was initialized, 
+		 * returns new servlet that is not cached.
+		 * @param key
+		 * @return
+		 */
+		public synchronized HttpServlet getServlet(ServletKey key) {
+			if (destroyed)
+			{
+				return initServlet(key.servletClass, key.applicationContext, key.basePath, key.initParameters);
+			}
+			if (servlet==null)
+			{
+				servlet = initServlet(key.servletClass, key.applicationContext, key.basePath, key.initParameters);
+			}
+			return servlet;
+		}
+		
+		public synchronized void destroy() {
+			destroyed = true;
+			if (servlet!=null)
+			{
+				servlet.destroy();
+				servlet = null;
+			}
+		}
+	}
+	
+	/**
+	 * Servlet configuration. Application contexts are compared by identity.
+	 */
+	private static class ServletKey
+	{
+		private final Class<? extends HttpServlet> servletClass;
+		
+		private final ApplicationContext applicationContext;
+		
+		private final String basePath;
+		
+		private final Map<String, String> initParameters;
+
+		public ServletKey(Class<? extends HttpServlet> servletClass, ApplicationContext applicationContext, String basePath, Map<String, String> initParameters) {
+			this.servletClass = servletClass;
+			this.applicationContext = applicationContext;
+			this.basePath = basePath;
+			this.initParameters = initParameters!=null ? new HashMap<String, String>(initParameters) : Collections.<String, String>emptyMap();
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (this==obj)
+			{
+				return true;
+			}
+			if (!(obj instanceof ServletKey))
+			{
+				return false;
+			}
+			ServletKey other = (ServletKey) obj;
+			return servletClass.equals(other.servletClass) && applicationContext==other.applicationContext 
+				&& ObjectUtils.nullSafeEquals(basePath, other.basePath) && initParameters.equals(other.initParameters);
+		}
+
+		@Override
+		public int hashCode() {
+			int result = servletClass.hashCode();
+			result = 31 * result + System.identityHashCode(applicationContext);
+			result = 31 * result + ObjectUtils.nullSafeHashCode(basePath);
+			return 31 * result + initParameters.hashCode();
+		}
 	}
 }
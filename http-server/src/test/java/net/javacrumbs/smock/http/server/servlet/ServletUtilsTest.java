@@ -0,0 +1,160 @@
+/**
+ * Copyright 2009-2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.javacrumbs.smock.http.server.servlet;
+
+import static java.util.Collections.singletonMap;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServlet;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.context.support.GenericApplicationContext;
+
+
+public class ServletUtilsTest {
+	
+	private GenericApplicationContext applicationContext;
+	
+	@Before
+	public void setUp()
+	{
+		ServletUtils.clearCache();
+		TestServlet.initCount.set(0);
+		applicationContext = new GenericApplicationContext();
+		applicationContext.refresh();
+	}
+	
+	@After
+	public void tearDown()
+	{
+		ServletUtils.clearCache();
+	}
+	
+	@Test
+	public void testConcurrentCreateServlet() throws Exception
+	{
+		final int threads = 8;
+		final CountDownLatch start = new CountDownLatch(1);
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		try
+		{
+			List<Future<HttpServlet>> results = new ArrayList<Future<HttpServlet>>();
+			for (int i=0; i<threads; i++)
+			{
+				results.add(executor.submit(new Callable<HttpServlet>() {
+					public HttpServlet call() throws Exception {
+						start.await();
+						return ServletUtils.createServlet(TestServlet.class, applicationContext, null, null);
+					}
+				}));
+			}
+			start.countDown();
+			HttpServlet servlet = results.get(0).get();
+			for (Future<HttpServlet> result : results)
+			{
+				assertSame(servlet, result.get());
+			}
+			assertEquals(1, TestServlet.initCount.get());
+		}
+		finally
+		{
+			executor.shutdown();
+		}
+	}
+	
+	@Test
+	public void testKeySeparation()
+	{
+		HttpServlet servlet = ServletUtils.createServlet(TestServlet.class, applicationContext, "base", singletonMap("a", "1"));
+		
+		assertSame(servlet, ServletUtils.createServlet(TestServlet.class, applicationContext, "base", singletonMap("a", "1")));
+		assertNotSame(servlet, ServletUtils.createServlet(OtherTestServlet.class, applicationContext, "base", singletonMap("a", "1")));
+		assertNotSame(servlet, ServletUtils.createServlet(TestServlet.class, applicationContext, "other", singletonMap("a", "1")));
+		assertNotSame(servlet, ServletUtils.createServlet(TestServlet.class, applicationContext, "base", singletonMap("a", "2")));
+		GenericApplicationContext otherContext = new GenericApplicationContext();
+		otherContext.refresh();
+		assertNotSame(servlet, ServletUtils.createServlet(TestServlet.class, otherContext, "base", singletonMap("a", "1")));
+		assertEquals(5, TestServlet.initCount.get());
+	}
+	
+	@Test
+	public void testDestroyOnEviction()
+	{
+		TestServlet first = (TestServlet)ServletUtils.createServlet(TestServlet.class, applicationContext, null, singletonMap("index", "0"));
+		int cacheSize = ServletUtils.getServletCache().getMaxSize();
+		for (int i=1; i<cacheSize; i++)
+		{
+			ServletUtils.createServlet(TestServlet.class, applicationContext, null, singletonMap("index", String.valueOf(i)));
+		}
+		assertFalse(first.destroyed);
+		
+		ServletUtils.createServlet(TestServlet.class, applicationContext, null, singletonMap("index", String.valueOf(cacheSize)));
+		
+		assertTrue(first.destroyed);
+		assertEquals(cacheSize, ServletUtils.getServletCache().size());
+	}
+	
+	@Test
+	public void testDestroyOnContextClose()
+	{
+		TestServlet servlet = (TestServlet)ServletUtils.createServlet(TestServlet.class, applicationContext, null, null);
+		
+		applicationContext.close();
+		
+		assertTrue(servlet.destroyed);
+		assertEquals(0, ServletUtils.getServletCache().size());
+	}
+	
+	public static class TestServlet extends HttpServlet
+	{
+		private static final long serialVersionUID = 1L;
+		
+		static final AtomicInteger initCount = new AtomicInteger();
+		
+		volatile boolean destroyed;
+		
+		@Override
+		public void init() throws ServletException {
+			initCount.incrementAndGet();
+		}
+		
+		@Override
+		public void destroy() {
+			destroyed = true;
+		}
+	}
+	
+	public static class OtherTestServlet extends TestServlet
+	{
+		private static final long serialVersionUID = 1L;
+	}
+}
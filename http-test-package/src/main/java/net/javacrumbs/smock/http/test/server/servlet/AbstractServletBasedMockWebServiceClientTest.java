@@ -22,7 +22,14 @@ import static org.easymock.EasyMock.createMock;
 import static org.easymock.EasyMock.expect;
 import static org.easymock.EasyMock.replay;
 import static org.easymock.EasyMock.verify;
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Collections;
+import java.util.List;
+
+import net.javacrumbs.smock.extended.server.LoadTestResult;
 import net.javacrumbs.smock.http.server.servlet.CommonServletBasedMockWebServiceClient;
 import net.javacrumbs.smock.http.test.server.servlet.test.TstWebService;
 
@@ -31,6 +38,8 @@ import org.springframework.context.ApplicationContext;
 import org.springframework.context.support.ClassPathXmlApplicationContext;
 import org.springframework.ws.client.support.interceptor.ClientInterceptor;
 import org.springframework.ws.context.MessageContext;
+import org.springframework.ws.test.server.RequestCreator;
+import org.springframework.ws.test.server.ResponseActions;
 
 public abstract class AbstractServletBasedMockWebServiceClientTest {
 	
@@ -62,4 +71,23 @@ public abstract class AbstractServletBasedMockWebServiceClientTest {
 		
 		verify(interceptor);
 	}
+	@Test
+	public void testSendRequests()
+	{
+		ClassPathXmlApplicationContext context = new ClassPathXmlApplicationContext("servlet.xml");
+		CommonServletBasedMockWebServiceClient client = createMockClient(context, null);
+		List<RequestCreator> requests = Collections.<RequestCreator>nCopies(50, withMessage("request.xml"));
+		LoadTestResult result = client.sendRequests("/TestWebService", requests, 4);
+		
+		assertEquals(0, result.getErrorCount());
+		assertEquals(50, result.getResponses().size());
+		for (ResponseActions response: result.getResponses())
+		{
+			response.andExpect(message("response.xml"));
+		}
+		assertEquals(50, result.getLatency().getCount());
+		assertEquals(49, result.getMeasuredRequestCount());
+		assertTrue(result.getLatencyAtPercentile(50) <= result.getLatencyAtPercentile(99));
+		assertTrue(result.getThroughput() > 0);
+	}
 }
@@ -16,6 +16,7 @@
 package net.javacrumbs.smock.springws.server;
 
 import net.javacrumbs.smock.common.InterceptingTemplate;
+import net.javacrumbs.smock.common.InterceptionListener;
 
 import org.springframework.ws.client.core.WebServiceTemplate;
 import org.springframework.ws.client.support.interceptor.ClientInterceptor;
@@ -35,9 +36,18 @@ class InterceptingMessageReceiver implements WebServiceMessageReceiver {
 	private final InterceptingTemplate interceptingTemplate;
 	
     public InterceptingMessageReceiver(WebServiceMessageReceiver wrappedMessageReceiver,ClientInterceptor[] interceptors) {
-		this.wrappedMessageReceiver = wrappedMessageReceiver;
-		this.interceptingTemplate = new InterceptingTemplate(interceptors);
+		this(wrappedMessageReceiver, interceptors, null);
 	}
+    
+    /**
+     * @param wrappedMessageReceiver
+     * @param interceptors
+     * @param interceptionListener notified about time spent in interceptors and in the wrapped receiver, can be null
+     */
+    public InterceptingMessageReceiver(WebServiceMessageReceiver wrappedMessageReceiver,ClientInterceptor[] interceptors, InterceptionListener interceptionListener) {
+    	this.wrappedMessageReceiver = wrappedMessageReceiver;
+    	this.interceptingTemplate = new InterceptingTemplate(interceptors, interceptionListener);
+    }
 
 	public void receive(MessageContext messageContext) throws Exception {
        interceptingTemplate.interceptRequest(messageContext, wrappedMessageReceiver);